@@ -35,24 +35,73 @@ repositories {
 extra["keycloakVersion"] = "24.0.3"
 extra["lombokVersion"] = "1.18.34"
 extra["springBootVersion"] = "3.3.4"
+extra["micrometerVersion"] = "1.13.4"
+extra["jmhVersion"] = "1.37"
+extra["junitPlatformVersion"] = "1.10.3"
+
+val jmh: SourceSet by sourceSets.creating {
+  compileClasspath += sourceSets.main.get().output
+  runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
 
 dependencies {
-  implementation("org.springframework.boot:spring-boot-starter-web:${property("springBootVersion")}")
+  compileOnly("org.springframework.boot:spring-boot-starter-web:${property("springBootVersion")}")
 
   api("org.springframework.boot:spring-boot-starter-oauth2-resource-server:${property("springBootVersion")}")
   api("org.springframework.boot:spring-boot-starter-security:${property("springBootVersion")}")
   api("org.keycloak:keycloak-core:${property("keycloakVersion")}")
 
+  compileOnly("org.springframework.boot:spring-boot-starter-webflux:${property("springBootVersion")}")
+  compileOnly("io.micrometer:micrometer-core:${property("micrometerVersion")}")
+  compileOnly("org.springframework.boot:spring-boot-actuator:${property("springBootVersion")}")
   compileOnly("org.projectlombok:lombok:${property("lombokVersion")}")
   annotationProcessor("org.projectlombok:lombok:${property("lombokVersion")}")
   annotationProcessor("org.springframework.boot:spring-boot-configuration-processor:${property("springBootVersion")}")
 
   testImplementation("org.springframework.boot:spring-boot-starter-test:${property("springBootVersion")}")
+  testImplementation("org.springframework.boot:spring-boot-starter-web:${property("springBootVersion")}")
+  testImplementation("org.springframework.boot:spring-boot-starter-webflux:${property("springBootVersion")}")
+  testRuntimeOnly("org.junit.platform:junit-platform-launcher:${property("junitPlatformVersion")}")
 //  testImplementation("org.springframework.security:spring-security-test:${property("springBootVersion")}"
+
+  "jmhImplementation"("org.openjdk.jmh:jmh-core:${property("jmhVersion")}")
+  "jmhImplementation"("org.springframework.boot:spring-boot-starter-web:${property("springBootVersion")}")
+  "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:${property("jmhVersion")}")
 }
 
 tasks.withType<Test> {
   useJUnitPlatform()
+
+  // Runs the tests on another JDK, e.g. -Ptest.javaVersion=21 for the virtual thread tests
+  providers.gradleProperty("test.javaVersion").orNull?.let { version ->
+    javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(version)) })
+  }
+}
+
+tasks.named("check") {
+  dependsOn(jmh.classesTaskName)
+}
+
+tasks.register<JavaExec>("jmh") {
+  group = "benchmark"
+  description = "Runs the JMH benchmarks and writes the results to build/reports/jmh/results.json."
+  classpath = jmh.runtimeClasspath
+  mainClass.set("org.openjdk.jmh.Main")
+
+  val resultsFile = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+  val includes = providers.gradleProperty("jmh.includes").orNull
+  val profilers = providers.gradleProperty("jmh.profilers").orNull
+
+  args(listOfNotNull(includes))
+  profilers?.split(",")?.filter { it.isNotBlank() }?.forEach { args("-prof", it) }
+  args("-rf", "json", "-rff", resultsFile.absolutePath)
+
+  doFirst {
+    resultsFile.parentFile.mkdirs()
+  }
 }
 
 publishing {
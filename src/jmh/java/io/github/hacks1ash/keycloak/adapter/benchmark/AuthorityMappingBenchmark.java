@@ -0,0 +1,63 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.utils.GrantedAuthoritiesCache;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Compares mapping token roles to granted authorities per request, as the converter used to do,
+ * with the shared {@link GrantedAuthoritiesCache}. Run with {@code -Pjmh.profilers=gc} to compare
+ * the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorityMappingBenchmark {
+
+  @Param({"5", "100", "500"})
+  public int roleCount;
+
+  private Set<String> clientRoles;
+
+  private GrantedAuthoritiesCache grantedAuthoritiesCache;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    clientRoles = new HashSet<>();
+    for (int i = 0; i < roleCount; i++) {
+      clientRoles.add("client-role-" + i);
+    }
+    grantedAuthoritiesCache = new GrantedAuthoritiesCache("ROLE_", "ROLE_", 1000);
+  }
+
+  @Benchmark
+  public Set<SimpleGrantedAuthority> perRequestMapping() {
+    return clientRoles.stream()
+        .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+        .collect(Collectors.toSet());
+  }
+
+  @Benchmark
+  public Set<GrantedAuthority> cachedMapping() {
+    return grantedAuthoritiesCache.getAuthorities(null, clientRoles);
+  }
+}
@@ -0,0 +1,72 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.utils.JWKSUtils;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import org.keycloak.crypto.PublicKeysWrapper;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures key set handling: parsing a JWKS with {@link JWKSUtils#getKeyWrappersForUse}, and
+ * looking up a key in {@link RemotePublicKeyLocator} with a hot cache versus a cold cache that has
+ * to fetch and parse the key set first. The key set is served locally.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeySetBenchmark {
+
+  @Param({"1", "50"})
+  public int keyCount;
+
+  private JSONWebKeySet keySet;
+
+  private RemotePublicKeyLocator locator;
+
+  private String kid;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    KeyPair keyPair = TokenFixtures.generateKeyPair("RS256");
+    kid = "benchmark-RS256";
+    keySet = TokenFixtures.keySet(TokenFixtures.toJwk(kid, "RS256", keyPair.getPublic()), keyCount);
+    locator =
+        new RemotePublicKeyLocator(
+            TokenFixtures.keycloakProperties(), TokenFixtures.staticKeySet(keySet));
+    locator.reset();
+  }
+
+  @Benchmark
+  public PublicKeysWrapper parseKeySet() {
+    return JWKSUtils.getKeyWrappersForUse(keySet, JWK.Use.SIG);
+  }
+
+  @Benchmark
+  public PublicKey hotKeyLookup() {
+    return locator.getPublicKey(kid);
+  }
+
+  @Benchmark
+  public PublicKey coldKeyLookup() {
+    locator.reset();
+    return locator.getPublicKey(kid);
+  }
+}
@@ -0,0 +1,62 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.model.KeycloakUserReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.keycloak.util.JsonSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading a realistic Keycloak token payload with full data binding, as {@code
+ * TokenVerifier} does, and with the streaming {@link KeycloakUserReader}. Run with {@code
+ * -Pjmh.profilers=gc} to compare the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadParsingBenchmark {
+
+  @Param({"5", "100"})
+  public int roleCount;
+
+  private byte[] payload;
+
+  private KeycloakUserReader<DefaultKeycloakUser> userReader;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    payload = TokenFixtures.realisticPayload(roleCount);
+    userReader = new KeycloakUserReader<>(DefaultKeycloakUser.class);
+  }
+
+  @Benchmark
+  public DefaultKeycloakUser databind() throws IOException {
+    return JsonSerialization.readValue(payload, DefaultKeycloakUser.class);
+  }
+
+  @Benchmark
+  public DefaultKeycloakUser streaming() throws IOException {
+    return userReader.read(payload);
+  }
+
+  /** Worst case, where the application reads a deferred claim of every token. */
+  @Benchmark
+  public Object streamingThenDeferredClaim() throws IOException {
+    return userReader.read(payload).getEmail();
+  }
+}
@@ -0,0 +1,106 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakJWTDecoder;
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenPreFilter;
+import java.security.KeyPair;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.keycloak.common.util.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * Measures {@link KeycloakJWTDecoder#decode} with and without a {@link TokenPreFilter}, for a token
+ * whose payload is not JSON, an expired token and a valid token. Run with {@code
+ * -Pjmh.profilers=gc} to compare the allocations of rejected tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreFilterBenchmark {
+
+  @Param({"false", "true"})
+  public boolean preFilter;
+
+  @Param({"malformed", "expired", "valid"})
+  public String kind;
+
+  private KeycloakJWTDecoder decoder;
+
+  private String token;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    KeyPair keyPair = TokenFixtures.generateKeyPair("RS256");
+    String kid = "benchmark-RS256";
+
+    KeycloakProperties keycloakProperties = TokenFixtures.keycloakProperties();
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(
+            keycloakProperties,
+            TokenFixtures.staticKeySet(
+                TokenFixtures.keySet(TokenFixtures.toJwk(kid, "RS256", keyPair.getPublic()), 1)));
+    locator.reset();
+
+    decoder = new KeycloakJWTDecoder(locator, keycloakProperties, DefaultKeycloakUser.class);
+    if (preFilter) {
+      decoder.setTokenPreFilter(new TokenPreFilter(keycloakProperties));
+    }
+
+    token = TokenFixtures.mintToken(kid, "RS256", keyPair.getPrivate(), 20);
+    if (kind.equals("malformed")) {
+      byte[] garbage = new byte[token.length() * 3 / 4];
+      new Random(42).nextBytes(garbage);
+      garbage[0] = 'x';
+      String[] segments = token.split("\\.");
+      token =
+          segments[0]
+              + "."
+              + Base64.getUrlEncoder().withoutPadding().encodeToString(garbage)
+              + "."
+              + segments[2];
+    } else if (kind.equals("expired")) {
+      // The minted token expires after 5 minutes
+      Time.setOffset(3600);
+    }
+
+    // Fail fast instead of benchmarking another path.
+    boolean rejected = decode() instanceof JwtException;
+    if (rejected == kind.equals("valid")) {
+      throw new IllegalStateException("Unexpected outcome for a " + kind + " token");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Time.setOffset(0);
+  }
+
+  @Benchmark
+  public Object decode() {
+    try {
+      return decoder.decode(token);
+    } catch (JwtException e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.customizer.AuthorizeHttpRequestsCustomizer;
+import io.github.hacks1ash.keycloak.adapter.customizer.CorsCustomizer;
+import io.github.hacks1ash.keycloak.adapter.customizer.CsrfCustomizer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AuthorizeHttpRequestsConfigurer;
+import org.springframework.security.config.annotation.web.configurers.CorsConfigurer;
+import org.springframework.security.config.annotation.web.configurers.CsrfConfigurer;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Measures the throughput of rejected requests end to end, through an embedded Tomcat and the
+ * security filter chain configured by the adapter, with 401 responses rendered by an error dispatch
+ * to {@code /error} ({@code direct=false}) or written directly ({@code direct=true}). Requests
+ * either carry no token or a malformed one, so no realm key is ever fetched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectionBenchmark {
+
+  @Param({"false", "true"})
+  public boolean direct;
+
+  @Param({"missing", "malformed"})
+  public String credentials;
+
+  private ConfigurableApplicationContext context;
+
+  private HttpClient httpClient;
+
+  private HttpRequest request;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    context =
+        new SpringApplication(BenchmarkApplication.class)
+            .run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--keycloak.server-url=" + TokenFixtures.SERVER_URL,
+                "--keycloak.realm=" + TokenFixtures.REALM,
+                "--keycloak.client-id=" + TokenFixtures.CLIENT_ID,
+                "--keycloak.jwks.background-refresh=false",
+                "--keycloak.rejection.direct=" + direct);
+    int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+    httpClient = HttpClient.newHttpClient();
+    HttpRequest.Builder builder =
+        HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/resource"));
+    if (credentials.equals("malformed")) {
+      builder.header("Authorization", "Bearer not.a.token");
+    }
+    request = builder.build();
+
+    // Fail fast instead of benchmarking another response.
+    int status = reject().statusCode();
+    if (status != 401) {
+      throw new IllegalStateException("Expected 401 but got " + status);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public HttpResponse<byte[]> reject() throws Exception {
+    return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  /** Minimal application protected by the adapter with the default customizers. */
+  @SpringBootConfiguration
+  @EnableAutoConfiguration
+  @RestController
+  public static class BenchmarkApplication {
+
+    @Bean
+    public Customizer<
+            AuthorizeHttpRequestsConfigurer<HttpSecurity>
+                .AuthorizationManagerRequestMatcherRegistry>
+        authorizeHttpRequestsCustomizer() {
+      return new AuthorizeHttpRequestsCustomizer();
+    }
+
+    @Bean
+    public Customizer<CorsConfigurer<HttpSecurity>> corsCustomizer() {
+      return new CorsCustomizer();
+    }
+
+    @Bean
+    public Customizer<CsrfConfigurer<HttpSecurity>> csrfCustomizer() {
+      return new CsrfCustomizer();
+    }
+
+    @GetMapping("/resource")
+    public String resource() {
+      return "resource";
+    }
+  }
+}
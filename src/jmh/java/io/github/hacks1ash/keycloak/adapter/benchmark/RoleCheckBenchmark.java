@@ -0,0 +1,112 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.JwtAuthConverter;
+import io.github.hacks1ash.keycloak.adapter.KeycloakAuthorizationManager;
+import io.github.hacks1ash.keycloak.adapter.KeycloakMethodSecurityExpressionHandler;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.RoleUniverse;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.expression.Expression;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+/**
+ * Compares role checks against the granted authorities with role checks against the role bits of
+ * the authentication, for a method security expression evaluating three role checks and for an
+ * authorization manager of request rules. The checked roles are granted last, so a scan of the
+ * authorities goes through all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleCheckBenchmark {
+
+  @Param({"false", "true"})
+  public boolean bitset;
+
+  @Param({"5", "100", "500"})
+  public int roleCount;
+
+  private Supplier<Authentication> authentication;
+
+  private MethodSecurityExpressionHandler expressionHandler;
+
+  private Expression expression;
+
+  private SimpleMethodInvocation invocation;
+
+  private AuthorizationManager<Object> authorizationManager;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    String lastRole = "client-role-" + (roleCount - 1);
+    JwtAuthConverter<DefaultKeycloakUser> converter =
+        new JwtAuthConverter<>(TokenFixtures.keycloakProperties(), DefaultKeycloakUser.class);
+    if (bitset) {
+      converter.setRoleUniverse(
+          new RoleUniverse(List.of("ROLE_admin", "ROLE_auditor", "ROLE_" + lastRole)));
+    }
+    KeyPair keyPair = TokenFixtures.generateKeyPair("RS256");
+    String token = TokenFixtures.mintToken("benchmark", "RS256", keyPair.getPrivate(), roleCount);
+    Jwt jwt = Jwt.withTokenValue(token).header("alg", "RS256").claim("sub", "user").build();
+    Authentication converted = converter.convert(jwt);
+    authentication = () -> converted;
+
+    expressionHandler =
+        bitset
+            ? new KeycloakMethodSecurityExpressionHandler()
+            : new DefaultMethodSecurityExpressionHandler();
+    expression =
+        expressionHandler
+            .getExpressionParser()
+            .parseExpression(
+                "hasRole('admin') or hasAnyRole('auditor', '"
+                    + lastRole
+                    + "') and isAuthenticated()");
+    invocation = new SimpleMethodInvocation(this, Object.class.getMethod("toString"));
+    authorizationManager =
+        bitset
+            ? KeycloakAuthorizationManager.hasAnyRole("admin", lastRole)
+            : AuthorityAuthorizationManager.hasAnyRole("admin", lastRole);
+
+    // Fail fast instead of benchmarking a denied check.
+    if (!methodSecurityExpression() || !authorizationManager()) {
+      throw new IllegalStateException("Expected the role checks to be granted");
+    }
+  }
+
+  @Benchmark
+  public boolean methodSecurityExpression() {
+    return Boolean.TRUE.equals(
+        expression.getValue(
+            expressionHandler.createEvaluationContext(authentication, invocation), Boolean.class));
+  }
+
+  @Benchmark
+  public boolean authorizationManager() {
+    return authorizationManager.check(authentication, null).isGranted();
+  }
+}
@@ -0,0 +1,72 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.utils.JcaSignatureVerifierContext;
+import io.github.hacks1ash.keycloak.adapter.utils.SignatureVerifierCache;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+import org.keycloak.jose.jws.JWSInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares verifying a token signature with a new JCA Signature per token, as {@link
+ * JcaSignatureVerifierContext} does, against reusing initialized instances from a {@link
+ * SignatureVerifierCache}. Run with {@code -t} to measure the pool under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureVerificationBenchmark {
+
+  private static final String KID = "benchmark-kid";
+
+  @Param({"RS256", "ES256", "PS256"})
+  public String algorithm;
+
+  private KeyPair keyPair;
+
+  private byte[] data;
+
+  private byte[] signature;
+
+  private SignatureVerifierCache signatureVerifierCache;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    keyPair = TokenFixtures.generateKeyPair(algorithm);
+    JWSInput input = new JWSInput(TokenFixtures.mintToken(KID, algorithm, keyPair.getPrivate(), 5));
+    data = input.getEncodedSignatureInput().getBytes(StandardCharsets.UTF_8);
+    signature = input.getSignature();
+    signatureVerifierCache = new SignatureVerifierCache();
+
+    // Fail fast instead of benchmarking the error path.
+    if (!newSignature() || !pooledSignature()) {
+      throw new IllegalStateException("Signature verification failed");
+    }
+  }
+
+  @Benchmark
+  public boolean newSignature() throws Exception {
+    return new JcaSignatureVerifierContext(KID, algorithm, keyPair.getPublic())
+        .verify(data, signature);
+  }
+
+  @Benchmark
+  public boolean pooledSignature() throws Exception {
+    return signatureVerifierCache.verify(KID, algorithm, keyPair.getPublic(), data, signature);
+  }
+}
@@ -0,0 +1,245 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.SignatureAlgorithms;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.keycloak.crypto.SignatureException;
+import org.keycloak.crypto.SignatureSignerContext;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.AddressClaimSet;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Keys, key sets and tokens minted locally, so that the benchmarks run without a Keycloak server.
+ */
+final class TokenFixtures {
+
+  static final String SERVER_URL = "http://localhost:8080";
+
+  static final String REALM = "benchmark";
+
+  static final String CLIENT_ID = "benchmark-client";
+
+  private TokenFixtures() {
+    throw new IllegalStateException("TokenFixtures class");
+  }
+
+  static KeycloakProperties keycloakProperties() {
+    KeycloakProperties keycloakProperties = new KeycloakProperties();
+    keycloakProperties.setServerUrl(SERVER_URL);
+    keycloakProperties.setRealm(REALM);
+    keycloakProperties.setClientId(CLIENT_ID);
+    keycloakProperties.getJwks().setBackgroundRefresh(false);
+    return keycloakProperties;
+  }
+
+  static KeyPair generateKeyPair(String algorithm) throws GeneralSecurityException {
+    if (algorithm.startsWith("ES")) {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+      generator.initialize(
+          new ECGenParameterSpec(
+              switch (algorithm) {
+                case "ES384" -> "secp384r1";
+                case "ES512" -> "secp521r1";
+                default -> "secp256r1";
+              }));
+      return generator.generateKeyPair();
+    }
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair();
+  }
+
+  static JWK toJwk(String kid, String algorithm, PublicKey publicKey) {
+    JWKBuilder builder = JWKBuilder.create().kid(kid).algorithm(algorithm);
+    return algorithm.startsWith("ES") ? builder.ec(publicKey) : builder.rsa(publicKey);
+  }
+
+  /**
+   * Builds a key set with the given key followed by additional, unrelated RSA keys. The key set is
+   * round-tripped through JSON so that it looks exactly like one fetched from Keycloak.
+   */
+  static JSONWebKeySet keySet(JWK signingKey, int keyCount)
+      throws GeneralSecurityException, IOException {
+    List<JWK> keys = new ArrayList<>();
+    keys.add(signingKey);
+    while (keys.size() < keyCount) {
+      keys.add(toJwk(UUID.randomUUID().toString(), "RS256", generateKeyPair("RS256").getPublic()));
+    }
+    JSONWebKeySet keySet = new JSONWebKeySet();
+    keySet.setKeys(keys.toArray(new JWK[0]));
+    return JsonSerialization.readValue(
+        JsonSerialization.writeValueAsBytes(keySet), JSONWebKeySet.class);
+  }
+
+  /** Mints a signed bearer token with the given number of realm and client roles. */
+  static String mintToken(String kid, String algorithm, PrivateKey privateKey, int roleCount) {
+    AccessToken token = new AccessToken();
+    token.id(UUID.randomUUID().toString());
+    token.issuer(KeycloakUrlHelper.getRealmUrl(SERVER_URL, REALM));
+    token.subject(UUID.randomUUID().toString());
+    token.type(TokenUtil.TOKEN_TYPE_BEARER);
+    token.issuedFor(CLIENT_ID);
+    token.issuedNow();
+    token.exp(token.getIat() + 300);
+
+    AccessToken.Access access = token.addAccess(CLIENT_ID);
+    AccessToken.Access realmAccess = new AccessToken.Access();
+    for (int i = 0; i < roleCount; i++) {
+      access.addRole("client-role-" + i);
+      realmAccess.addRole("realm-role-" + i);
+    }
+    token.setRealmAccess(realmAccess);
+
+    return new JWSBuilder()
+        .type("JWT")
+        .kid(kid)
+        .jsonContent(token)
+        .sign(new SignerContext(kid, algorithm, privateKey));
+  }
+
+  /**
+   * Builds the payload of an access token as issued by a Keycloak realm with its default client
+   * scopes: profile and email claims, audience, allowed origins, session and ACR claims and the
+   * default realm and account roles, plus the given number of client roles.
+   */
+  static byte[] realisticPayload(int roleCount) throws IOException {
+    AccessToken token = new AccessToken();
+    token.id(UUID.randomUUID().toString());
+    token.issuer(KeycloakUrlHelper.getRealmUrl(SERVER_URL, REALM));
+    token.audience("account", "orders-service");
+    token.subject(UUID.randomUUID().toString());
+    token.type(TokenUtil.TOKEN_TYPE_BEARER);
+    token.issuedFor(CLIENT_ID);
+    token.issuedNow();
+    token.exp(token.getIat() + 300);
+    token.setAuth_time(token.getIat() - 60);
+    token.setSessionState(UUID.randomUUID().toString());
+    token.setAcr("1");
+    token.setAllowedOrigins(Set.of("https://app.example.com", "https://admin.example.com"));
+    token.setScope("openid profile email");
+    token.setEmailVerified(true);
+    token.setName("Jane Doe");
+    token.setPreferredUsername("jane.doe");
+    token.setGivenName("Jane");
+    token.setFamilyName("Doe");
+    token.setEmail("jane.doe@example.com");
+    AddressClaimSet address = new AddressClaimSet();
+    address.setCountry("NL");
+    address.setLocality("Amsterdam");
+    token.setAddress(address);
+    token.setOtherClaims("tenant", "acme");
+
+    AccessToken.Access realmAccess = new AccessToken.Access();
+    realmAccess.addRole("default-roles-" + REALM);
+    realmAccess.addRole("offline_access");
+    realmAccess.addRole("uma_authorization");
+    token.setRealmAccess(realmAccess);
+    token.addAccess("account").addRole("manage-account").addRole("view-profile");
+    AccessToken.Access access = token.addAccess(CLIENT_ID);
+    for (int i = 0; i < roleCount; i++) {
+      access.addRole("client-role-" + i);
+    }
+    return JsonSerialization.writeValueAsBytes(token);
+  }
+
+  /** RestTemplate serving a fixed key set instead of calling the Keycloak server. */
+  static RestTemplate staticKeySet(JSONWebKeySet keySet) {
+    byte[] body;
+    try {
+      body = JsonSerialization.writeValueAsBytes(keySet);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    RestTemplate restTemplate = new RestTemplate();
+    // Answers every request without sending it
+    restTemplate.getInterceptors().add((request, requestBody, execution) -> keySetResponse(body));
+    return restTemplate;
+  }
+
+  private static ClientHttpResponse keySetResponse(byte[] body) {
+    return new ClientHttpResponse() {
+      @Override
+      public HttpStatusCode getStatusCode() {
+        return HttpStatus.OK;
+      }
+
+      @Override
+      public String getStatusText() {
+        return HttpStatus.OK.getReasonPhrase();
+      }
+
+      @Override
+      public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+      }
+
+      @Override
+      public InputStream getBody() {
+        return new ByteArrayInputStream(body);
+      }
+
+      @Override
+      public void close() {}
+    };
+  }
+
+  private record SignerContext(String kid, String algorithm, PrivateKey privateKey)
+      implements SignatureSignerContext {
+
+    @Override
+    public String getKid() {
+      return kid;
+    }
+
+    @Override
+    public String getAlgorithm() {
+      return algorithm;
+    }
+
+    @Override
+    public String getHashAlgorithm() {
+      return "SHA-" + algorithm.substring(2);
+    }
+
+    @Override
+    public byte[] sign(byte[] data) throws SignatureException {
+      try {
+        Signature signature = SignatureAlgorithms.getSignature(algorithm);
+        signature.initSign(privateKey);
+        signature.update(data);
+        return signature.sign();
+      } catch (GeneralSecurityException e) {
+        throw new SignatureException("Signing failed", e);
+      }
+    }
+  }
+}
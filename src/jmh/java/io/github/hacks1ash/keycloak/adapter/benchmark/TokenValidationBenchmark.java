@@ -0,0 +1,80 @@
+package io.github.hacks1ash.keycloak.adapter.benchmark;
+
+import io.github.hacks1ash.keycloak.adapter.JwtAuthConverter;
+import io.github.hacks1ash.keycloak.adapter.KeycloakJWTDecoder;
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Measures the token validation hot path: {@link KeycloakJWTDecoder#decode} on its own and followed
+ * by {@link JwtAuthConverter#convert}, for each supported key family and for small and large role
+ * sets. The key cache is warm, so no key set is fetched during the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenValidationBenchmark {
+
+  @Param({"RS256", "ES256", "PS256"})
+  public String algorithm;
+
+  @Param({"5", "500"})
+  public int roleCount;
+
+  private KeycloakJWTDecoder decoder;
+
+  private JwtAuthConverter<DefaultKeycloakUser> converter;
+
+  private String token;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    KeyPair keyPair = TokenFixtures.generateKeyPair(algorithm);
+    String kid = "benchmark-" + algorithm;
+
+    KeycloakProperties keycloakProperties = TokenFixtures.keycloakProperties();
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(
+            keycloakProperties,
+            TokenFixtures.staticKeySet(
+                TokenFixtures.keySet(TokenFixtures.toJwk(kid, algorithm, keyPair.getPublic()), 1)));
+    locator.reset();
+
+    converter = new JwtAuthConverter<>(keycloakProperties, DefaultKeycloakUser.class);
+    decoder = new KeycloakJWTDecoder(locator, keycloakProperties, converter.getUserType());
+    token = TokenFixtures.mintToken(kid, algorithm, keyPair.getPrivate(), roleCount);
+
+    // Fail fast instead of benchmarking the error path.
+    converter.convert(decoder.decode(token));
+  }
+
+  @Benchmark
+  public Jwt decode() {
+    return decoder.decode(token);
+  }
+
+  @Benchmark
+  public AbstractAuthenticationToken decodeAndConvert() {
+    return converter.convert(decoder.decode(token));
+  }
+}
@@ -1,24 +1,50 @@
 package io.github.hacks1ash.keycloak.adapter;
 
+import io.github.hacks1ash.keycloak.adapter.utils.BearerErrorResponse;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
 import org.springframework.security.web.access.AccessDeniedHandler;
 
 /**
  * Custom implementation of the AccessDeniedHandler interface for handling access denied failures in
  * a Spring Security context. This class responds with an HTTP 403 Forbidden status when an
  * authenticated user attempts to access resources they are not authorized for.
+ *
+ * <p>When {@code keycloak.rejection.direct} is set, the response is written directly with a
+ * precomputed {@link BearerErrorResponse} reporting {@code insufficient_scope}, instead of being
+ * rendered by an error dispatch.
  */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @ConditionalOnMissingBean(AccessDeniedHandler.class)
 public class CustomAccessDeniedController implements AccessDeniedHandler {
 
+  private final BearerErrorResponse insufficientScopeResponse;
+
+  /**
+   * Constructs a CustomAccessDeniedController.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   */
+  public CustomAccessDeniedController(KeycloakProperties keycloakProperties) {
+    this.insufficientScopeResponse =
+        keycloakProperties.getRejection().isDirect()
+            ? BearerErrorResponse.of(
+                HttpStatus.FORBIDDEN,
+                keycloakProperties.getRealm(),
+                OAuth2ErrorCodes.INSUFFICIENT_SCOPE,
+                "The access token does not grant access to this resource")
+            : null;
+  }
+
   /**
    * Handles an AccessDeniedException by sending a 403 Forbidden response. This method is called
    * when an authenticated user tries to access a resource without the necessary permissions.
@@ -35,6 +61,10 @@ public class CustomAccessDeniedController implements AccessDeniedHandler {
       HttpServletResponse response,
       AccessDeniedException accessDeniedException)
       throws IOException, ServletException {
+    if (this.insufficientScopeResponse != null) {
+      this.insufficientScopeResponse.write(response);
+      return;
+    }
     response.sendError(HttpStatus.FORBIDDEN.value(), HttpStatus.FORBIDDEN.getReasonPhrase());
   }
 }
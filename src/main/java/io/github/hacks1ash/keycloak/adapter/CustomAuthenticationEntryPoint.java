@@ -1,24 +1,58 @@
 package io.github.hacks1ash.keycloak.adapter;
 
+import io.github.hacks1ash.keycloak.adapter.utils.BearerErrorResponse;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
 import org.springframework.security.web.AuthenticationEntryPoint;
 
 /**
  * Custom implementation of the AuthenticationEntryPoint interface for handling initial
  * authentication entries in a Spring Security context. This class responds with an HTTP 401
  * Unauthorized status when unauthenticated users attempt to access protected resources.
+ *
+ * <p>When {@code keycloak.rejection.direct} is set, the response is written directly with a
+ * precomputed {@link BearerErrorResponse} instead of being rendered by an error dispatch, so that
+ * bursts of requests with invalid or expired tokens cost little more than writing a few bytes.
  */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @ConditionalOnMissingBean(AuthenticationEntryPoint.class)
 public class CustomAuthenticationEntryPoint implements AuthenticationEntryPoint {
 
+  private final BearerErrorResponse missingTokenResponse;
+
+  private final BearerErrorResponse invalidTokenResponse;
+
+  /**
+   * Constructs a CustomAuthenticationEntryPoint.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   */
+  public CustomAuthenticationEntryPoint(KeycloakProperties keycloakProperties) {
+    if (keycloakProperties.getRejection().isDirect()) {
+      String realm = keycloakProperties.getRealm();
+      this.missingTokenResponse = BearerErrorResponse.missingToken(realm);
+      this.invalidTokenResponse =
+          BearerErrorResponse.of(
+              HttpStatus.UNAUTHORIZED,
+              realm,
+              OAuth2ErrorCodes.INVALID_TOKEN,
+              "The access token is invalid or has expired");
+    } else {
+      this.missingTokenResponse = null;
+      this.invalidTokenResponse = null;
+    }
+  }
+
   /**
    * Commences the authentication process. This method is called when an unauthenticated user tries
    * to access a resource that requires authentication.
@@ -35,6 +69,15 @@ public class CustomAuthenticationEntryPoint implements AuthenticationEntryPoint
       HttpServletResponse response,
       AuthenticationException authException)
       throws IOException, ServletException {
+    if (this.invalidTokenResponse != null) {
+      // Invalid tokens are reported as OAuth2AuthenticationException, missing tokens are not
+      BearerErrorResponse rejection =
+          authException instanceof OAuth2AuthenticationException
+              ? this.invalidTokenResponse
+              : this.missingTokenResponse;
+      rejection.write(response);
+      return;
+    }
     response.sendError(HttpStatus.UNAUTHORIZED.value(), HttpStatus.UNAUTHORIZED.getReasonPhrase());
   }
 }
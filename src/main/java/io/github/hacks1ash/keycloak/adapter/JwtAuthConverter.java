@@ -1,28 +1,48 @@
 package io.github.hacks1ash.keycloak.adapter;
 
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
 import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
-import java.util.HashSet;
+import io.github.hacks1ash.keycloak.adapter.utils.GrantedAuthoritiesCache;
+import io.github.hacks1ash.keycloak.adapter.utils.GrantedAuthoritiesCache.RoleAuthorities;
+import io.github.hacks1ash.keycloak.adapter.utils.RoleUniverse;
+import java.net.URL;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import org.keycloak.TokenVerifier;
 import org.keycloak.common.VerificationException;
 import org.keycloak.representations.AccessToken;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenUtil;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenAuthenticationConverter;
+import org.springframework.util.Assert;
 
 /**
  * A converter that transforms a JWT token into an AbstractAuthenticationToken, specifically for
- * Keycloak authentication in a Spring Security context.
+ * Keycloak authentication in a Spring Security context. Introspected opaque tokens are converted to
+ * the same {@link KeycloakAuthentication}, so the user is accessed the same way for both.
  *
  * @param <T> The user type that extends AbstractKeycloakUser.
  */
 public class JwtAuthConverter<T extends DefaultKeycloakUser>
-    implements Converter<Jwt, AbstractAuthenticationToken> {
+    implements Converter<Jwt, AbstractAuthenticationToken>, OpaqueTokenAuthenticationConverter {
+
+  private static final Map<String, Object> INTROSPECTED_TOKEN_HEADERS =
+      Map.of("typ", TokenUtil.TOKEN_TYPE_BEARER);
 
   private final KeycloakProperties keycloakProperties;
   private final Class<T> tClass;
+  private final GrantedAuthoritiesCache grantedAuthoritiesCache;
+  private KeycloakMetrics metrics = KeycloakMetrics.NOOP;
 
   /**
    * Constructor for JwtAuthConverter.
@@ -33,10 +53,28 @@ public class JwtAuthConverter<T extends DefaultKeycloakUser>
   public JwtAuthConverter(KeycloakProperties keycloakProperties, Class<T> tClass) {
     this.keycloakProperties = keycloakProperties;
     this.tClass = tClass;
+
+    KeycloakProperties.Authorities authorities = keycloakProperties.getAuthorities();
+    this.grantedAuthoritiesCache =
+        new GrantedAuthoritiesCache(
+            authorities.getRealmRolePrefix(),
+            authorities.getClientRolePrefix(),
+            authorities.getCacheMaximumSize());
   }
 
   /**
-   * Converts a JWT token to an AbstractAuthenticationToken.
+   * Returns the user type the token payload is deserialized into.
+   *
+   * @return The class type of the user.
+   */
+  public Class<T> getUserType() {
+    return this.tClass;
+  }
+
+  /**
+   * Converts a JWT token to an AbstractAuthenticationToken. If the source was produced by {@link
+   * KeycloakJWTDecoder} for the same user type, the already deserialized user is reused; otherwise
+   * the token payload is parsed.
    *
    * @param source The source JWT token to convert.
    * @return The converted AbstractAuthenticationToken.
@@ -44,23 +82,119 @@ public class JwtAuthConverter<T extends DefaultKeycloakUser>
    */
   @Override
   public AbstractAuthenticationToken convert(Jwt source) {
+    long startTime = this.metrics.startTimer();
     try {
+      return convert(source, this.grantedAuthoritiesCache::getRoleAuthorities);
+    } finally {
+      this.metrics.recordConversion(startTime);
+    }
+  }
 
-      TokenVerifier<T> tokenVerifier = TokenVerifier.create(source.getTokenValue(), tClass);
+  /**
+   * Converts an introspected token to an AbstractAuthenticationToken like {@link #convert(Jwt)}.
+   * The introspected claims are read into the user type, after converting the values Spring parsed
+   * back to their JSON form: timestamps to epoch seconds, URLs to strings and the scopes to a
+   * space-separated string.
+   *
+   * @param introspectedToken The introspected token value.
+   * @param authenticatedPrincipal The principal holding the introspected claims.
+   * @return The converted AbstractAuthenticationToken.
+   * @throws IllegalArgumentException if the claims cannot be read into the user type.
+   */
+  @Override
+  public AbstractAuthenticationToken convert(
+      String introspectedToken, OAuth2AuthenticatedPrincipal authenticatedPrincipal) {
+    Map<String, Object> claims = authenticatedPrincipal.getAttributes();
+    T user = JsonSerialization.mapper.convertValue(toJsonClaims(claims), this.tClass);
+    return convert(
+        new KeycloakJwt<>(
+            introspectedToken,
+            user.getIat() == null ? null : Instant.ofEpochSecond(user.getIat()),
+            user.getExp() == null ? null : Instant.ofEpochSecond(user.getExp()),
+            INTROSPECTED_TOKEN_HEADERS,
+            claims,
+            user));
+  }
 
-      T token = tokenVerifier.getToken();
+  /**
+   * Converts a token minted by the {@link KeycloakWarmup} like {@link #convert(Jwt)}, but without
+   * recording the conversion or caching the authorities of its synthetic roles.
+   */
+  AbstractAuthenticationToken convertWarmupToken(Jwt source) {
+    return convert(source, this.grantedAuthoritiesCache::createRoleAuthorities);
+  }
+
+  /**
+   * Sets the universe of the roles carried as bits by the converted authentications, see {@code
+   * KeycloakAuthentication.getRoleBitSet()}.
+   *
+   * @param roleUniverse The role universe, or null to only carry the granted authorities.
+   */
+  public void setRoleUniverse(RoleUniverse roleUniverse) {
+    this.grantedAuthoritiesCache.setRoleUniverse(roleUniverse);
+  }
+
+  /**
+   * Sets the metrics recording the conversion latency.
+   *
+   * @param metrics The metrics to record to.
+   */
+  public void setMetrics(KeycloakMetrics metrics) {
+    Assert.notNull(metrics, "metrics cannot be null");
+    this.metrics = metrics;
+  }
+
+  private AbstractAuthenticationToken convert(
+      Jwt source, BiFunction<Set<String>, Set<String>, RoleAuthorities> roleAuthoritiesFactory) {
+    try {
+      T token = resolveUser(source);
 
       AccessToken.Access access =
           token.getResourceAccess().get(this.keycloakProperties.getClientId());
+      AccessToken.Access realmAccess =
+          this.keycloakProperties.getAuthorities().isMapRealmRoles()
+              ? token.getRealmAccess()
+              : null;
 
-      Set<String> roles = access == null ? new HashSet<>() : access.getRoles();
-      Set<SimpleGrantedAuthority> grantedAuthorities =
-          roles.stream()
-              .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-              .collect(Collectors.toSet());
-      return new KeycloakAuthentication<>(source, grantedAuthorities, token.getSubject(), token);
+      RoleAuthorities roleAuthorities =
+          roleAuthoritiesFactory.apply(
+              realmAccess == null ? null : realmAccess.getRoles(),
+              access == null ? null : access.getRoles());
+      return new KeycloakAuthentication<>(
+          source,
+          roleAuthorities.grantedAuthorities(),
+          token.getSubject(),
+          token,
+          roleAuthorities.roleBitSet());
     } catch (VerificationException e) {
       throw new IllegalArgumentException(e.getMessage());
     }
   }
+
+  private static Map<String, Object> toJsonClaims(Map<String, Object> claims) {
+    Map<String, Object> jsonClaims = new HashMap<>(claims);
+    jsonClaims.replaceAll(
+        (name, value) -> {
+          if (value instanceof Instant instant) {
+            return instant.getEpochSecond();
+          }
+          if (value instanceof URL url) {
+            return url.toString();
+          }
+          if (OAuth2TokenIntrospectionClaimNames.SCOPE.equals(name)
+              && value instanceof Collection<?> scopes) {
+            return scopes.stream().map(String::valueOf).collect(Collectors.joining(" "));
+          }
+          return value;
+        });
+    return jsonClaims;
+  }
+
+  private T resolveUser(Jwt source) throws VerificationException {
+    if (source instanceof KeycloakJwt<?> keycloakJwt
+        && tClass.isInstance(keycloakJwt.getAuthenticatedUser())) {
+      return tClass.cast(keycloakJwt.getAuthenticatedUser());
+    }
+    return TokenVerifier.create(source.getTokenValue(), tClass).getToken();
+  }
 }
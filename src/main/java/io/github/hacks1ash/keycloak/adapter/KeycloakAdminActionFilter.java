@@ -0,0 +1,221 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.utils.IssuerKeyLocatorRegistry;
+import io.github.hacks1ash.keycloak.adapter.utils.JcaSignatureVerifierContext;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.RevocationIndex;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import org.keycloak.common.VerificationException;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.representations.adapters.action.AdminAction;
+import org.keycloak.representations.adapters.action.LogoutAction;
+import org.keycloak.representations.adapters.action.PushNotBeforeAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Filter handling the admin callbacks that Keycloak sends to the admin URL of the client, and
+ * feeding them into a {@link RevocationIndex}:
+ *
+ * <ul>
+ *   <li>{@code POST <admin-path>/k_push_not_before}, sent by "Push" in the revocation tab of the
+ *       client, rejects every token issued before the pushed not-before time;
+ *   <li>{@code POST <admin-path>/k_logout}, sent on logout, rejects the tokens of the logged out
+ *       sessions, or every token issued before its not-before time for a logout of all sessions.
+ * </ul>
+ *
+ * <p>The callbacks carry no bearer token. Instead, the request body is an admin action signed with
+ * the realm keys, whose signature, expiration and client ID are verified before it is applied. In
+ * multi-issuer mode, admin actions carry no issuer, so they are verified with the keys of whichever
+ * allowed realm has the key ID they are signed with.
+ */
+public class KeycloakAdminActionFilter extends OncePerRequestFilter {
+
+  private static final Logger log = LoggerFactory.getLogger(KeycloakAdminActionFilter.class);
+
+  private static final String PUSH_NOT_BEFORE_PATH = "/k_push_not_before";
+
+  private static final String LOGOUT_PATH = "/k_logout";
+
+  // Admin actions are small, longer bodies are not read
+  private static final int MAX_ACTION_LENGTH = 16384;
+
+  private final String pushNotBeforePath;
+
+  private final String logoutPath;
+
+  private final String clientId;
+
+  private final Function<String, PublicKey> publicKeyResolver;
+
+  private final RevocationIndex revocationIndex;
+
+  /**
+   * Constructs a KeycloakAdminActionFilter handling the callbacks under {@code
+   * keycloak.revocation.admin-path}.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param remotePublicKeyLocator Locator for the realm keys the admin actions are signed with.
+   * @param revocationIndex The index the admin actions are applied to.
+   */
+  public KeycloakAdminActionFilter(
+      KeycloakProperties keycloakProperties,
+      RemotePublicKeyLocator remotePublicKeyLocator,
+      RevocationIndex revocationIndex) {
+    this(keycloakProperties, remotePublicKeyLocator::getPublicKey, revocationIndex);
+  }
+
+  /**
+   * Constructs a KeycloakAdminActionFilter handling the callbacks under {@code
+   * keycloak.revocation.admin-path} in multi-issuer mode.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param issuerKeyLocatorRegistry Locators for the keys of the allowed realms, one of which the
+   *     admin actions are signed with.
+   * @param revocationIndex The index the admin actions are applied to.
+   */
+  public KeycloakAdminActionFilter(
+      KeycloakProperties keycloakProperties,
+      IssuerKeyLocatorRegistry issuerKeyLocatorRegistry,
+      RevocationIndex revocationIndex) {
+    this(keycloakProperties, kid -> findPublicKey(issuerKeyLocatorRegistry, kid), revocationIndex);
+  }
+
+  private KeycloakAdminActionFilter(
+      KeycloakProperties keycloakProperties,
+      Function<String, PublicKey> publicKeyResolver,
+      RevocationIndex revocationIndex) {
+    Assert.hasText(
+        keycloakProperties.getClientId(), "keycloak.client-id must be set to verify admin actions");
+    String adminPath = keycloakProperties.getRevocation().getAdminPath();
+    if (adminPath.endsWith("/")) {
+      adminPath = adminPath.substring(0, adminPath.length() - 1);
+    }
+    this.pushNotBeforePath = adminPath + PUSH_NOT_BEFORE_PATH;
+    this.logoutPath = adminPath + LOGOUT_PATH;
+    this.clientId = keycloakProperties.getClientId();
+    this.publicKeyResolver = publicKeyResolver;
+    this.revocationIndex = revocationIndex;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    if (!HttpMethod.POST.matches(request.getMethod())) {
+      return true;
+    }
+    String path = getPath(request);
+    return !path.equals(this.pushNotBeforePath) && !path.equals(this.logoutPath);
+  }
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    byte[] body = request.getInputStream().readNBytes(MAX_ACTION_LENGTH + 1);
+    if (body.length > MAX_ACTION_LENGTH) {
+      response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value());
+      return;
+    }
+    String token = new String(body, StandardCharsets.US_ASCII).trim();
+    try {
+      if (getPath(request).equals(this.pushNotBeforePath)) {
+        PushNotBeforeAction action = verifyAction(token, PushNotBeforeAction.class);
+        this.revocationIndex.setNotBefore(action.getNotBefore());
+        log.debug("Pushed not-before time {}", action.getNotBefore());
+      } else {
+        applyLogout(verifyAction(token, LogoutAction.class));
+      }
+    } catch (VerificationException e) {
+      log.warn("Rejected admin action: {}", e.getMessage());
+      response.sendError(HttpStatus.FORBIDDEN.value(), HttpStatus.FORBIDDEN.getReasonPhrase());
+      return;
+    }
+    response.setStatus(HttpStatus.NO_CONTENT.value());
+  }
+
+  private void applyLogout(LogoutAction action) {
+    List<String> sessionIds = action.getKeycloakSessionIds();
+    if (sessionIds != null && !sessionIds.isEmpty()) {
+      sessionIds.forEach(this.revocationIndex::revokeSession);
+      log.debug("Logged out {} sessions", sessionIds.size());
+    } else if (action.getAdapterSessionIds() == null) {
+      // Logout of all sessions of the realm
+      this.revocationIndex.setNotBefore(action.getNotBefore());
+      log.debug("Logged out all sessions before {}", action.getNotBefore());
+    }
+  }
+
+  private <T extends AdminAction> T verifyAction(String token, Class<T> actionType)
+      throws VerificationException {
+    T action;
+    try {
+      JWSInput input = new JWSInput(token);
+      String kid = input.getHeader().getKeyId();
+      PublicKey publicKey = kid == null ? null : this.publicKeyResolver.apply(kid);
+      if (publicKey == null) {
+        throw new VerificationException("Unknown key ID " + kid);
+      }
+      JcaSignatureVerifierContext verifier =
+          new JcaSignatureVerifierContext(kid, input.getHeader().getRawAlgorithm(), publicKey);
+      byte[] data = input.getEncodedSignatureInput().getBytes(StandardCharsets.UTF_8);
+      if (!verifier.verify(data, input.getSignature())) {
+        throw new VerificationException("Invalid action signature");
+      }
+      action = input.readJsonContent(actionType);
+    } catch (JWSInputException e) {
+      throw new VerificationException("Failed to parse admin action", e);
+    }
+    if (action.isExpired() || !action.validate()) {
+      throw new VerificationException("Expired or invalid action " + action.getAction());
+    }
+    if (!this.clientId.equals(action.getResource())) {
+      throw new VerificationException("Action for another client " + action.getResource());
+    }
+    return action;
+  }
+
+  private static PublicKey findPublicKey(IssuerKeyLocatorRegistry registry, String kid) {
+    // The realms whose keys are already held are searched first, so that an unknown key ID only
+    // causes fetches from the other realms
+    Set<String> activeIssuers = registry.getActiveIssuers();
+    for (String issuer : activeIssuers) {
+      PublicKey publicKey = findPublicKey(registry, issuer, kid);
+      if (publicKey != null) {
+        return publicKey;
+      }
+    }
+    for (String issuer : registry.getAllowedIssuers()) {
+      if (!activeIssuers.contains(issuer)) {
+        PublicKey publicKey = findPublicKey(registry, issuer, kid);
+        if (publicKey != null) {
+          return publicKey;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static PublicKey findPublicKey(
+      IssuerKeyLocatorRegistry registry, String issuer, String kid) {
+    RemotePublicKeyLocator locator = registry.getLocator(issuer);
+    return locator == null ? null : locator.getPublicKey(kid);
+  }
+
+  private static String getPath(HttpServletRequest request) {
+    return request.getRequestURI().substring(request.getContextPath().length());
+  }
+}
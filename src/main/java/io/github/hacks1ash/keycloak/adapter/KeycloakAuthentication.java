@@ -1,6 +1,7 @@
 package io.github.hacks1ash.keycloak.adapter;
 
 import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.RoleBitSet;
 import java.util.Collection;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -23,6 +24,12 @@ public class KeycloakAuthentication<T extends DefaultKeycloakUser> extends JwtAu
   /** The authenticated user details. */
   private final T authenticatedUser;
 
+  /**
+   * The granted authorities as bits of the role universe, or null if no role universe is
+   * configured.
+   */
+  private final transient RoleBitSet roleBitSet;
+
   /**
    * Constructs a KeycloakAuthentication object with the specified parameters.
    *
@@ -36,7 +43,27 @@ public class KeycloakAuthentication<T extends DefaultKeycloakUser> extends JwtAu
       Collection<? extends GrantedAuthority> authorities,
       String name,
       T authenticatedUser) {
+    this(jwt, authorities, name, authenticatedUser, null);
+  }
+
+  /**
+   * Constructs a KeycloakAuthentication object whose authorities are also held as bits of a role
+   * universe.
+   *
+   * @param jwt The JWT token.
+   * @param authorities The collection of granted authorities.
+   * @param name The principal name.
+   * @param authenticatedUser The authenticated user details.
+   * @param roleBitSet The bits of the granted authorities, or null.
+   */
+  public KeycloakAuthentication(
+      Jwt jwt,
+      Collection<? extends GrantedAuthority> authorities,
+      String name,
+      T authenticatedUser,
+      RoleBitSet roleBitSet) {
     super(jwt, authorities, name);
     this.authenticatedUser = authenticatedUser;
+    this.roleBitSet = roleBitSet;
   }
 }
@@ -0,0 +1,162 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.utils.RoleBitSet;
+import io.github.hacks1ash.keycloak.adapter.utils.RoleUniverse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import org.springframework.security.authorization.AuthorityAuthorizationDecision;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * An {@link AuthorizationManager} granting access to authentications having any of a set of
+ * authorities, like {@link AuthorityAuthorizationManager}, but checking the role bits of {@code
+ * KeycloakAuthentication.getRoleBitSet()} with a mask compiled once per role universe. Authorities
+ * outside of the role universe, and authentications without role bits, are checked by an {@link
+ * AuthorityAuthorizationManager}.
+ *
+ * <pre>{@code
+ * registry.requestMatchers("/admin/**").access(KeycloakAuthorizationManager.hasRole("admin"));
+ * }</pre>
+ *
+ * @param <T> The type of object being authorized.
+ */
+public final class KeycloakAuthorizationManager<T> implements AuthorizationManager<T> {
+
+  private static final String ROLE_PREFIX = "ROLE_";
+
+  private final List<String> authorities;
+
+  private final AuthorityAuthorizationManager<T> fallback;
+
+  private final AuthorizationDecision granted;
+
+  private final AuthorizationDecision denied;
+
+  private volatile CompiledMask compiledMask;
+
+  private KeycloakAuthorizationManager(
+      List<String> authorities, AuthorityAuthorizationManager<T> fallback) {
+    this.authorities = authorities;
+    this.fallback = fallback;
+    this.granted =
+        new AuthorityAuthorizationDecision(true, AuthorityUtils.createAuthorityList(authorities));
+    this.denied =
+        new AuthorityAuthorizationDecision(false, AuthorityUtils.createAuthorityList(authorities));
+  }
+
+  /**
+   * Creates an instance granting access to authentications having the role, prefixed with {@code
+   * ROLE_}.
+   *
+   * @param role The role, e.g. {@code admin}.
+   * @param <T> The type of object being authorized.
+   * @return The authorization manager.
+   */
+  public static <T> KeycloakAuthorizationManager<T> hasRole(String role) {
+    return hasAnyRole(role);
+  }
+
+  /**
+   * Creates an instance granting access to authentications having any of the roles, prefixed with
+   * {@code ROLE_}.
+   *
+   * @param roles The roles, e.g. {@code admin}.
+   * @param <T> The type of object being authorized.
+   * @return The authorization manager.
+   */
+  public static <T> KeycloakAuthorizationManager<T> hasAnyRole(String... roles) {
+    return hasAnyRole(ROLE_PREFIX, roles);
+  }
+
+  /**
+   * Creates an instance granting access to authentications having any of the roles, prefixed with
+   * the given prefix.
+   *
+   * @param rolePrefix The prefix of the roles, e.g. {@code ROLE_}.
+   * @param roles The roles, e.g. {@code admin}.
+   * @param <T> The type of object being authorized.
+   * @return The authorization manager.
+   */
+  public static <T> KeycloakAuthorizationManager<T> hasAnyRole(String rolePrefix, String[] roles) {
+    List<String> authorities = new ArrayList<>(roles.length);
+    for (String role : roles) {
+      authorities.add(rolePrefix + role);
+    }
+    return new KeycloakAuthorizationManager<>(
+        List.copyOf(authorities), AuthorityAuthorizationManager.hasAnyRole(rolePrefix, roles));
+  }
+
+  /**
+   * Creates an instance granting access to authentications having the authority.
+   *
+   * @param authority The authority, e.g. {@code ROLE_admin}.
+   * @param <T> The type of object being authorized.
+   * @return The authorization manager.
+   */
+  public static <T> KeycloakAuthorizationManager<T> hasAuthority(String authority) {
+    return hasAnyAuthority(authority);
+  }
+
+  /**
+   * Creates an instance granting access to authentications having any of the authorities.
+   *
+   * @param authorities The authorities, e.g. {@code ROLE_admin}.
+   * @param <T> The type of object being authorized.
+   * @return The authorization manager.
+   */
+  public static <T> KeycloakAuthorizationManager<T> hasAnyAuthority(String... authorities) {
+    return new KeycloakAuthorizationManager<>(
+        List.of(authorities), AuthorityAuthorizationManager.hasAnyAuthority(authorities));
+  }
+
+  /**
+   * Determines if the current authentication has any of the authorities.
+   *
+   * @param authentication The supplier of the authentication to check.
+   * @param object The object being authorized.
+   * @return The authorization decision.
+   */
+  @Override
+  public AuthorizationDecision check(Supplier<Authentication> authentication, T object) {
+    if (authentication.get() instanceof KeycloakAuthentication<?> keycloakAuthentication
+        && keycloakAuthentication.isAuthenticated()
+        && keycloakAuthentication.getRoleBitSet() != null) {
+      RoleBitSet roleBitSet = keycloakAuthentication.getRoleBitSet();
+      CompiledMask mask = compile(roleBitSet.getUniverse());
+      if (roleBitSet.intersects(mask.bits())) {
+        return this.granted;
+      }
+      if (mask.complete()) {
+        return this.denied;
+      }
+    }
+    return this.fallback.check(authentication, object);
+  }
+
+  @Override
+  public String toString() {
+    return "KeycloakAuthorizationManager[authorities=" + this.authorities + "]";
+  }
+
+  // The universe only changes at startup, so the mask is compiled about once
+  private CompiledMask compile(RoleUniverse universe) {
+    CompiledMask mask = this.compiledMask;
+    if (mask == null || mask.universe() != universe) {
+      boolean complete = true;
+      for (String authority : this.authorities) {
+        complete &= universe.indexOf(authority) >= 0;
+      }
+      mask = new CompiledMask(universe, universe.toMask(this.authorities), complete);
+      this.compiledMask = mask;
+    }
+    return mask;
+  }
+
+  // The authorities as bits of a universe, complete if they are all part of it
+  private record CompiledMask(RoleUniverse universe, long[] bits, boolean complete) {}
+}
@@ -3,21 +3,49 @@ package io.github.hacks1ash.keycloak.adapter;
 import io.github.hacks1ash.keycloak.adapter.customizer.AuthorizeHttpRequestsCustomizer;
 import io.github.hacks1ash.keycloak.adapter.customizer.CorsCustomizer;
 import io.github.hacks1ash.keycloak.adapter.customizer.CsrfCustomizer;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
 import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.IssuerKeyLocatorRegistry;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksRefreshScheduler;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksSnapshotFile;
+import io.github.hacks1ash.keycloak.adapter.utils.KeySnapshot;
 import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.RestTemplateHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.RevocationIndex;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenPreFilter;
+import io.github.hacks1ash.keycloak.adapter.utils.VerifiedTokenCache;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.keycloak.common.util.Time;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AuthorizeHttpRequestsConfigurer;
 import org.springframework.security.config.annotation.web.configurers.CorsConfigurer;
 import org.springframework.security.config.annotation.web.configurers.CsrfConfigurer;
+import org.springframework.security.config.core.GrantedAuthorityDefaults;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -27,30 +55,302 @@ import org.springframework.web.client.RestTemplate;
  * <p>This class is responsible for setting up the necessary beans and configurations to integrate
  * Keycloak into a Spring Boot application. It includes the setup of beans for JWT authentication
  * conversion, remote public key locator, and customizers for HTTP security configuration.
+ *
+ * <p>The blocking key locators and the beans built on them are not created in reactive
+ * applications, which use the non-blocking beans of {@link KeycloakReactiveAutoConfiguration}
+ * instead. The HTTP security configuration is only created in servlet applications.
  */
 @Configuration
 @EnableConfigurationProperties(KeycloakProperties.class)
 @AutoConfigureBefore(UserDetailsServiceAutoConfiguration.class)
 @ConditionalOnProperty(name = "keycloak.enabled", havingValue = "true", matchIfMissing = true)
-@Import({
-  WebSecurityConfig.class,
-  CustomAccessDeniedController.class,
-  CustomAuthenticationEntryPoint.class,
-})
 public class KeycloakAutoConfiguration {
 
-  private final RestTemplate restTemplate = new RestTemplate();
+  /**
+   * Name of the RestTemplate bean that, when present, is used to call the Keycloak server instead
+   * of the client configured from {@code keycloak.jwks}.
+   */
+  public static final String REST_TEMPLATE_BEAN_NAME = "keycloakRestTemplate";
+
+  /**
+   * Name of the RestClient bean that, when present, is used to call the Keycloak server instead of
+   * the {@value #REST_TEMPLATE_BEAN_NAME} bean or the client configured from {@code keycloak.jwks}.
+   */
+  public static final String REST_CLIENT_BEAN_NAME = "keycloakRestClient";
+
+  /**
+   * Name of the Executor bean that, when present, runs the tasks of the {@link
+   * KeycloakBatchVerifier} instead of its dedicated executor.
+   */
+  public static final String BATCH_EXECUTOR_BEAN_NAME = "keycloakBatchExecutor";
+
+  /**
+   * Creates the RestTemplate bean calling the Keycloak server, with connections kept alive by the
+   * JDK HTTP client and the timeouts from {@code keycloak.jwks}. The bean is not created when the
+   * application provides a {@value #REST_TEMPLATE_BEAN_NAME} or {@value #REST_CLIENT_BEAN_NAME}
+   * bean, and is not a candidate for autowiring by type, so it never clashes with the application's
+   * own clients.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @return A RestTemplate instance.
+   */
+  @Bean(name = REST_TEMPLATE_BEAN_NAME, autowireCandidate = false)
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean(name = {REST_TEMPLATE_BEAN_NAME, REST_CLIENT_BEAN_NAME})
+  public RestTemplate keycloakRestTemplate(KeycloakProperties keycloakProperties) {
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    return RestTemplateHelper.create(jwks.getConnectTimeout(), jwks.getReadTimeout());
+  }
+
+  /**
+   * Creates the RestClient bean calling the Keycloak server, shared by all key locators, from the
+   * {@value #REST_TEMPLATE_BEAN_NAME} bean. The bean is not created when the application provides a
+   * {@value #REST_CLIENT_BEAN_NAME} bean, and is not a candidate for autowiring by type.
+   *
+   * @param beanFactory The bean factory holding the {@value #REST_TEMPLATE_BEAN_NAME} bean.
+   * @return A RestClient instance.
+   */
+  @Bean(name = REST_CLIENT_BEAN_NAME, autowireCandidate = false)
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean(name = REST_CLIENT_BEAN_NAME)
+  public RestClient keycloakRestClient(BeanFactory beanFactory) {
+    return RestClient.create(beanFactory.getBean(REST_TEMPLATE_BEAN_NAME, RestTemplate.class));
+  }
+
+  /**
+   * Creates a JwksRefreshScheduler bean that refreshes the realm public keys in the background. The
+   * scheduler is created unless {@code keycloak.jwks.background-refresh} is set to false.
+   *
+   * @return A JwksRefreshScheduler instance.
+   */
+  @Bean
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(
+      name = "keycloak.jwks.background-refresh",
+      havingValue = "true",
+      matchIfMissing = true)
+  public JwksRefreshScheduler jwksRefreshScheduler() {
+    return new JwksRefreshScheduler();
+  }
 
   /**
    * Creates a RemotePublicKeyLocator bean for locating public keys from a Keycloak server. This
    * bean is essential for validating JWT tokens against the public keys from the Keycloak server.
+   * When {@code keycloak.jwks.snapshot-file} is set, the keys saved by the previous run are loaded
+   * right away. The locator is not created in multi-issuer mode, where the keys of each realm are
+   * located by the {@link IssuerKeyLocatorRegistry} instead.
    *
    * @param keycloakProperties The Keycloak configuration properties.
+   * @param jwksRefreshScheduler The scheduler for background refreshes, if enabled.
+   * @param keycloakMetrics The metrics recording key lookups and fetches, if configured.
+   * @param beanFactory The bean factory holding the {@value #REST_CLIENT_BEAN_NAME} bean.
    * @return A RemotePublicKeyLocator instance.
    */
   @Bean
-  public RemotePublicKeyLocator remotePublicKeyLocator(KeycloakProperties keycloakProperties) {
-    return new RemotePublicKeyLocator(keycloakProperties, restTemplate);
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnProperty(
+      name = "keycloak.multi-issuer.enabled",
+      havingValue = "false",
+      matchIfMissing = true)
+  public RemotePublicKeyLocator remotePublicKeyLocator(
+      KeycloakProperties keycloakProperties,
+      ObjectProvider<JwksRefreshScheduler> jwksRefreshScheduler,
+      ObjectProvider<KeycloakMetrics> keycloakMetrics,
+      BeanFactory beanFactory) {
+    RemotePublicKeyLocator remotePublicKeyLocator =
+        new RemotePublicKeyLocator(keycloakProperties, getRestClient(beanFactory));
+    keycloakMetrics.ifAvailable(remotePublicKeyLocator::setMetrics);
+    jwksRefreshScheduler.ifAvailable(remotePublicKeyLocator::enableBackgroundRefresh);
+
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    if (StringUtils.hasText(jwks.getSnapshotFile())) {
+      remotePublicKeyLocator.setSnapshotFile(
+          new JwksSnapshotFile(Path.of(jwks.getSnapshotFile()), jwks.getSnapshotMaxAge()));
+      remotePublicKeyLocator.loadSnapshot();
+    }
+    return remotePublicKeyLocator;
+  }
+
+  /**
+   * Creates an IssuerKeyLocatorRegistry bean holding one key locator per realm, for applications
+   * accepting tokens from several realms. The registry is only created when {@code
+   * keycloak.multi-issuer.enabled} is set.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param jwksRefreshScheduler The scheduler for background refreshes, if enabled.
+   * @param keycloakMetrics The metrics recording key lookups and fetches, if configured.
+   * @param beanFactory The bean factory holding the {@value #REST_CLIENT_BEAN_NAME} bean.
+   * @return An IssuerKeyLocatorRegistry instance.
+   */
+  @Bean
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(name = "keycloak.multi-issuer.enabled", havingValue = "true")
+  public IssuerKeyLocatorRegistry issuerKeyLocatorRegistry(
+      KeycloakProperties keycloakProperties,
+      ObjectProvider<JwksRefreshScheduler> jwksRefreshScheduler,
+      ObjectProvider<KeycloakMetrics> keycloakMetrics,
+      BeanFactory beanFactory) {
+    KeycloakProperties.MultiIssuer multiIssuer = keycloakProperties.getMultiIssuer();
+    IssuerKeyLocatorRegistry issuerKeyLocatorRegistry =
+        new IssuerKeyLocatorRegistry(
+            keycloakProperties,
+            getRestClient(beanFactory),
+            multiIssuer.getAllowedIssuers(),
+            multiIssuer.getIdleTimeout());
+    jwksRefreshScheduler.ifAvailable(issuerKeyLocatorRegistry::setRefreshScheduler);
+    keycloakMetrics.ifAvailable(issuerKeyLocatorRegistry::setMetrics);
+    return issuerKeyLocatorRegistry;
+  }
+
+  /**
+   * Creates a VerifiedTokenCache bean holding already verified tokens until they expire. The cache
+   * is only created when {@code keycloak.token-cache.enabled} is set and is cleared whenever the
+   * realm keys are rotated.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param remotePublicKeyLocator The locator whose key rotations invalidate the cache, unless the
+   *     multi-issuer mode is enabled.
+   * @param issuerKeyLocatorRegistry The per-issuer locators whose key rotations invalidate the
+   *     cache, if the multi-issuer mode is enabled.
+   * @return A VerifiedTokenCache instance.
+   */
+  @Bean
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(name = "keycloak.token-cache.enabled", havingValue = "true")
+  public VerifiedTokenCache verifiedTokenCache(
+      KeycloakProperties keycloakProperties,
+      ObjectProvider<RemotePublicKeyLocator> remotePublicKeyLocator,
+      ObjectProvider<IssuerKeyLocatorRegistry> issuerKeyLocatorRegistry) {
+    VerifiedTokenCache verifiedTokenCache =
+        new VerifiedTokenCache(keycloakProperties.getTokenCache().getMaximumSize());
+    remotePublicKeyLocator.ifAvailable(
+        locator -> locator.addKeysChangeListener(verifiedTokenCache::invalidateAll));
+    issuerKeyLocatorRegistry.ifAvailable(
+        registry -> registry.addKeysChangeListener(verifiedTokenCache::invalidateAll));
+    return verifiedTokenCache;
+  }
+
+  /**
+   * Creates a RevocationIndex bean holding the tokens revoked by the not-before and logout
+   * callbacks of Keycloak. The index is only created when {@code keycloak.revocation.enabled} is
+   * set, in which case the callbacks are accepted under {@code keycloak.revocation.admin-path}.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @return A RevocationIndex instance.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(name = "keycloak.revocation.enabled", havingValue = "true")
+  public RevocationIndex revocationIndex(KeycloakProperties keycloakProperties) {
+    return new RevocationIndex(keycloakProperties.getRevocation().getRetention());
+  }
+
+  /**
+   * Creates a TokenPreFilter bean rejecting oversized, malformed and expired tokens, and tokens
+   * signed with an unsupported algorithm, before they are parsed. The pre-filter is only created
+   * when {@code keycloak.pre-filter.enabled} is set.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @return A TokenPreFilter instance.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(name = "keycloak.pre-filter.enabled", havingValue = "true")
+  public TokenPreFilter tokenPreFilter(KeycloakProperties keycloakProperties) {
+    return new TokenPreFilter(keycloakProperties);
+  }
+
+  /**
+   * Creates an OpaqueTokenIntrospector bean validating tokens by the introspection endpoint of the
+   * realm, with cached results and kept-alive connections. The introspector is only created when
+   * {@code keycloak.introspection.enabled} is set, and replaces the validation of tokens as JWTs.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @return A KeycloakOpaqueTokenIntrospector instance.
+   */
+  @Bean
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean(OpaqueTokenIntrospector.class)
+  @ConditionalOnProperty(name = "keycloak.introspection.enabled", havingValue = "true")
+  public KeycloakOpaqueTokenIntrospector keycloakOpaqueTokenIntrospector(
+      KeycloakProperties keycloakProperties) {
+    return new KeycloakOpaqueTokenIntrospector(keycloakProperties);
+  }
+
+  /**
+   * Creates a KeycloakJWTDecoder bean decoding and validating JWT tokens issued by Keycloak, shared
+   * by the HTTP security configuration and the batch verifier. In multi-issuer mode, tokens are
+   * verified with the keys of the realm that issued them. Revoked tokens are rejected if a
+   * RevocationIndex bean is present, and tokens are checked before being parsed if a TokenPreFilter
+   * bean is present.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param jwtAuthConverter The converter whose user type tokens are deserialized into.
+   * @param remotePublicKeyLocator The locator of the realm keys, unless the multi-issuer mode is
+   *     enabled.
+   * @param issuerKeyLocatorRegistry The per-issuer locators, if the multi-issuer mode is enabled.
+   * @param verifiedTokenCache The cache of verified tokens, if enabled.
+   * @param revocationIndex The index of revoked tokens, if enabled.
+   * @param tokenPreFilter The structural check of tokens, if enabled.
+   * @param keycloakMetrics The metrics recording the verification latency, if configured.
+   * @return A KeycloakJWTDecoder instance.
+   */
+  @Bean
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean
+  public KeycloakJWTDecoder jwtDecoder(
+      KeycloakProperties keycloakProperties,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      ObjectProvider<RemotePublicKeyLocator> remotePublicKeyLocator,
+      ObjectProvider<IssuerKeyLocatorRegistry> issuerKeyLocatorRegistry,
+      ObjectProvider<VerifiedTokenCache> verifiedTokenCache,
+      ObjectProvider<RevocationIndex> revocationIndex,
+      ObjectProvider<TokenPreFilter> tokenPreFilter,
+      ObjectProvider<KeycloakMetrics> keycloakMetrics) {
+    IssuerKeyLocatorRegistry registry = issuerKeyLocatorRegistry.getIfAvailable();
+    KeycloakJWTDecoder jwtDecoder =
+        registry == null
+            ? new KeycloakJWTDecoder(
+                remotePublicKeyLocator.getObject(),
+                keycloakProperties,
+                jwtAuthConverter.getUserType())
+            : new KeycloakJWTDecoder(registry, keycloakProperties, jwtAuthConverter.getUserType());
+    jwtDecoder.setVerifiedTokenCache(verifiedTokenCache.getIfAvailable());
+    jwtDecoder.setRevocationIndex(revocationIndex.getIfAvailable());
+    jwtDecoder.setTokenPreFilter(tokenPreFilter.getIfAvailable());
+    keycloakMetrics.ifAvailable(jwtDecoder::setMetrics);
+    return jwtDecoder;
+  }
+
+  /**
+   * Creates a KeycloakBatchVerifier bean verifying batches of tokens, e.g. of messages, with the
+   * same decoder and converter as the tokens of HTTP requests. The tasks of large batches run on
+   * the {@value #BATCH_EXECUTOR_BEAN_NAME} bean if the application provides one, otherwise on a
+   * dedicated executor bounded by {@code keycloak.batch.parallelism}.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param jwtDecoder The decoder verifying each token.
+   * @param jwtAuthConverter The converter used by the application.
+   * @param keycloakBatchExecutor The executor provided by the application, if any.
+   * @return A KeycloakBatchVerifier instance.
+   */
+  @Bean
+  @Conditional(NonReactiveApplicationCondition.class)
+  @ConditionalOnMissingBean
+  @ConditionalOnBean(KeycloakJWTDecoder.class)
+  public KeycloakBatchVerifier<? extends DefaultKeycloakUser> keycloakBatchVerifier(
+      KeycloakProperties keycloakProperties,
+      KeycloakJWTDecoder jwtDecoder,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      @Qualifier(BATCH_EXECUTOR_BEAN_NAME) ObjectProvider<Executor> keycloakBatchExecutor) {
+    Executor executor = keycloakBatchExecutor.getIfAvailable();
+    if (executor == null) {
+      return new KeycloakBatchVerifier<>(keycloakProperties, jwtDecoder, jwtAuthConverter);
+    }
+    return new KeycloakBatchVerifier<>(keycloakProperties, jwtDecoder, jwtAuthConverter, executor);
   }
 
   /**
@@ -59,50 +359,176 @@ public class KeycloakAutoConfiguration {
    * converter is conditionally created if no existing bean of this type is present.
    *
    * @param keycloakProperties The Keycloak configuration properties.
+   * @param keycloakMetrics The metrics recording the conversion latency, if configured.
    * @return A JwtAuthConverter instance for Keycloak users.
    */
   @Bean
   @ConditionalOnMissingBean(JwtAuthConverter.class)
   public JwtAuthConverter<DefaultKeycloakUser> jwtAuthConverter(
-      KeycloakProperties keycloakProperties) {
-    return new JwtAuthConverter<>(keycloakProperties, DefaultKeycloakUser.class);
+      KeycloakProperties keycloakProperties, ObjectProvider<KeycloakMetrics> keycloakMetrics) {
+    JwtAuthConverter<DefaultKeycloakUser> jwtAuthConverter =
+        new JwtAuthConverter<>(keycloakProperties, DefaultKeycloakUser.class);
+    keycloakMetrics.ifAvailable(jwtAuthConverter::setMetrics);
+    return jwtAuthConverter;
   }
 
   /**
-   * Registers customizers for the authorization of HTTP requests. These customizers define the
-   * security constraints on the HTTP requests handled by the application.
+   * Creates a RoleUniverseInitializer bean building the role universe of the converter at startup,
+   * so that authentications carry their authorities as bits. The initializer is only created when
+   * {@code keycloak.authorities.bitset-enabled} is set.
    *
-   * @return A customizer for the authorization of HTTP requests.
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param jwtAuthConverter The converter used by the application.
+   * @param beanFactory The bean factory whose beans are scanned for method security annotations.
+   * @param grantedAuthorityDefaults The role prefix of method security expressions, if customized.
+   * @return A RoleUniverseInitializer instance.
    */
   @Bean
   @ConditionalOnMissingBean
-  public Customizer<
-          AuthorizeHttpRequestsConfigurer<HttpSecurity>.AuthorizationManagerRequestMatcherRegistry>
-      authorizeHttpRequestsCustomizer() {
-    return new AuthorizeHttpRequestsCustomizer();
+  @ConditionalOnProperty(name = "keycloak.authorities.bitset-enabled", havingValue = "true")
+  public RoleUniverseInitializer roleUniverseInitializer(
+      KeycloakProperties keycloakProperties,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      ListableBeanFactory beanFactory,
+      ObjectProvider<GrantedAuthorityDefaults> grantedAuthorityDefaults) {
+    return new RoleUniverseInitializer(
+        keycloakProperties, jwtAuthConverter, beanFactory, getRolePrefix(grantedAuthorityDefaults));
   }
 
   /**
-   * Registers a customizer for CORS configuration in HTTP security. This customizer allows for the
-   * configuration of Cross-Origin Resource Sharing policies.
+   * Creates a MethodSecurityExpressionHandler bean resolving the role checks of method security
+   * expressions with the role bits of the authentication. The handler is only created when {@code
+   * keycloak.authorities.bitset-enabled} is set and no other handler is defined.
    *
-   * @return A customizer for CORS configuration.
+   * @param grantedAuthorityDefaults The role prefix of method security expressions, if customized.
+   * @param roleHierarchy The role hierarchy, if any, in which case role bits are not used.
+   * @return A KeycloakMethodSecurityExpressionHandler instance.
    */
   @Bean
-  @ConditionalOnMissingBean
-  public Customizer<CorsConfigurer<HttpSecurity>> corsConfigurerCustomizer() {
-    return new CorsCustomizer();
+  @ConditionalOnMissingBean(MethodSecurityExpressionHandler.class)
+  @ConditionalOnProperty(name = "keycloak.authorities.bitset-enabled", havingValue = "true")
+  public static MethodSecurityExpressionHandler keycloakMethodSecurityExpressionHandler(
+      ObjectProvider<GrantedAuthorityDefaults> grantedAuthorityDefaults,
+      ObjectProvider<RoleHierarchy> roleHierarchy) {
+    KeycloakMethodSecurityExpressionHandler handler = new KeycloakMethodSecurityExpressionHandler();
+    handler.setDefaultRolePrefix(getRolePrefix(grantedAuthorityDefaults));
+    roleHierarchy.ifAvailable(handler::setRoleHierarchy);
+    return handler;
   }
 
   /**
-   * Registers a customizer for CSRF configuration in HTTP security. This customizer allows for the
-   * configuration of Cross-Site Request Forgery protection policies.
+   * Creates a KeycloakWarmup bean that prefetches the realm keys and warms up token verification at
+   * startup. The warm-up is only created when {@code keycloak.warmup.enabled} is set.
    *
-   * @return A customizer for CSRF configuration.
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param jwtAuthConverter The converter used by the application.
+   * @param jwtDecoder The decoder whose verification is warmed up.
+   * @param remotePublicKeyLocator The locator whose keys are prefetched, unless the multi-issuer
+   *     mode is enabled.
+   * @param issuerKeyLocatorRegistry The per-issuer locators whose keys are prefetched instead, if
+   *     the multi-issuer mode is enabled.
+   * @return A KeycloakWarmup instance.
    */
   @Bean
   @ConditionalOnMissingBean
-  public Customizer<CsrfConfigurer<HttpSecurity>> csrfConfigurerCustomizer() {
-    return new CsrfCustomizer();
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  @ConditionalOnProperty(name = "keycloak.warmup.enabled", havingValue = "true")
+  public KeycloakWarmup keycloakWarmup(
+      KeycloakProperties keycloakProperties,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      KeycloakJWTDecoder jwtDecoder,
+      ObjectProvider<RemotePublicKeyLocator> remotePublicKeyLocator,
+      ObjectProvider<IssuerKeyLocatorRegistry> issuerKeyLocatorRegistry) {
+    IssuerKeyLocatorRegistry registry = issuerKeyLocatorRegistry.getIfAvailable();
+    if (registry == null) {
+      RemotePublicKeyLocator locator = remotePublicKeyLocator.getObject();
+      return new KeycloakWarmup(
+          keycloakProperties,
+          jwtAuthConverter,
+          jwtDecoder.getJwtVerifier(),
+          () -> {
+            locator.reset();
+            return locator.getKeySnapshot();
+          });
+    }
+    return new KeycloakWarmup(
+        keycloakProperties,
+        jwtAuthConverter,
+        jwtDecoder.getJwtVerifier(),
+        () -> {
+          Map<String, PublicKey> keys = new HashMap<>();
+          for (String issuer : registry.getAllowedIssuers()) {
+            RemotePublicKeyLocator issuerKeyLocator = registry.getLocator(issuer);
+            issuerKeyLocator.reset();
+            keys.putAll(issuerKeyLocator.getKeySnapshot().keys());
+          }
+          return new KeySnapshot(keys, Time.currentTime(), 0);
+        });
+  }
+
+  /**
+   * Returns the {@value #REST_CLIENT_BEAN_NAME} bean. It is looked up by name, as the default one
+   * is not a candidate for autowiring.
+   */
+  private static RestClient getRestClient(BeanFactory beanFactory) {
+    return beanFactory.getBean(REST_CLIENT_BEAN_NAME, RestClient.class);
+  }
+
+  private static String getRolePrefix(ObjectProvider<GrantedAuthorityDefaults> defaults) {
+    GrantedAuthorityDefaults grantedAuthorityDefaults = defaults.getIfAvailable();
+    return grantedAuthorityDefaults == null ? "ROLE_" : grantedAuthorityDefaults.getRolePrefix();
+  }
+
+  /**
+   * Configuration of the HTTP security of servlet applications, with the customizers applied to the
+   * security filter chain.
+   */
+  @Configuration
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  @Import({
+    WebSecurityConfig.class,
+    CustomAccessDeniedController.class,
+    CustomAuthenticationEntryPoint.class,
+  })
+  static class ServletWebSecurityConfiguration {
+
+    /**
+     * Registers customizers for the authorization of HTTP requests. These customizers define the
+     * security constraints on the HTTP requests handled by the application.
+     *
+     * @return A customizer for the authorization of HTTP requests.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public Customizer<
+            AuthorizeHttpRequestsConfigurer<HttpSecurity>
+                .AuthorizationManagerRequestMatcherRegistry>
+        authorizeHttpRequestsCustomizer() {
+      return new AuthorizeHttpRequestsCustomizer();
+    }
+
+    /**
+     * Registers a customizer for CORS configuration in HTTP security. This customizer allows for
+     * the configuration of Cross-Origin Resource Sharing policies.
+     *
+     * @return A customizer for CORS configuration.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public Customizer<CorsConfigurer<HttpSecurity>> corsConfigurerCustomizer() {
+      return new CorsCustomizer();
+    }
+
+    /**
+     * Registers a customizer for CSRF configuration in HTTP security. This customizer allows for
+     * the configuration of Cross-Site Request Forgery protection policies.
+     *
+     * @return A customizer for CSRF configuration.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public Customizer<CsrfConfigurer<HttpSecurity>> csrfConfigurerCustomizer() {
+      return new CsrfCustomizer();
+    }
   }
 }
@@ -0,0 +1,256 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.KeySnapshot;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.util.Assert;
+
+/**
+ * Verifies batches of tokens, e.g. the tokens carried in the headers of the messages returned by a
+ * poll of a message consumer, and converts them with the same {@link JwtAuthConverter} as the
+ * tokens of HTTP requests.
+ *
+ * <p>Identical tokens of a batch are verified once, the realm keys are taken from one snapshot
+ * pinned for the whole batch, and large batches are split into tasks running in parallel on the
+ * given executor, or on a dedicated, bounded one. Tasks the executor rejects, e.g. because its
+ * queue is full, run on the calling thread. Invalid tokens never fail the batch, each token gets
+ * its own {@link VerificationResult} instead.
+ *
+ * @param <T> The user type that extends DefaultKeycloakUser.
+ */
+public class KeycloakBatchVerifier<T extends DefaultKeycloakUser> implements AutoCloseable {
+
+  private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  private final KeycloakJWTDecoder jwtDecoder;
+
+  private final JwtAuthConverter<T> jwtAuthConverter;
+
+  private final Executor executor;
+
+  private final ExecutorService ownedExecutor;
+
+  private final int parallelism;
+
+  private final int minTokensPerTask;
+
+  /**
+   * Constructs a KeycloakBatchVerifier using the settings of {@code keycloak.batch}, running the
+   * tasks of large batches on a dedicated executor with one thread less than the parallelism, as
+   * the calling thread verifies a task itself. The executor is shut down when the verifier is
+   * closed.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param jwtDecoder The decoder verifying each token.
+   * @param jwtAuthConverter The converter mapping verified tokens to authentications.
+   */
+  public KeycloakBatchVerifier(
+      KeycloakProperties keycloakProperties,
+      KeycloakJWTDecoder jwtDecoder,
+      JwtAuthConverter<T> jwtAuthConverter) {
+    this(
+        keycloakProperties,
+        jwtDecoder,
+        jwtAuthConverter,
+        createExecutor(keycloakProperties.getBatch().getParallelism()),
+        true);
+  }
+
+  /**
+   * Constructs a KeycloakBatchVerifier using the settings of {@code keycloak.batch}.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param jwtDecoder The decoder verifying each token.
+   * @param jwtAuthConverter The converter mapping verified tokens to authentications.
+   * @param executor The executor running the tasks of large batches, which is not shut down when
+   *     the verifier is closed.
+   */
+  public KeycloakBatchVerifier(
+      KeycloakProperties keycloakProperties,
+      KeycloakJWTDecoder jwtDecoder,
+      JwtAuthConverter<T> jwtAuthConverter,
+      Executor executor) {
+    this(keycloakProperties, jwtDecoder, jwtAuthConverter, executor, false);
+  }
+
+  private KeycloakBatchVerifier(
+      KeycloakProperties keycloakProperties,
+      KeycloakJWTDecoder jwtDecoder,
+      JwtAuthConverter<T> jwtAuthConverter,
+      Executor executor,
+      boolean ownsExecutor) {
+    Assert.notNull(executor, "executor cannot be null");
+    this.jwtDecoder = jwtDecoder;
+    this.jwtAuthConverter = jwtAuthConverter;
+    this.executor = executor;
+    this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    this.parallelism = Math.max(1, keycloakProperties.getBatch().getParallelism());
+    this.minTokensPerTask = Math.max(1, keycloakProperties.getBatch().getMinTokensPerTask());
+  }
+
+  /**
+   * Verifies and converts a batch of tokens. This method never throws for invalid tokens.
+   *
+   * @param tokens The tokens to verify.
+   * @return The results, in the order of the given tokens.
+   */
+  public List<VerificationResult<T>> verify(Collection<String> tokens) {
+    // Identical tokens, e.g. of messages sent by the same producer, are verified once
+    Map<String, Integer> indexes = new HashMap<>();
+    List<String> distinctTokens = new ArrayList<>();
+    int[] tokenIndexes = new int[tokens.size()];
+    int position = 0;
+    for (String token : tokens) {
+      Integer index = indexes.putIfAbsent(token, distinctTokens.size());
+      if (index == null) {
+        index = distinctTokens.size();
+        distinctTokens.add(token);
+      }
+      tokenIndexes[position++] = index;
+    }
+
+    VerificationResult<T>[] distinctResults = verifyDistinct(distinctTokens);
+
+    List<VerificationResult<T>> results = new ArrayList<>(tokenIndexes.length);
+    for (int index : tokenIndexes) {
+      results.add(distinctResults[index]);
+    }
+    return results;
+  }
+
+  /** Shuts down the dedicated executor, if the verifier created one. */
+  @Override
+  public void close() {
+    if (this.ownedExecutor != null) {
+      this.ownedExecutor.shutdown();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private VerificationResult<T>[] verifyDistinct(List<String> tokens) {
+    VerificationResult<T>[] results = new VerificationResult[tokens.size()];
+    Map<RemotePublicKeyLocator, KeySnapshot> pinnedSnapshots = new ConcurrentHashMap<>();
+
+    int taskCount = Math.min(this.parallelism, tokens.size() / this.minTokensPerTask);
+    if (taskCount <= 1) {
+      verifyRange(tokens, 0, tokens.size(), results, pinnedSnapshots);
+      return results;
+    }
+
+    int tokensPerTask = (tokens.size() + taskCount - 1) / taskCount;
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[taskCount - 1];
+    for (int task = 1; task < taskCount; task++) {
+      int from = task * tokensPerTask;
+      int to = Math.min(tokens.size(), from + tokensPerTask);
+      Runnable verification = () -> verifyRange(tokens, from, to, results, pinnedSnapshots);
+      try {
+        futures[task - 1] = CompletableFuture.runAsync(verification, this.executor);
+      } catch (RejectedExecutionException e) {
+        verification.run();
+        futures[task - 1] = CompletableFuture.completedFuture(null);
+      }
+    }
+    // The calling thread verifies the first range instead of waiting idle
+    verifyRange(tokens, 0, Math.min(tokens.size(), tokensPerTask), results, pinnedSnapshots);
+    CompletableFuture.allOf(futures).join();
+    return results;
+  }
+
+  private void verifyRange(
+      List<String> tokens,
+      int from,
+      int to,
+      VerificationResult<T>[] results,
+      Map<RemotePublicKeyLocator, KeySnapshot> pinnedSnapshots) {
+    for (int i = from; i < to; i++) {
+      results[i] = verifyToken(tokens.get(i), pinnedSnapshots);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private VerificationResult<T> verifyToken(
+      String token, Map<RemotePublicKeyLocator, KeySnapshot> pinnedSnapshots) {
+    try {
+      Jwt jwt = this.jwtDecoder.decode(token, pinnedSnapshots);
+      KeycloakAuthentication<T> authentication =
+          (KeycloakAuthentication<T>) this.jwtAuthConverter.convert(jwt);
+      return new VerificationResult<>(token, authentication, null);
+    } catch (JwtException e) {
+      return new VerificationResult<>(token, null, e);
+    } catch (IllegalArgumentException e) {
+      return new VerificationResult<>(token, null, new BadJwtException(e.getMessage(), e));
+    }
+  }
+
+  /**
+   * Creates a bounded executor for the tasks of large batches. Its queue holds one task per thread,
+   * beyond which tasks are rejected and run on the calling thread, and idle threads are stopped.
+   */
+  private static ExecutorService createExecutor(int parallelism) {
+    int threads = Math.max(1, parallelism - 1);
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            IDLE_THREAD_KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(threads),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "keycloak-batch-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * The outcome of the verification of one token of a batch.
+   *
+   * @param token The token.
+   * @param authentication The authentication of a valid token, or null.
+   * @param error The reason why the token is invalid, or null.
+   * @param <T> The user type that extends DefaultKeycloakUser.
+   */
+  public record VerificationResult<T extends DefaultKeycloakUser>(
+      String token, KeycloakAuthentication<T> authentication, JwtException error) {
+
+    /**
+     * Checks whether the token is valid.
+     *
+     * @return true if the token was verified and converted.
+     */
+    public boolean isValid() {
+      return authentication != null;
+    }
+
+    /**
+     * Returns the user of a valid token.
+     *
+     * @return The authenticated user, or null if the token is invalid.
+     */
+    public T user() {
+      return authentication == null ? null : authentication.getAuthenticatedUser();
+    }
+  }
+}
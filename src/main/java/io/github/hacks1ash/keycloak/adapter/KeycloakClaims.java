@@ -0,0 +1,116 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.util.JsonSerialization;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+
+/**
+ * Read-only view of the claims of an already verified Keycloak token. The subject is read directly
+ * from the deserialized token, and the full claim map is only decoded from the token payload the
+ * first time any other claim is accessed, so requests that never read extra claims pay nothing for
+ * them.
+ *
+ * <p>Claims are converted the way Spring's {@code MappedJwtClaimSetConverter} does: {@code iat},
+ * {@code exp} and {@code nbf} are {@link Instant}s and {@code aud} is a list of strings.
+ *
+ * <p>The view is serialized as a plain {@link LinkedHashMap} of the claims, so authentications
+ * holding it can still be stored in a session.
+ */
+final class KeycloakClaims extends AbstractMap<String, Object> implements Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+
+  private static final TypeReference<Map<String, Object>> CLAIMS_TYPE = new TypeReference<>() {};
+
+  private final String tokenValue;
+
+  private final JsonWebToken token;
+
+  private volatile Map<String, Object> claims;
+
+  /**
+   * Constructs a KeycloakClaims view of the given token.
+   *
+   * @param tokenValue The raw token value.
+   * @param token The verified token.
+   */
+  KeycloakClaims(String tokenValue, JsonWebToken token) {
+    this.tokenValue = tokenValue;
+    this.token = token;
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (JwtClaimNames.SUB.equals(key)) {
+      return token.getSubject();
+    }
+    return getClaims().get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return getClaims().containsKey(key);
+  }
+
+  @Override
+  public int size() {
+    return getClaims().size();
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return getClaims().entrySet();
+  }
+
+  @Serial
+  private Object writeReplace() {
+    return new LinkedHashMap<>(getClaims());
+  }
+
+  private Map<String, Object> getClaims() {
+    Map<String, Object> materialized = claims;
+    if (materialized == null) {
+      materialized = materialize(tokenValue);
+      claims = materialized;
+    }
+    return materialized;
+  }
+
+  private static Map<String, Object> materialize(String tokenValue) {
+    int payloadStart = tokenValue.indexOf('.') + 1;
+    String payload = tokenValue.substring(payloadStart, tokenValue.indexOf('.', payloadStart));
+    Map<String, Object> claims;
+    try {
+      claims = JsonSerialization.mapper.readValue(Base64Url.decode(payload), CLAIMS_TYPE);
+    } catch (IOException e) {
+      // The payload has already been deserialized successfully during verification
+      throw new UncheckedIOException(e);
+    }
+    claims.computeIfPresent(JwtClaimNames.IAT, (name, value) -> toInstant(value));
+    claims.computeIfPresent(JwtClaimNames.EXP, (name, value) -> toInstant(value));
+    claims.computeIfPresent(JwtClaimNames.NBF, (name, value) -> toInstant(value));
+    claims.computeIfPresent(JwtClaimNames.AUD, (name, value) -> toList(value));
+    return Collections.unmodifiableMap(claims);
+  }
+
+  private static Object toInstant(Object value) {
+    return value instanceof Number number ? Instant.ofEpochSecond(number.longValue()) : value;
+  }
+
+  private static Object toList(Object value) {
+    return value instanceof String audience ? List.of(audience) : value;
+  }
+}
@@ -0,0 +1,51 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import org.springframework.boot.actuate.health.HealthEndpointGroupsPostProcessor;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Auto-configuration class for the health indicators of the Keycloak adapter. This configuration is
+ * only enabled when Spring Boot Actuator is on the classpath.
+ */
+@Configuration
+@AutoConfigureAfter(
+    value = {KeycloakAutoConfiguration.class, KeycloakReactiveAutoConfiguration.class},
+    name =
+        "org.springframework.boot.actuate.autoconfigure.availability.AvailabilityProbesAutoConfiguration")
+@ConditionalOnClass(HealthIndicator.class)
+public class KeycloakHealthAutoConfiguration {
+
+  /**
+   * Creates a health indicator reporting whether token verification has been warmed up. The
+   * indicator is only created when the warm-up is enabled.
+   *
+   * @param keycloakWarmup The warm-up whose progress is reported.
+   * @return A KeycloakWarmupHealthIndicator instance.
+   */
+  @Bean
+  @ConditionalOnBean(KeycloakWarmup.class)
+  @ConditionalOnMissingBean
+  public KeycloakWarmupHealthIndicator keycloakWarmupHealthIndicator(
+      KeycloakWarmup keycloakWarmup) {
+    return new KeycloakWarmupHealthIndicator(keycloakWarmup);
+  }
+
+  /**
+   * Adds the warm-up health indicator to the readiness group, so that no traffic is routed to the
+   * instance before token verification is warmed up. Registered after the availability probes, so
+   * that the readiness group they create is extended as well.
+   *
+   * @return A post-processor of the health endpoint groups.
+   */
+  @Bean
+  @ConditionalOnBean(KeycloakWarmupHealthIndicator.class)
+  public HealthEndpointGroupsPostProcessor keycloakWarmupReadinessPostProcessor() {
+    return new KeycloakWarmupReadinessPostProcessor();
+  }
+}
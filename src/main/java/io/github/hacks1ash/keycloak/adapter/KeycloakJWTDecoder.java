@@ -1,96 +1,238 @@
 package io.github.hacks1ash.keycloak.adapter;
 
-import static org.keycloak.TokenVerifier.IS_ACTIVE;
-import static org.keycloak.TokenVerifier.SUBJECT_EXISTS_CHECK;
-
-import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
-import io.github.hacks1ash.keycloak.adapter.utils.OAuthUtils;
+import io.github.hacks1ash.keycloak.adapter.KeycloakJwtVerifier.ParsedToken;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.IssuerKeyLocatorRegistry;
+import io.github.hacks1ash.keycloak.adapter.utils.KeySnapshot;
 import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.RevocationIndex;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenPreFilter;
+import io.github.hacks1ash.keycloak.adapter.utils.VerifiedTokenCache;
 import java.security.PublicKey;
-import java.time.Instant;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.keycloak.TokenVerifier;
-import org.keycloak.common.VerificationException;
-import org.keycloak.representations.JsonWebToken;
-import org.keycloak.util.TokenUtil;
+import org.keycloak.common.util.Time;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtException;
-import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.util.Assert;
 
 /**
  * A custom implementation of {@link JwtDecoder} for decoding and verifying JWT tokens issued by
- * Keycloak.
+ * Keycloak. The token payload is deserialized exactly once into the configured user type, which is
+ * handed over to {@link JwtAuthConverter} through the returned {@link KeycloakJwt}.
+ *
+ * <p>Tokens without a key ID are verified against the realm keys matching their algorithm, see
+ * {@link RemotePublicKeyLocator#getCandidateKeys(String)}.
  */
 public class KeycloakJWTDecoder implements JwtDecoder {
 
   private final RemotePublicKeyLocator remotePublicKeyLocator;
 
-  private final KeycloakProperties keycloakProperties;
+  private final IssuerKeyLocatorRegistry issuerKeyLocatorRegistry;
+
+  private final KeycloakJwtVerifier jwtVerifier;
+
+  private VerifiedTokenCache verifiedTokenCache;
+
+  private RevocationIndex revocationIndex;
+
+  private KeycloakMetrics metrics = KeycloakMetrics.NOOP;
 
   /**
    * Constructs a KeycloakJWTDecoder with specified remote public key locator and Keycloak
-   * properties.
+   * properties. Tokens are deserialized into {@link DefaultKeycloakUser}.
    *
    * @param remotePublicKeyLocator Locator for public keys.
    * @param keycloakProperties Properties configuration for Keycloak.
    */
   public KeycloakJWTDecoder(
       RemotePublicKeyLocator remotePublicKeyLocator, KeycloakProperties keycloakProperties) {
+    this(remotePublicKeyLocator, keycloakProperties, DefaultKeycloakUser.class);
+  }
+
+  /**
+   * Constructs a KeycloakJWTDecoder with specified remote public key locator, Keycloak properties
+   * and the user type the token payload is deserialized into.
+   *
+   * @param remotePublicKeyLocator Locator for public keys.
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param userType The class type of the user, usually {@link JwtAuthConverter#getUserType()}.
+   */
+  public KeycloakJWTDecoder(
+      RemotePublicKeyLocator remotePublicKeyLocator,
+      KeycloakProperties keycloakProperties,
+      Class<? extends DefaultKeycloakUser> userType) {
     this.remotePublicKeyLocator = remotePublicKeyLocator;
-    this.keycloakProperties = keycloakProperties;
+    this.issuerKeyLocatorRegistry = null;
+    this.jwtVerifier = new KeycloakJwtVerifier(keycloakProperties, userType);
+    remotePublicKeyLocator.addKeysChangeListener(this.jwtVerifier::invalidateSignatureVerifiers);
+  }
+
+  /**
+   * Constructs a KeycloakJWTDecoder accepting tokens from several realms. Each token is routed by
+   * its issuer to the key locator of its realm, and tokens from issuers that are not allowed by the
+   * registry are rejected.
+   *
+   * @param issuerKeyLocatorRegistry Registry of the key locators by issuer.
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param userType The class type of the user, usually {@link JwtAuthConverter#getUserType()}.
+   */
+  public KeycloakJWTDecoder(
+      IssuerKeyLocatorRegistry issuerKeyLocatorRegistry,
+      KeycloakProperties keycloakProperties,
+      Class<? extends DefaultKeycloakUser> userType) {
+    this.remotePublicKeyLocator = null;
+    this.issuerKeyLocatorRegistry = issuerKeyLocatorRegistry;
+    this.jwtVerifier = new KeycloakJwtVerifier(keycloakProperties, userType);
+    issuerKeyLocatorRegistry.addKeysChangeListener(this.jwtVerifier::invalidateSignatureVerifiers);
   }
 
   /**
-   * Decodes a JWT token to a {@link Jwt} object.
+   * Decodes a JWT token to a {@link KeycloakJwt} object.
    *
    * @param token the JWT token string.
-   * @return a decoded {@link Jwt} object.
+   * @return a decoded {@link KeycloakJwt} object.
    * @throws JwtException if the token cannot be decoded or if it's invalid.
    */
   @Override
   public Jwt decode(String token) throws JwtException {
+    return decode(token, null);
+  }
 
+  /**
+   * Decodes a JWT token of a batch. The keys of each locator are looked up in the snapshot pinned
+   * for the batch, so that all tokens of the batch see the same keys, and the locator is only
+   * called for key IDs missing from it.
+   *
+   * @param token the JWT token string.
+   * @param pinnedSnapshots the key snapshots pinned for the batch by locator, filled on first use.
+   * @return a decoded {@link KeycloakJwt} object.
+   * @throws JwtException if the token cannot be decoded or if it's invalid.
+   */
+  Jwt decode(String token, Map<RemotePublicKeyLocator, KeySnapshot> pinnedSnapshots)
+      throws JwtException {
+    long startTime = this.metrics.startTimer();
+    boolean success = false;
     try {
-      TokenVerifier<JsonWebToken> tokenVerifier = TokenVerifier.create(token, JsonWebToken.class);
-      PublicKey publicKey =
-          remotePublicKeyLocator.getPublicKey(tokenVerifier.getHeader().getKeyId());
-      tokenVerifier.withChecks(
-          SUBJECT_EXISTS_CHECK,
-          new TokenVerifier.TokenTypeCheck(Arrays.asList(TokenUtil.TOKEN_TYPE_BEARER)),
-          IS_ACTIVE,
-          new TokenVerifier.RealmUrlCheck(
-              KeycloakUrlHelper.getRealmUrl(
-                  this.keycloakProperties.getServerUrl(), this.keycloakProperties.getRealm())));
-
-      tokenVerifier.publicKey(publicKey);
-
-      JsonWebToken jsonWebToken = tokenVerifier.verify().getToken();
-
-      Map<String, Object> headers =
-          new HashMap<>(
-              Map.of(
-                  "alg", tokenVerifier.getHeader().getAlgorithm().name(),
-                  "typ", tokenVerifier.getHeader().getType(),
-                  "kid", tokenVerifier.getHeader().getKeyId()));
-
-      if (tokenVerifier.getHeader().getContentType() != null) {
-        headers.put("cty", tokenVerifier.getHeader().getContentType());
-      }
-
-      // TODO - add support for other claims
-      Map<String, Object> claims = Map.of("sub", jsonWebToken.getSubject());
-
-      Instant issuedAt = Instant.ofEpochSecond(jsonWebToken.getIat());
-      Instant expiresAt = Instant.ofEpochSecond(jsonWebToken.getExp());
-
-      return new Jwt(token, issuedAt, expiresAt, headers, claims);
-    } catch (VerificationException e) {
-      throw new JwtValidationException(
-          e.getMessage(), List.of(OAuthUtils.createOAuth2Error(e.getMessage())));
+      Jwt jwt = decodeCached(token, pinnedSnapshots);
+      checkNotRevoked(jwt);
+      success = true;
+      return jwt;
+    } finally {
+      this.metrics.recordDecode(startTime, success);
+    }
+  }
+
+  /**
+   * Sets the cache of already verified tokens. When set, a token seen before is returned from the
+   * cache until it expires, skipping signature verification and the token checks.
+   *
+   * @param verifiedTokenCache The verified token cache, or null to disable caching.
+   */
+  public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+    this.verifiedTokenCache = verifiedTokenCache;
+  }
+
+  /**
+   * Sets the index of revoked tokens. When set, tokens issued before the not-before time of the
+   * realm, or belonging to a revoked session, are rejected, including tokens returned from the
+   * verified token cache.
+   *
+   * @param revocationIndex The revocation index, or null to disable revocation checks.
+   */
+  public void setRevocationIndex(RevocationIndex revocationIndex) {
+    this.revocationIndex = revocationIndex;
+  }
+
+  /**
+   * Sets the structural check of tokens. When set, oversized, malformed and expired tokens, and
+   * tokens signed with an unsupported algorithm, are rejected before being parsed.
+   *
+   * @param tokenPreFilter The pre-filter, or null to parse every token.
+   */
+  public void setTokenPreFilter(TokenPreFilter tokenPreFilter) {
+    this.jwtVerifier.setTokenPreFilter(tokenPreFilter);
+  }
+
+  /**
+   * Sets the metrics recording the decoding latency and the rejected tokens.
+   *
+   * @param metrics The metrics to record to.
+   */
+  public void setMetrics(KeycloakMetrics metrics) {
+    Assert.notNull(metrics, "metrics cannot be null");
+    this.metrics = metrics;
+    this.jwtVerifier.setMetrics(metrics);
+  }
+
+  /** Returns the verifier of this decoder, warmed up by the {@link KeycloakWarmup}. */
+  KeycloakJwtVerifier getJwtVerifier() {
+    return this.jwtVerifier;
+  }
+
+  private Jwt decodeCached(String token, Map<RemotePublicKeyLocator, KeySnapshot> pinnedSnapshots) {
+    if (this.verifiedTokenCache == null) {
+      return verify(token, pinnedSnapshots);
+    }
+
+    Jwt cached = this.verifiedTokenCache.get(token);
+    if (cached != null) {
+      return cached;
+    }
+
+    Jwt jwt = verify(token, pinnedSnapshots);
+    this.verifiedTokenCache.put(token, jwt);
+    return jwt;
+  }
+
+  private void checkNotRevoked(Jwt jwt) {
+    if (this.revocationIndex == null || !(jwt instanceof KeycloakJwt<?> keycloakJwt)) {
+      return;
+    }
+    DefaultKeycloakUser user = keycloakJwt.getAuthenticatedUser();
+    if (this.revocationIndex.isRevoked(user.getSessionId(), user.getIat())) {
+      throw jwtVerifier.revokedToken();
+    }
+  }
+
+  private Jwt verify(String token, Map<RemotePublicKeyLocator, KeySnapshot> pinnedSnapshots) {
+    ParsedToken<? extends DefaultKeycloakUser> parsedToken = jwtVerifier.parse(token);
+    if (issuerKeyLocatorRegistry == null) {
+      return verify(
+          parsedToken, remotePublicKeyLocator, jwtVerifier.getRealmUrl(), pinnedSnapshots);
+    }
+
+    String issuer = parsedToken.issuer();
+    RemotePublicKeyLocator issuerKeyLocator = issuerKeyLocatorRegistry.getLocator(issuer);
+    if (issuerKeyLocator == null) {
+      throw jwtVerifier.untrustedIssuer(issuer);
+    }
+    return verify(parsedToken, issuerKeyLocator, issuer, pinnedSnapshots);
+  }
+
+  private Jwt verify(
+      ParsedToken<? extends DefaultKeycloakUser> parsedToken,
+      RemotePublicKeyLocator keyLocator,
+      String realmUrl,
+      Map<RemotePublicKeyLocator, KeySnapshot> pinnedSnapshots) {
+    String keyId = parsedToken.keyId();
+    if (keyId == null) {
+      // Try the keys matching the algorithm, as the token doesn't say which one signed it
+      List<Map.Entry<String, PublicKey>> candidateKeys =
+          keyLocator.getCandidateKeys(parsedToken.header().getRawAlgorithm());
+      return jwtVerifier.verify(parsedToken, candidateKeys, realmUrl, keyLocator::recordKeyUse);
+    }
+    PublicKey publicKey = null;
+    if (pinnedSnapshots != null) {
+      KeySnapshot snapshot =
+          pinnedSnapshots.computeIfAbsent(keyLocator, RemotePublicKeyLocator::getKeySnapshot);
+      publicKey = snapshot.getKey(keyId, Time.currentTime(), 0);
+    }
+    if (publicKey == null) {
+      publicKey = keyLocator.getPublicKey(keyId);
     }
+    return jwtVerifier.verify(parsedToken, publicKey, realmUrl);
   }
 }
@@ -0,0 +1,66 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import lombok.Getter;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+
+/**
+ * Keycloak-specific {@link Jwt} that carries the already verified and deserialized Keycloak token.
+ * It is produced by {@link KeycloakJWTDecoder} so that {@link JwtAuthConverter} can reuse the typed
+ * user instead of parsing the token payload a second time.
+ *
+ * <p>Unlike {@link Jwt}, the claims are not copied on construction. They are returned as given, so
+ * a lazily materialized view of the token stays lazy.
+ *
+ * @param <T> The user type that extends DefaultKeycloakUser.
+ */
+@Getter
+public class KeycloakJwt<T extends DefaultKeycloakUser> extends Jwt {
+
+  /** The verified Keycloak token deserialized into the configured user type. */
+  private final T authenticatedUser;
+
+  /** The claims of the token, returned as given. */
+  private final Map<String, Object> claims;
+
+  /**
+   * Constructs a KeycloakJwt with the specified parameters.
+   *
+   * @param tokenValue The raw token value.
+   * @param issuedAt The time at which the token was issued.
+   * @param expiresAt The expiration time of the token.
+   * @param headers The JOSE header(s).
+   * @param claims The JWT Claims Set, which must contain the subject of the authenticated user.
+   * @param authenticatedUser The verified token deserialized into the configured user type.
+   */
+  public KeycloakJwt(
+      String tokenValue,
+      Instant issuedAt,
+      Instant expiresAt,
+      Map<String, Object> headers,
+      Map<String, Object> claims,
+      T authenticatedUser) {
+    super(
+        tokenValue,
+        issuedAt,
+        expiresAt,
+        headers,
+        Collections.singletonMap(JwtClaimNames.SUB, authenticatedUser.getSubject()));
+    this.authenticatedUser = authenticatedUser;
+    this.claims = Collections.unmodifiableMap(claims);
+  }
+
+  /**
+   * Returns the claims of the token without copying them.
+   *
+   * @return The JWT Claims Set.
+   */
+  @Override
+  public Map<String, Object> getClaims() {
+    return this.claims;
+  }
+}
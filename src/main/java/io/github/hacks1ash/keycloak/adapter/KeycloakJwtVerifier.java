@@ -0,0 +1,416 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import static org.keycloak.TokenVerifier.IS_ACTIVE;
+import static org.keycloak.TokenVerifier.SUBJECT_EXISTS_CHECK;
+
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics.FailureReason;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.model.KeycloakUserReader;
+import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.OAuthUtils;
+import io.github.hacks1ash.keycloak.adapter.utils.SignatureVerifierCache;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenPreFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.keycloak.TokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.exceptions.TokenNotActiveException;
+import org.keycloak.exceptions.TokenSignatureInvalidException;
+import org.keycloak.jose.jws.JWSHeader;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.util.TokenUtil;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.util.Assert;
+
+/**
+ * Parses and verifies Keycloak tokens independently of how the public key is obtained. This class
+ * holds the verification and claim-mapping logic shared by {@link KeycloakJWTDecoder} and {@link
+ * ReactiveKeycloakJWTDecoder}.
+ *
+ * <p>Signatures are verified with JCA instances pooled per key by a {@link SignatureVerifierCache},
+ * which the owner of the verifier invalidates whenever the realm keys change.
+ */
+public class KeycloakJwtVerifier {
+
+  // Message of the exception thrown by TokenVerifier.RealmUrlCheck
+  private static final String INVALID_ISSUER_MESSAGE = "Invalid token issuer";
+
+  private final Class<? extends DefaultKeycloakUser> userType;
+
+  private final KeycloakUserReader<? extends DefaultKeycloakUser> userReader;
+
+  private final String realmUrl;
+
+  private final SignatureVerifierCache signatureVerifierCache;
+
+  private TokenPreFilter tokenPreFilter;
+
+  private KeycloakMetrics metrics = KeycloakMetrics.NOOP;
+
+  /**
+   * Constructs a KeycloakJwtVerifier for the configured realm.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param userType The class type of the user the token payload is deserialized into.
+   */
+  public KeycloakJwtVerifier(
+      KeycloakProperties keycloakProperties, Class<? extends DefaultKeycloakUser> userType) {
+    this.userType = userType;
+    this.userReader =
+        keycloakProperties.getParser().isLazyClaims() ? new KeycloakUserReader<>(userType) : null;
+    // In multi-issuer mode, no realm is configured and each token is verified against its issuer
+    this.realmUrl =
+        keycloakProperties.getServerUrl() == null
+            ? null
+            : KeycloakUrlHelper.getRealmUrl(
+                keycloakProperties.getServerUrl(), keycloakProperties.getRealm());
+    this.signatureVerifierCache = new SignatureVerifierCache();
+  }
+
+  // Shares the state of the given verifier, except for its metrics
+  private KeycloakJwtVerifier(KeycloakJwtVerifier jwtVerifier) {
+    this.userType = jwtVerifier.userType;
+    this.userReader = jwtVerifier.userReader;
+    this.realmUrl = jwtVerifier.realmUrl;
+    this.signatureVerifierCache = jwtVerifier.signatureVerifierCache;
+    this.tokenPreFilter = jwtVerifier.tokenPreFilter;
+  }
+
+  /**
+   * Parses the header and payload of a token without verifying it. If a {@link TokenPreFilter} is
+   * set, tokens it rejects are never parsed.
+   *
+   * @param token the JWT token string.
+   * @return the parsed token.
+   * @throws JwtException if the token cannot be parsed.
+   */
+  public ParsedToken<? extends DefaultKeycloakUser> parse(String token) throws JwtException {
+    if (this.tokenPreFilter != null) {
+      TokenPreFilter.Rejection rejection = this.tokenPreFilter.check(token);
+      if (rejection != null) {
+        this.metrics.recordVerificationFailure(rejection.getFailureReason());
+        throw rejection.createException();
+      }
+    }
+    try {
+      return this.userReader != null ? parse(token, this.userReader) : parse(token, this.userType);
+    } catch (VerificationException e) {
+      this.metrics.recordVerificationFailure(FailureReason.MALFORMED);
+      throw invalidToken(e);
+    }
+  }
+
+  /**
+   * Verifies the signature and the claims of a parsed token and maps it to a {@link KeycloakJwt}.
+   *
+   * @param parsedToken the parsed token.
+   * @param publicKey the public key matching the key ID of the token, or null if unknown.
+   * @param <T> The user type that extends DefaultKeycloakUser.
+   * @return a verified {@link KeycloakJwt} object.
+   * @throws JwtException if the token is invalid.
+   */
+  public <T extends DefaultKeycloakUser> KeycloakJwt<T> verify(
+      ParsedToken<T> parsedToken, PublicKey publicKey) throws JwtException {
+    return verify(parsedToken, publicKey, this.realmUrl);
+  }
+
+  /**
+   * Verifies the signature and the claims of a parsed token issued by the given realm and maps it
+   * to a {@link KeycloakJwt}.
+   *
+   * @param parsedToken the parsed token.
+   * @param publicKey the public key matching the key ID of the token, or null if unknown.
+   * @param realmUrl the URL of the realm that must have issued the token.
+   * @param <T> The user type that extends DefaultKeycloakUser.
+   * @return a verified {@link KeycloakJwt} object.
+   * @throws JwtException if the token is invalid.
+   */
+  public <T extends DefaultKeycloakUser> KeycloakJwt<T> verify(
+      ParsedToken<T> parsedToken, PublicKey publicKey, String realmUrl) throws JwtException {
+    try {
+      verifySignature(parsedToken, parsedToken.keyId(), publicKey);
+      return verifyClaims(parsedToken, realmUrl);
+    } catch (VerificationException e) {
+      this.metrics.recordVerificationFailure(failureReason(e, publicKey));
+      throw invalidToken(e);
+    }
+  }
+
+  /**
+   * Verifies a parsed token without key ID, issued by the given realm, against the candidate keys
+   * in order, and maps it to a {@link KeycloakJwt}.
+   *
+   * @param parsedToken the parsed token.
+   * @param candidateKeys the keys that may have signed the token, with their key IDs.
+   * @param realmUrl the URL of the realm that must have issued the token.
+   * @param keyUseListener invoked with the key ID of the key that verified the signature.
+   * @param <T> The user type that extends DefaultKeycloakUser.
+   * @return a verified {@link KeycloakJwt} object.
+   * @throws JwtException if the token is invalid or no candidate key verifies its signature.
+   */
+  public <T extends DefaultKeycloakUser> KeycloakJwt<T> verify(
+      ParsedToken<T> parsedToken,
+      List<Map.Entry<String, PublicKey>> candidateKeys,
+      String realmUrl,
+      Consumer<String> keyUseListener)
+      throws JwtException {
+    PublicKey publicKey = null;
+    try {
+      for (Map.Entry<String, PublicKey> candidateKey : candidateKeys) {
+        publicKey = candidateKey.getValue();
+        if (isCandidateSignature(parsedToken, candidateKey.getKey(), publicKey)) {
+          keyUseListener.accept(candidateKey.getKey());
+          return verifyClaims(parsedToken, realmUrl);
+        }
+      }
+      if (publicKey == null) {
+        throw new VerificationException("Public key not set");
+      }
+      throw new TokenSignatureInvalidException(parsedToken.user(), "Invalid token signature");
+    } catch (VerificationException e) {
+      this.metrics.recordVerificationFailure(failureReason(e, publicKey));
+      throw invalidToken(e);
+    }
+  }
+
+  /**
+   * Returns the URL of the configured realm, i.e. the issuer expected by {@link
+   * #verify(ParsedToken, PublicKey)}.
+   *
+   * @return The realm URL, or null if no server URL is configured, e.g. in multi-issuer mode.
+   */
+  public String getRealmUrl() {
+    return this.realmUrl;
+  }
+
+  /**
+   * Creates the exception thrown for a token whose issuer is not trusted.
+   *
+   * @param issuer The issuer of the token.
+   * @return The exception to throw.
+   */
+  public JwtValidationException untrustedIssuer(String issuer) {
+    this.metrics.recordVerificationFailure(FailureReason.WRONG_ISSUER);
+    return invalidToken(new VerificationException("Untrusted token issuer " + issuer));
+  }
+
+  /**
+   * Creates the exception thrown for a verified token that has since been revoked.
+   *
+   * @return The exception to throw.
+   */
+  public JwtValidationException revokedToken() {
+    this.metrics.recordVerificationFailure(FailureReason.REVOKED);
+    return invalidToken(new VerificationException("Token has been revoked"));
+  }
+
+  /**
+   * Drops the cached signature verifiers. Called when the realm keys change, so that the verifiers
+   * of keys that are no longer published are released.
+   */
+  public void invalidateSignatureVerifiers() {
+    this.signatureVerifierCache.invalidateAll();
+  }
+
+  /**
+   * Drops the cached signature verifiers of one key, e.g. of the key that signed the tokens of the
+   * {@link KeycloakWarmup}.
+   */
+  void invalidateSignatureVerifiers(String kid) {
+    this.signatureVerifierCache.invalidate(kid);
+  }
+
+  /**
+   * Returns a verifier sharing the user reader, signature verifiers and pre-filter of this one, but
+   * recording no metrics, so that the {@link KeycloakWarmup} warms up the verification path of the
+   * decoder without its synthetic tokens being counted.
+   */
+  KeycloakJwtVerifier withoutMetrics() {
+    return new KeycloakJwtVerifier(this);
+  }
+
+  /**
+   * Sets the structural check run before tokens are parsed.
+   *
+   * @param tokenPreFilter The pre-filter, or null to parse every token.
+   */
+  public void setTokenPreFilter(TokenPreFilter tokenPreFilter) {
+    this.tokenPreFilter = tokenPreFilter;
+  }
+
+  /**
+   * Sets the metrics recording rejected tokens by reason.
+   *
+   * @param metrics The metrics to record to.
+   */
+  public void setMetrics(KeycloakMetrics metrics) {
+    Assert.notNull(metrics, "metrics cannot be null");
+    this.metrics = metrics;
+  }
+
+  private static <T extends DefaultKeycloakUser> ParsedToken<T> parse(String token, Class<T> tClass)
+      throws VerificationException {
+    JWSInput input = parseInput(token);
+    try {
+      return new ParsedToken<>(token, input, input.readJsonContent(tClass));
+    } catch (JWSInputException e) {
+      throw new VerificationException("Failed to read access token from JWT", e);
+    }
+  }
+
+  private static <T extends DefaultKeycloakUser> ParsedToken<T> parse(
+      String token, KeycloakUserReader<T> userReader) throws VerificationException {
+    JWSInput input = parseInput(token);
+    try {
+      return new ParsedToken<>(token, input, userReader.read(input.getContent()));
+    } catch (IOException e) {
+      throw new VerificationException("Failed to read access token from JWT", e);
+    }
+  }
+
+  private static JWSInput parseInput(String token) throws VerificationException {
+    if (token == null) {
+      throw new VerificationException("Token not set");
+    }
+    try {
+      return new JWSInput(token);
+    } catch (JWSInputException e) {
+      throw new VerificationException("Failed to parse JWT", e);
+    }
+  }
+
+  private <T extends DefaultKeycloakUser> KeycloakJwt<T> verifyClaims(
+      ParsedToken<T> parsedToken, String realmUrl) throws VerificationException {
+    T user = parsedToken.user();
+    TokenVerifier.createWithoutSignature(user)
+        .withChecks(
+            SUBJECT_EXISTS_CHECK,
+            new TokenVerifier.TokenTypeCheck(Arrays.asList(TokenUtil.TOKEN_TYPE_BEARER)),
+            IS_ACTIVE,
+            new TokenVerifier.RealmUrlCheck(realmUrl))
+        .verify();
+
+    JWSHeader header = parsedToken.header();
+    Map<String, Object> headers =
+        new HashMap<>(Map.of("alg", header.getAlgorithm().name(), "typ", header.getType()));
+
+    if (header.getKeyId() != null) {
+      headers.put("kid", header.getKeyId());
+    }
+
+    if (header.getContentType() != null) {
+      headers.put("cty", header.getContentType());
+    }
+
+    Instant issuedAt = Instant.ofEpochSecond(user.getIat());
+    Instant expiresAt = Instant.ofEpochSecond(user.getExp());
+
+    return new KeycloakJwt<>(
+        parsedToken.token(),
+        issuedAt,
+        expiresAt,
+        headers,
+        new KeycloakClaims(parsedToken.token(), user),
+        user);
+  }
+
+  // Same as TokenVerifier.verifySignature, which needs the token to be parsed by TokenVerifier,
+  // but with Signature instances reused across tokens
+  private void verifySignature(ParsedToken<?> parsedToken, String kid, PublicKey publicKey)
+      throws VerificationException {
+    if (publicKey == null) {
+      throw new VerificationException("Public key not set");
+    }
+    if (!isValidSignature(parsedToken, kid, publicKey)) {
+      throw new TokenSignatureInvalidException(parsedToken.user(), "Invalid token signature");
+    }
+  }
+
+  private boolean isValidSignature(ParsedToken<?> parsedToken, String kid, PublicKey publicKey)
+      throws VerificationException {
+    JWSInput input = parsedToken.input();
+    byte[] data = input.getEncodedSignatureInput().getBytes(StandardCharsets.UTF_8);
+    return this.signatureVerifierCache.verify(
+        kid, parsedToken.header().getRawAlgorithm(), publicKey, data, input.getSignature());
+  }
+
+  // A signature of another key may not even have the length expected by this key
+  private boolean isCandidateSignature(
+      ParsedToken<?> parsedToken, String kid, PublicKey publicKey) {
+    try {
+      return isValidSignature(parsedToken, kid, publicKey);
+    } catch (VerificationException e) {
+      return false;
+    }
+  }
+
+  private static FailureReason failureReason(VerificationException e, PublicKey publicKey) {
+    if (publicKey == null) {
+      return FailureReason.UNKNOWN_KID;
+    }
+    if (e instanceof TokenNotActiveException) {
+      return FailureReason.EXPIRED;
+    }
+    if (e instanceof TokenSignatureInvalidException) {
+      return FailureReason.BAD_SIGNATURE;
+    }
+    if (e.getMessage() != null && e.getMessage().startsWith(INVALID_ISSUER_MESSAGE)) {
+      return FailureReason.WRONG_ISSUER;
+    }
+    return FailureReason.INVALID;
+  }
+
+  private static JwtValidationException invalidToken(VerificationException e) {
+    return new JwtValidationException(
+        e.getMessage(), List.of(OAuthUtils.createOAuth2Error(e.getMessage())));
+  }
+
+  /**
+   * A token whose header and payload have been parsed but not yet verified.
+   *
+   * @param token The raw token value.
+   * @param input The parsed JWS, holding the header, the decoded payload and the signature.
+   * @param user The token payload read into the user type.
+   * @param <T> The user type that extends DefaultKeycloakUser.
+   */
+  public record ParsedToken<T extends DefaultKeycloakUser>(String token, JWSInput input, T user) {
+
+    /**
+     * Returns the parsed JOSE header of the token.
+     *
+     * @return The header.
+     */
+    public JWSHeader header() {
+      return input.getHeader();
+    }
+
+    /**
+     * Returns the key ID (KID) of the token.
+     *
+     * @return The key ID, or null if the header has none.
+     */
+    public String keyId() {
+      return header().getKeyId();
+    }
+
+    /**
+     * Returns the issuer of the token. The payload has already been read while parsing, so this is
+     * a plain field read.
+     *
+     * @return The issuer, or null if the token has none.
+     */
+    public String issuer() {
+      return user.getIssuer();
+    }
+  }
+}
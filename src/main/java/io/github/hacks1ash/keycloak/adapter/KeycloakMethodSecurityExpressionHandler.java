@@ -0,0 +1,53 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import java.util.function.Supplier;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.access.hierarchicalroles.NullRoleHierarchy;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.core.Authentication;
+
+/**
+ * A {@link DefaultMethodSecurityExpressionHandler} resolving {@code hasRole}, {@code hasAnyRole},
+ * {@code hasAuthority} and {@code hasAnyAuthority} of method security expressions with the role
+ * bits of {@code KeycloakAuthentication.getRoleBitSet()}, instead of building a set of the granted
+ * authorities on every evaluation. Roles outside of the role universe, and authentications without
+ * role bits, are checked by the standard expression root.
+ *
+ * <p>Role bits know nothing about role hierarchies, so when a {@link RoleHierarchy} is set every
+ * check is left to the standard expression root.
+ */
+public class KeycloakMethodSecurityExpressionHandler
+    extends DefaultMethodSecurityExpressionHandler {
+
+  @Override
+  public EvaluationContext createEvaluationContext(
+      Supplier<Authentication> authentication, MethodInvocation mi) {
+    EvaluationContext context = super.createEvaluationContext(authentication, mi);
+    if (isRoleBitSetApplicable() && context instanceof StandardEvaluationContext standardContext) {
+      MethodSecurityExpressionOperations root =
+          (MethodSecurityExpressionOperations) standardContext.getRootObject().getValue();
+      standardContext.setRootObject(
+          new KeycloakMethodSecurityExpressionRoot(root, getDefaultRolePrefix()));
+    }
+    return context;
+  }
+
+  @Override
+  protected MethodSecurityExpressionOperations createSecurityExpressionRoot(
+      Authentication authentication, MethodInvocation invocation) {
+    MethodSecurityExpressionOperations root =
+        super.createSecurityExpressionRoot(authentication, invocation);
+    return isRoleBitSetApplicable()
+        ? new KeycloakMethodSecurityExpressionRoot(root, getDefaultRolePrefix())
+        : root;
+  }
+
+  private boolean isRoleBitSetApplicable() {
+    RoleHierarchy roleHierarchy = getRoleHierarchy();
+    return roleHierarchy == null || roleHierarchy instanceof NullRoleHierarchy;
+  }
+}
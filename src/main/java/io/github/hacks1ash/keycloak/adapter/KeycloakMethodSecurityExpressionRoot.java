@@ -0,0 +1,167 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.utils.RoleBitSet;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+/**
+ * The root object of method security expressions evaluated by {@link
+ * KeycloakMethodSecurityExpressionHandler}. Authority checks are answered from the role bits of a
+ * {@link KeycloakAuthentication} when all their authorities are part of its role universe, and
+ * everything else is delegated to the standard expression root.
+ */
+class KeycloakMethodSecurityExpressionRoot implements MethodSecurityExpressionOperations {
+
+  // Same constants as SecurityExpressionRoot, which can be used in expressions
+  public final boolean permitAll = true;
+
+  public final boolean denyAll = false;
+
+  public final String read = "read";
+
+  public final String write = "write";
+
+  public final String create = "create";
+
+  public final String delete = "delete";
+
+  public final String admin = "administration";
+
+  private final MethodSecurityExpressionOperations delegate;
+
+  private final String defaultRolePrefix;
+
+  KeycloakMethodSecurityExpressionRoot(
+      MethodSecurityExpressionOperations delegate, String defaultRolePrefix) {
+    this.delegate = delegate;
+    this.defaultRolePrefix = defaultRolePrefix;
+  }
+
+  @Override
+  public boolean hasAuthority(String authority) {
+    return hasAnyAuthority(authority);
+  }
+
+  @Override
+  public boolean hasAnyAuthority(String... authorities) {
+    Boolean granted = hasAnyAuthorityName(null, authorities);
+    return granted != null ? granted : this.delegate.hasAnyAuthority(authorities);
+  }
+
+  @Override
+  public boolean hasRole(String role) {
+    return hasAnyRole(role);
+  }
+
+  @Override
+  public boolean hasAnyRole(String... roles) {
+    Boolean granted = hasAnyAuthorityName(this.defaultRolePrefix, roles);
+    return granted != null ? granted : this.delegate.hasAnyRole(roles);
+  }
+
+  @Override
+  public Authentication getAuthentication() {
+    return this.delegate.getAuthentication();
+  }
+
+  /**
+   * Returns the principal of the authentication, as {@code principal} in expressions.
+   *
+   * @return The principal.
+   */
+  public Object getPrincipal() {
+    return getAuthentication().getPrincipal();
+  }
+
+  @Override
+  public boolean permitAll() {
+    return true;
+  }
+
+  @Override
+  public boolean denyAll() {
+    return false;
+  }
+
+  @Override
+  public boolean isAnonymous() {
+    return this.delegate.isAnonymous();
+  }
+
+  @Override
+  public boolean isAuthenticated() {
+    return this.delegate.isAuthenticated();
+  }
+
+  @Override
+  public boolean isRememberMe() {
+    return this.delegate.isRememberMe();
+  }
+
+  @Override
+  public boolean isFullyAuthenticated() {
+    return this.delegate.isFullyAuthenticated();
+  }
+
+  @Override
+  public boolean hasPermission(Object target, Object permission) {
+    return this.delegate.hasPermission(target, permission);
+  }
+
+  @Override
+  public boolean hasPermission(Object targetId, String targetType, Object permission) {
+    return this.delegate.hasPermission(targetId, targetType, permission);
+  }
+
+  @Override
+  public void setFilterObject(Object filterObject) {
+    this.delegate.setFilterObject(filterObject);
+  }
+
+  @Override
+  public Object getFilterObject() {
+    return this.delegate.getFilterObject();
+  }
+
+  @Override
+  public void setReturnObject(Object returnObject) {
+    this.delegate.setReturnObject(returnObject);
+  }
+
+  @Override
+  public Object getReturnObject() {
+    return this.delegate.getReturnObject();
+  }
+
+  @Override
+  public Object getThis() {
+    return this.delegate.getThis();
+  }
+
+  // Returns null if an authority is not part of the role universe, or if there are no role bits
+  private Boolean hasAnyAuthorityName(String prefix, String... names) {
+    if (!(getAuthentication() instanceof KeycloakAuthentication<?> keycloakAuthentication)
+        || keycloakAuthentication.getRoleBitSet() == null) {
+      return null;
+    }
+    RoleBitSet roleBitSet = keycloakAuthentication.getRoleBitSet();
+    boolean conclusive = true;
+    for (String name : names) {
+      int index = roleBitSet.getUniverse().indexOf(getRoleWithDefaultPrefix(prefix, name));
+      if (index < 0) {
+        conclusive = false;
+      } else if (roleBitSet.get(index)) {
+        return Boolean.TRUE;
+      }
+    }
+    return conclusive ? Boolean.FALSE : null;
+  }
+
+  // Same as SecurityExpressionRoot.getRoleWithDefaultPrefix
+  private static String getRoleWithDefaultPrefix(String prefix, String role) {
+    if (role == null || prefix == null || prefix.isEmpty() || role.startsWith(prefix)) {
+      return role;
+    }
+    return prefix + role;
+  }
+}
@@ -0,0 +1,44 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.metrics.MicrometerKeycloakMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Auto-configuration class for the Micrometer instrumentation of the Keycloak adapter. This
+ * configuration is only enabled when Micrometer is on the classpath and a {@link MeterRegistry}
+ * bean is present, e.g. when Spring Boot Actuator is used.
+ *
+ * <p>Without it the adapter records no metrics and uses {@link KeycloakMetrics#NOOP}.
+ */
+@Configuration
+@AutoConfigureAfter(
+    name = {
+      "org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+      "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration"
+    })
+@ConditionalOnClass(MeterRegistry.class)
+@ConditionalOnBean(MeterRegistry.class)
+@ConditionalOnProperty(name = "keycloak.enabled", havingValue = "true", matchIfMissing = true)
+public class KeycloakMetricsAutoConfiguration {
+
+  /**
+   * Creates a KeycloakMetrics bean recording token decoding, conversion and realm key fetching to
+   * the application's MeterRegistry.
+   *
+   * @param meterRegistry The registry the meters are registered with.
+   * @return A KeycloakMetrics instance.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public KeycloakMetrics keycloakMetrics(MeterRegistry meterRegistry) {
+    return new MicrometerKeycloakMetrics(meterRegistry);
+  }
+}
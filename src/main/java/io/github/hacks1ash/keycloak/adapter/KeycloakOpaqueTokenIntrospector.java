@@ -0,0 +1,289 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.utils.GrantedAuthoritiesCache;
+import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.RestTemplateHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenDigest;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.keycloak.common.util.Time;
+import org.springframework.http.client.support.BasicAuthenticationInterceptor;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimAccessor;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionAuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.security.oauth2.server.resource.introspection.SpringOpaqueTokenIntrospector;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * {@link OpaqueTokenIntrospector} validating tokens, e.g. Keycloak lightweight or opaque access
+ * tokens, by the introspection endpoint of the realm, authenticated with the configured client ID
+ * and secret. Client roles, and realm roles if enabled, are mapped to granted authorities the same
+ * way as {@link JwtAuthConverter} does.
+ *
+ * <p>Active tokens are cached until their {@code exp} claim and inactive tokens for {@code
+ * keycloak.introspection.negative-cache-ttl}, keyed by the SHA-256 digest of the token. Concurrent
+ * introspections of the same token share a single request, and requests reuse kept-alive
+ * connections, so a burst of identical tokens results in a single call to Keycloak.
+ */
+public class KeycloakOpaqueTokenIntrospector implements OpaqueTokenIntrospector {
+
+  private static final String REALM_ACCESS_CLAIM = "realm_access";
+
+  private static final String RESOURCE_ACCESS_CLAIM = "resource_access";
+
+  private static final String ROLES_CLAIM = "roles";
+
+  private final OpaqueTokenIntrospector delegate;
+
+  private final KeycloakProperties keycloakProperties;
+
+  private final GrantedAuthoritiesCache grantedAuthoritiesCache;
+
+  private final int negativeCacheTtl;
+
+  private final int maximumSize;
+
+  private final Map<ByteBuffer, Result> results = new ConcurrentHashMap<>();
+
+  private final Map<ByteBuffer, CompletableFuture<Result>> pendingIntrospections =
+      new ConcurrentHashMap<>();
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final LongAdder missCount = new LongAdder();
+
+  /**
+   * Constructs a KeycloakOpaqueTokenIntrospector calling the introspection endpoint with an HTTP
+   * client configured from {@code keycloak.introspection}.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   */
+  public KeycloakOpaqueTokenIntrospector(KeycloakProperties keycloakProperties) {
+    this(keycloakProperties, createRestTemplate(keycloakProperties));
+  }
+
+  /**
+   * Constructs a KeycloakOpaqueTokenIntrospector calling the introspection endpoint with the given
+   * client, which must authenticate the requests with the client credentials.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param restOperations The client used to call the introspection endpoint.
+   */
+  public KeycloakOpaqueTokenIntrospector(
+      KeycloakProperties keycloakProperties, RestOperations restOperations) {
+    KeycloakProperties.Introspection introspection = keycloakProperties.getIntrospection();
+    if (introspection.getCacheMaximumSize() <= 0) {
+      throw new IllegalArgumentException("cacheMaximumSize must be greater than 0");
+    }
+    this.keycloakProperties = keycloakProperties;
+    this.negativeCacheTtl = (int) introspection.getNegativeCacheTtl().toSeconds();
+    this.maximumSize = introspection.getCacheMaximumSize();
+
+    KeycloakProperties.Authorities authorities = keycloakProperties.getAuthorities();
+    this.grantedAuthoritiesCache =
+        new GrantedAuthoritiesCache(
+            authorities.getRealmRolePrefix(),
+            authorities.getClientRolePrefix(),
+            authorities.getCacheMaximumSize());
+
+    SpringOpaqueTokenIntrospector springIntrospector =
+        new SpringOpaqueTokenIntrospector(getIntrospectionUri(keycloakProperties), restOperations);
+    springIntrospector.setAuthenticationConverter(this::toPrincipal);
+    this.delegate = springIntrospector;
+  }
+
+  /**
+   * Introspects a token, returning the cached result if the token has been introspected before.
+   *
+   * @param token The token to introspect.
+   * @return The authenticated principal of an active token.
+   * @throws BadOpaqueTokenException if the token is not active.
+   */
+  @Override
+  public OAuth2AuthenticatedPrincipal introspect(String token) {
+    ByteBuffer key = TokenDigest.sha256(token);
+    Result cached = results.get(key);
+    if (cached != null) {
+      if (cached.expiresAt() > Time.currentTime()) {
+        hitCount.increment();
+        return cached.principal();
+      }
+      results.remove(key, cached);
+    }
+    missCount.increment();
+
+    CompletableFuture<Result> introspection = new CompletableFuture<>();
+    CompletableFuture<Result> pending = pendingIntrospections.putIfAbsent(key, introspection);
+    if (pending != null) {
+      return await(pending).principal();
+    }
+
+    try {
+      // The result may have been stored by an introspection that finished in the meantime
+      Result result = results.get(key);
+      if (result == null || result.expiresAt() <= Time.currentTime()) {
+        result = introspectRemotely(token);
+      }
+      if (result.expiresAt() > Time.currentTime()) {
+        if (results.size() >= maximumSize) {
+          evict();
+        }
+        results.put(key, result);
+      }
+      introspection.complete(result);
+      return result.principal();
+    } catch (RuntimeException e) {
+      introspection.completeExceptionally(e);
+      throw e;
+    } finally {
+      pendingIntrospections.remove(key, introspection);
+    }
+  }
+
+  /** Removes all cached introspection results. */
+  public void invalidateAll() {
+    results.clear();
+  }
+
+  /**
+   * Returns the number of introspections answered from the cache.
+   *
+   * @return The hit count.
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Returns the number of introspections not answered from the cache, including the ones sharing
+   * the request of a concurrent introspection.
+   *
+   * @return The miss count.
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  private Result introspectRemotely(String token) {
+    try {
+      OAuth2AuthenticatedPrincipal principal = delegate.introspect(token);
+      Instant expiresAt = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.EXP);
+      return new Result(principal, null, expiresAt == null ? 0 : expiresAt.getEpochSecond());
+    } catch (BadOpaqueTokenException e) {
+      return new Result(null, e.getMessage(), Time.currentTime() + negativeCacheTtl);
+    }
+  }
+
+  private OAuth2AuthenticatedPrincipal toPrincipal(OAuth2TokenIntrospectionClaimAccessor claims) {
+    Set<String> realmRoles =
+        keycloakProperties.getAuthorities().isMapRealmRoles()
+            ? getRoles(claims.getClaim(REALM_ACCESS_CLAIM))
+            : null;
+    Map<String, Object> resourceAccess = claims.getClaimAsMap(RESOURCE_ACCESS_CLAIM);
+    Set<String> clientRoles =
+        resourceAccess == null
+            ? null
+            : getRoles(resourceAccess.get(keycloakProperties.getClientId()));
+
+    Collection<GrantedAuthority> authorities =
+        grantedAuthoritiesCache.getAuthorities(realmRoles, clientRoles);
+    return new OAuth2IntrospectionAuthenticatedPrincipal(claims.getClaims(), authorities);
+  }
+
+  private static Set<String> getRoles(Object access) {
+    if (!(access instanceof Map<?, ?> accessMap)
+        || !(accessMap.get(ROLES_CLAIM) instanceof Collection<?> roles)) {
+      return null;
+    }
+    Set<String> roleNames = new HashSet<>();
+    for (Object role : roles) {
+      roleNames.add(String.valueOf(role));
+    }
+    return roleNames;
+  }
+
+  private static Result await(CompletableFuture<Result> pending) {
+    try {
+      return pending.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private void evict() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      long currentTime = Time.currentTime();
+      results.values().removeIf(result -> result.expiresAt() <= currentTime);
+
+      int target = maximumSize - Math.max(1, maximumSize / 10);
+      Iterator<ByteBuffer> iterator = results.keySet().iterator();
+      while (results.size() > target && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private static String getIntrospectionUri(KeycloakProperties keycloakProperties) {
+    String uri = keycloakProperties.getIntrospection().getUri();
+    if (StringUtils.hasText(uri)) {
+      return uri;
+    }
+    return KeycloakUrlHelper.getIntrospectionUrl(
+        KeycloakUrlHelper.getRealmUrl(
+            keycloakProperties.getServerUrl(), keycloakProperties.getRealm()));
+  }
+
+  private static RestTemplate createRestTemplate(KeycloakProperties keycloakProperties) {
+    KeycloakProperties.Introspection introspection = keycloakProperties.getIntrospection();
+    RestTemplate restTemplate =
+        RestTemplateHelper.create(
+            introspection.getConnectTimeout(), introspection.getReadTimeout());
+    restTemplate
+        .getInterceptors()
+        .add(
+            new BasicAuthenticationInterceptor(
+                keycloakProperties.getClientId(), keycloakProperties.getClientSecret()));
+    return restTemplate;
+  }
+
+  /**
+   * Result of an introspection: the principal of an active token, or the error of an inactive one.
+   */
+  private record Result(OAuth2AuthenticatedPrincipal principal, String error, long expiresAt) {
+
+    @Override
+    public OAuth2AuthenticatedPrincipal principal() {
+      if (principal == null) {
+        throw new BadOpaqueTokenException(error);
+      }
+      return principal;
+    }
+  }
+}
@@ -1,5 +1,8 @@
 package io.github.hacks1ash.keycloak.adapter;
 
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -20,4 +23,258 @@ public class KeycloakProperties {
   private String clientSecret;
 
   private boolean enabled = true;
+
+  private TokenCache tokenCache = new TokenCache();
+
+  private Jwks jwks = new Jwks();
+
+  private Warmup warmup = new Warmup();
+
+  private MultiIssuer multiIssuer = new MultiIssuer();
+
+  private Authorities authorities = new Authorities();
+
+  private Parser parser = new Parser();
+
+  private Introspection introspection = new Introspection();
+
+  private Revocation revocation = new Revocation();
+
+  private Batch batch = new Batch();
+
+  private Rejection rejection = new Rejection();
+
+  private PreFilter preFilter = new PreFilter();
+
+  /** Settings of the cache holding already verified tokens. */
+  @Data
+  public static class TokenCache {
+
+    /** Whether verified tokens are cached until their expiration time. */
+    private boolean enabled = false;
+
+    /** Maximum number of verified tokens kept in the cache. */
+    private int maximumSize = 10000;
+  }
+
+  /** Settings of the realm public keys (JWKS) retrieval. */
+  @Data
+  public static class Jwks {
+
+    /** Whether the realm keys are refreshed in the background ahead of their expiry. */
+    private boolean backgroundRefresh = true;
+
+    /** Interval between two background refreshes of the realm keys. */
+    private Duration refreshInterval = Duration.ofHours(12);
+
+    /** Maximum random delay added to each background refresh to spread load over instances. */
+    private Duration refreshJitter = Duration.ofMinutes(5);
+
+    /** How long expired realm keys are still served while a background refresh is running. */
+    private Duration maxStale = Duration.ofHours(1);
+
+    /** How long fetched realm keys stay fresh when the response has no Cache-Control max-age. */
+    private Duration cacheTtl = Duration.ofDays(1);
+
+    /** Lower bound of the freshness of the realm keys, applied to the Cache-Control max-age. */
+    private Duration minCacheTtl = Duration.ofMinutes(5);
+
+    /** Upper bound of the freshness of the realm keys, applied to the Cache-Control max-age. */
+    private Duration maxCacheTtl = Duration.ofDays(1);
+
+    /** How long keys removed from the realm still verify tokens, 0 to drop them right away. */
+    private Duration retiredKeyGracePeriod = Duration.ofMinutes(5);
+
+    /**
+     * File in which the last retrieved realm keys are saved and loaded from at startup. The
+     * snapshot is disabled when not set.
+     */
+    private String snapshotFile;
+
+    /** Age after which the saved realm keys are no longer loaded at startup. */
+    private Duration snapshotMaxAge = Duration.ofDays(1);
+
+    /**
+     * How long a key ID missing from the freshly fetched realm keys is rejected without a fetch.
+     */
+    private Duration unknownKidTtl = Duration.ofSeconds(30);
+
+    /** Maximum number of unknown key IDs remembered. */
+    private int unknownKidCacheMaximumSize = 1000;
+
+    /** Maximum number of realm key fetches triggered by unknown key IDs in a burst. */
+    private int refetchBurst = 3;
+
+    /** Interval at which fetches for unknown key IDs are allowed again once the burst is used. */
+    private Duration refetchInterval = Duration.ofSeconds(10);
+
+    /** Timeout for establishing a connection to the certificate endpoint. */
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    /** Timeout for reading the response of the certificate endpoint. */
+    private Duration readTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Maximum number of retries of a failed refresh of the realm keys, on I/O and server errors
+     * only. Fetches triggered by a token lookup are never retried.
+     */
+    private int maxRetries = 2;
+
+    /** Delay before the first retry, doubled for every further retry. */
+    private Duration retryBackoff = Duration.ofMillis(200);
+  }
+
+  /** Settings of the warm-up of token verification at startup. */
+  @Data
+  public static class Warmup {
+
+    /** Whether the realm keys are prefetched and token verification is warmed up at startup. */
+    private boolean enabled = false;
+
+    /** Number of locally minted tokens verified and converted per realm key algorithm. */
+    private int iterations = 200;
+  }
+
+  /** Settings of the multi-issuer mode, accepting tokens from several realms. */
+  @Data
+  public static class MultiIssuer {
+
+    /** Whether tokens are accepted from every allowed issuer instead of the configured realm. */
+    private boolean enabled = false;
+
+    /** Issuers, i.e. realm URLs such as https://sso.example.com/realms/tenant, to accept. */
+    private Set<String> allowedIssuers = new LinkedHashSet<>();
+
+    /** How long the keys of an issuer are kept after its last token was seen. */
+    private Duration idleTimeout = Duration.ofHours(1);
+  }
+
+  /** Settings of the mapping of token roles to granted authorities. */
+  @Data
+  public static class Authorities {
+
+    /** Prefix added to the client roles of the configured client. */
+    private String clientRolePrefix = "ROLE_";
+
+    /** Whether the realm roles are mapped to granted authorities as well. */
+    private boolean mapRealmRoles = false;
+
+    /** Prefix added to the realm roles. */
+    private String realmRolePrefix = "ROLE_";
+
+    /** Maximum number of distinct role sets whose authorities are cached. */
+    private int cacheMaximumSize = 1000;
+
+    /**
+     * Whether authentications also carry their authorities as bits of a role universe, checked by
+     * method security expressions and {@link KeycloakAuthorizationManager} with bit operations.
+     */
+    private boolean bitsetEnabled = false;
+
+    /** Roles, without prefix, that are part of the role universe. */
+    private Set<String> knownRoles = new LinkedHashSet<>();
+
+    /**
+     * Whether the roles checked by the {@code @PreAuthorize} and {@code @PostAuthorize} annotations
+     * of the beans are added to the role universe at startup.
+     */
+    private boolean discoverRoles = true;
+  }
+
+  /** Settings of the parsing of the token payload. */
+  @Data
+  public static class Parser {
+
+    /**
+     * Whether the token payload is read with a streaming parser that only decodes the claims needed
+     * for verification and role mapping, reading the other claims on first access. Subclasses of
+     * the user type must then read the inherited claims through their getters, not their fields.
+     */
+    private boolean lazyClaims = false;
+  }
+
+  /** Settings of the validation of opaque tokens by the introspection endpoint of the realm. */
+  @Data
+  public static class Introspection {
+
+    /** Whether tokens are validated by the introspection endpoint instead of as JWTs. */
+    private boolean enabled = false;
+
+    /** Introspection endpoint. Defaults to the introspection endpoint of the configured realm. */
+    private String uri;
+
+    /** How long tokens reported as inactive are remembered before being introspected again. */
+    private Duration negativeCacheTtl = Duration.ofSeconds(10);
+
+    /** Maximum number of introspection results kept in the cache. */
+    private int cacheMaximumSize = 10000;
+
+    /** Timeout for establishing a connection to the introspection endpoint. */
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    /** Timeout for reading the response of the introspection endpoint. */
+    private Duration readTimeout = Duration.ofSeconds(5);
+  }
+
+  /** Settings of the revocation of tokens by the admin callbacks of Keycloak. */
+  @Data
+  public static class Revocation {
+
+    /**
+     * Whether the not-before and logout callbacks of Keycloak are accepted and revoked tokens are
+     * rejected.
+     */
+    private boolean enabled = false;
+
+    /** Path of the admin URL of the client, under which the callbacks are received. */
+    private String adminPath = "";
+
+    /** How long revoked sessions are remembered, at least the lifespan of the access tokens. */
+    private Duration retention = Duration.ofHours(1);
+  }
+
+  /** Settings of the verification of token batches, e.g. tokens carried in message headers. */
+  @Data
+  public static class Batch {
+
+    /** Maximum number of tasks a batch is split into. Defaults to the number of processors. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Minimum number of distinct tokens per task, smaller batches are verified in one task. */
+    private int minTokensPerTask = 32;
+  }
+
+  /** Settings of the responses to unauthenticated requests and requests denied access. */
+  @Data
+  public static class Rejection {
+
+    /**
+     * Whether 401 and 403 responses are written directly, with a precomputed body and a {@code
+     * WWW-Authenticate} header, instead of being rendered by an error dispatch to {@code /error}.
+     */
+    private boolean direct = false;
+  }
+
+  /** Settings of the structural check of tokens before they are parsed. */
+  @Data
+  public static class PreFilter {
+
+    /**
+     * Whether oversized, malformed and expired tokens, and tokens signed with an unsupported
+     * algorithm, are rejected before their header and payload are parsed.
+     */
+    private boolean enabled = false;
+
+    /** Maximum length of a token, in characters. */
+    private int maxTokenLength = 16384;
+
+    /** Maximum length of the encoded header of a token, in characters. */
+    private int maxHeaderLength = 1024;
+
+    /** Maximum length of the encoded payload of a token, in characters. */
+    private int maxPayloadLength = 12288;
+
+    /** Maximum length of the encoded signature of a token, in characters. */
+    private int maxSignatureLength = 2048;
+  }
 }
@@ -0,0 +1,126 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.customizer.AuthorizeExchangeCustomizer;
+import io.github.hacks1ash.keycloak.adapter.customizer.ServerCorsCustomizer;
+import io.github.hacks1ash.keycloak.adapter.customizer.ServerCsrfCustomizer;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.ReactiveRemotePublicKeyLocator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.security.reactive.ReactiveUserDetailsServiceAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Auto-configuration class for integrating Keycloak with reactive (WebFlux) Spring Boot
+ * applications. This configuration is only enabled when the application is a reactive web
+ * application and WebFlux is on the classpath.
+ *
+ * <p>This class sets up the non-blocking remote public key locator and the customizers for the
+ * reactive HTTP security configuration. Claim mapping is shared with servlet applications through
+ * the {@link JwtAuthConverter} bean of {@link KeycloakAutoConfiguration}.
+ */
+@Configuration
+@AutoConfigureAfter(KeycloakAutoConfiguration.class)
+@AutoConfigureBefore(ReactiveUserDetailsServiceAutoConfiguration.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnClass({WebClient.class, ServerHttpSecurity.class})
+@ConditionalOnProperty(name = "keycloak.enabled", havingValue = "true", matchIfMissing = true)
+@Import(ReactiveWebSecurityConfig.class)
+public class KeycloakReactiveAutoConfiguration {
+
+  /**
+   * Creates a ReactiveRemotePublicKeyLocator bean for locating public keys from a Keycloak server
+   * without blocking. The application's WebClient.Builder is used when available. The keys are
+   * refreshed in the background unless {@code keycloak.jwks.background-refresh} is set to false.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param webClientBuilder The WebClient builder provided by the application, if any.
+   * @param keycloakMetrics The metrics recording key lookups and fetches, if configured.
+   * @return A ReactiveRemotePublicKeyLocator instance.
+   */
+  @Bean(destroyMethod = "disableBackgroundRefresh")
+  @ConditionalOnMissingBean
+  public ReactiveRemotePublicKeyLocator reactiveRemotePublicKeyLocator(
+      KeycloakProperties keycloakProperties,
+      ObjectProvider<WebClient.Builder> webClientBuilder,
+      ObjectProvider<KeycloakMetrics> keycloakMetrics) {
+    WebClient webClient = webClientBuilder.getIfAvailable(WebClient::builder).build();
+    ReactiveRemotePublicKeyLocator reactiveRemotePublicKeyLocator =
+        new ReactiveRemotePublicKeyLocator(keycloakProperties, webClient);
+    keycloakMetrics.ifAvailable(reactiveRemotePublicKeyLocator::setMetrics);
+    if (keycloakProperties.getJwks().isBackgroundRefresh()) {
+      reactiveRemotePublicKeyLocator.enableBackgroundRefresh();
+    }
+    return reactiveRemotePublicKeyLocator;
+  }
+
+  /**
+   * Creates a KeycloakWarmup bean that prefetches the realm keys and warms up token verification at
+   * startup. The warm-up is only created when {@code keycloak.warmup.enabled} is set.
+   *
+   * @param keycloakProperties The Keycloak configuration properties.
+   * @param jwtAuthConverter The converter used by the application.
+   * @param reactiveJwtDecoder The decoder whose verification is warmed up.
+   * @param reactiveRemotePublicKeyLocator The locator whose keys are prefetched.
+   * @return A KeycloakWarmup instance.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(name = "keycloak.warmup.enabled", havingValue = "true")
+  public KeycloakWarmup keycloakWarmup(
+      KeycloakProperties keycloakProperties,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      ReactiveKeycloakJWTDecoder reactiveJwtDecoder,
+      ReactiveRemotePublicKeyLocator reactiveRemotePublicKeyLocator) {
+    return new KeycloakWarmup(
+        keycloakProperties,
+        jwtAuthConverter,
+        reactiveJwtDecoder.getJwtVerifier(),
+        () -> reactiveRemotePublicKeyLocator.refresh().block());
+  }
+
+  /**
+   * Registers a customizer for the authorization of exchanges. By default, every exchange must be
+   * authenticated.
+   *
+   * @return A customizer for the authorization of exchanges.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public Customizer<ServerHttpSecurity.AuthorizeExchangeSpec> authorizeExchangeCustomizer() {
+    return new AuthorizeExchangeCustomizer();
+  }
+
+  /**
+   * Registers a customizer for CORS configuration in reactive HTTP security.
+   *
+   * @return A customizer for CORS configuration.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public Customizer<ServerHttpSecurity.CorsSpec> serverCorsCustomizer() {
+    return new ServerCorsCustomizer();
+  }
+
+  /**
+   * Registers a customizer for CSRF configuration in reactive HTTP security.
+   *
+   * @return A customizer for CSRF configuration.
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public Customizer<ServerHttpSecurity.CsrfSpec> serverCsrfCustomizer() {
+    return new ServerCsrfCustomizer();
+  }
+}
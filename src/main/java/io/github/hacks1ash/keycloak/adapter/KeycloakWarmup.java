@@ -0,0 +1,179 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakJwtVerifier.ParsedToken;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.KeySnapshot;
+import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Warms up token verification when the application starts, so the first requests after a deploy are
+ * not slowed down by lazy initialization. The realm keys are prefetched, then a number of locally
+ * minted tokens are verified and converted by the verifier of the decoder, which initializes the
+ * JCA providers, the Jackson deserializers and the JIT-compiled verification path. The synthetic
+ * tokens are not recorded by the metrics, and neither their authorities nor their signature
+ * verifiers are kept in the caches of the decoder.
+ *
+ * <p>The warm-up runs on its own thread and never delays the startup. Use {@link #isWarmedUp()}, or
+ * the warm-up health indicator, to hold back traffic until it has succeeded.
+ */
+public class KeycloakWarmup implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(KeycloakWarmup.class);
+
+  private static final String WARMUP_KID = "keycloak-warmup";
+
+  private static final int WARMUP_ROLE_COUNT = 10;
+
+  private final KeycloakProperties keycloakProperties;
+
+  private final JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter;
+
+  private final KeycloakJwtVerifier jwtVerifier;
+
+  private final Supplier<KeySnapshot> keysPrefetch;
+
+  private volatile boolean running;
+
+  private volatile boolean warmedUp;
+
+  private volatile Exception failure;
+
+  /**
+   * Constructs a new instance of KeycloakWarmup.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param jwtAuthConverter The converter used by the application.
+   * @param jwtVerifier The verifier of the decoder used by the application.
+   * @param keysPrefetch Fetches the realm keys and returns them, blocking until they are fetched.
+   */
+  public KeycloakWarmup(
+      KeycloakProperties keycloakProperties,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      KeycloakJwtVerifier jwtVerifier,
+      Supplier<KeySnapshot> keysPrefetch) {
+    this.keycloakProperties = keycloakProperties;
+    this.jwtAuthConverter = jwtAuthConverter;
+    this.jwtVerifier = jwtVerifier;
+    this.keysPrefetch = keysPrefetch;
+  }
+
+  /** Starts the warm-up on a background thread. */
+  @Override
+  public void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    Thread thread = new Thread(this::warmUp, "keycloak-warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Marks the warm-up as stopped. A warm-up in progress is left to finish on its own thread. */
+  @Override
+  public void stop() {
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Returns whether the warm-up has succeeded. A failed warm-up is never reported as warmed up.
+   *
+   * @return true once the warm-up has succeeded.
+   */
+  public boolean isWarmedUp() {
+    return warmedUp;
+  }
+
+  /**
+   * Returns the reason the warm-up failed, e.g. because the realm keys could not be fetched.
+   *
+   * @return The failure, or null if the warm-up is in progress or has succeeded.
+   */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  private void warmUp() {
+    long startTime = System.nanoTime();
+    KeycloakJwtVerifier warmupVerifier = jwtVerifier.withoutMetrics();
+    try {
+      KeySnapshot keySnapshot = keysPrefetch.get();
+      if (keySnapshot.keys().isEmpty()) {
+        throw new IllegalStateException("No realm keys could be fetched");
+      }
+      int iterations = keycloakProperties.getWarmup().getIterations();
+      for (String algorithm : getAlgorithms(keySnapshot)) {
+        warmUp(warmupVerifier, algorithm, iterations);
+      }
+      warmedUp = true;
+      log.info(
+          String.format(
+              "Keycloak warm-up finished in %d ms with %d realm keys.",
+              (System.nanoTime() - startTime) / 1_000_000, keySnapshot.keys().size()));
+    } catch (RuntimeException | GeneralSecurityException e) {
+      failure = e;
+      log.warn("Keycloak warm-up failed", e);
+    } finally {
+      warmupVerifier.invalidateSignatureVerifiers(WARMUP_KID);
+    }
+  }
+
+  private void warmUp(KeycloakJwtVerifier warmupVerifier, String algorithm, int iterations)
+      throws GeneralSecurityException {
+    String issuer = getIssuer();
+    TokenMinter tokenMinter = new TokenMinter(issuer, keycloakProperties.getClientId());
+    KeyPair keyPair = TokenMinter.generateKeyPair(algorithm);
+    String token = tokenMinter.mint(WARMUP_KID, algorithm, keyPair.getPrivate(), WARMUP_ROLE_COUNT);
+
+    for (int i = 0; i < iterations && running; i++) {
+      ParsedToken<? extends DefaultKeycloakUser> parsedToken = warmupVerifier.parse(token);
+      jwtAuthConverter.convertWarmupToken(
+          warmupVerifier.verify(parsedToken, keyPair.getPublic(), issuer));
+    }
+  }
+
+  private String getIssuer() {
+    KeycloakProperties.MultiIssuer multiIssuer = keycloakProperties.getMultiIssuer();
+    if (multiIssuer.isEnabled() && !multiIssuer.getAllowedIssuers().isEmpty()) {
+      return multiIssuer.getAllowedIssuers().iterator().next();
+    }
+    return KeycloakUrlHelper.getRealmUrl(
+        keycloakProperties.getServerUrl(), keycloakProperties.getRealm());
+  }
+
+  /** Returns the algorithms of the realm keys, or RS256 (Keycloak's default) if none are known. */
+  private static Set<String> getAlgorithms(KeySnapshot keySnapshot) {
+    Set<String> algorithms = new TreeSet<>();
+    for (PublicKey publicKey : keySnapshot.keys().values()) {
+      if (publicKey instanceof ECPublicKey ecPublicKey) {
+        algorithms.add(
+            switch (ecPublicKey.getParams().getCurve().getField().getFieldSize()) {
+              case 384 -> "ES384";
+              case 521 -> "ES512";
+              default -> "ES256";
+            });
+      } else {
+        algorithms.add("RS256");
+      }
+    }
+    if (algorithms.isEmpty()) {
+      algorithms.add("RS256");
+    }
+    return algorithms;
+  }
+}
@@ -0,0 +1,35 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Health indicator that stays out of service until the {@link KeycloakWarmup} has succeeded, and is
+ * down if the warm-up failed. It is part of the readiness group, so that no traffic is routed to
+ * the instance before token verification is warmed up.
+ */
+public class KeycloakWarmupHealthIndicator implements HealthIndicator {
+
+  private final KeycloakWarmup keycloakWarmup;
+
+  /**
+   * Constructs a new instance of KeycloakWarmupHealthIndicator.
+   *
+   * @param keycloakWarmup The warm-up whose progress is reported.
+   */
+  public KeycloakWarmupHealthIndicator(KeycloakWarmup keycloakWarmup) {
+    this.keycloakWarmup = keycloakWarmup;
+  }
+
+  @Override
+  public Health health() {
+    if (keycloakWarmup.isWarmedUp()) {
+      return Health.up().build();
+    }
+    Exception failure = keycloakWarmup.getFailure();
+    if (failure != null) {
+      return Health.down(failure).withDetail("reason", "Keycloak warm-up failed").build();
+    }
+    return Health.outOfService().withDetail("reason", "Keycloak warm-up in progress").build();
+  }
+}
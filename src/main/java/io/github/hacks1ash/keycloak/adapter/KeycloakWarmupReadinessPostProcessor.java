@@ -0,0 +1,70 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.SecurityContext;
+import org.springframework.boot.actuate.health.AdditionalHealthEndpointPath;
+import org.springframework.boot.actuate.health.HealthEndpointGroup;
+import org.springframework.boot.actuate.health.HealthEndpointGroups;
+import org.springframework.boot.actuate.health.HealthEndpointGroupsPostProcessor;
+import org.springframework.boot.actuate.health.HttpCodeStatusMapper;
+import org.springframework.boot.actuate.health.StatusAggregator;
+
+/**
+ * Adds the {@link KeycloakWarmupHealthIndicator} to the readiness group, if the application has
+ * one, e.g. because the availability probes are enabled. Other groups are left unchanged.
+ */
+class KeycloakWarmupReadinessPostProcessor implements HealthEndpointGroupsPostProcessor {
+
+  static final String READINESS_GROUP = "readiness";
+
+  static final String WARMUP_HEALTH_INDICATOR = "keycloakWarmup";
+
+  @Override
+  public HealthEndpointGroups postProcessHealthEndpointGroups(HealthEndpointGroups groups) {
+    HealthEndpointGroup readiness = groups.get(READINESS_GROUP);
+    if (readiness == null || readiness.isMember(WARMUP_HEALTH_INDICATOR)) {
+      return groups;
+    }
+    Map<String, HealthEndpointGroup> namedGroups = new LinkedHashMap<>();
+    for (String name : groups.getNames()) {
+      namedGroups.put(name, groups.get(name));
+    }
+    namedGroups.put(READINESS_GROUP, new WarmupMemberGroup(readiness));
+    return HealthEndpointGroups.of(groups.getPrimary(), namedGroups);
+  }
+
+  /** A group with the members of another one, and the warm-up health indicator. */
+  private record WarmupMemberGroup(HealthEndpointGroup group) implements HealthEndpointGroup {
+
+    @Override
+    public boolean isMember(String name) {
+      return WARMUP_HEALTH_INDICATOR.equals(name) || group.isMember(name);
+    }
+
+    @Override
+    public boolean showComponents(SecurityContext securityContext) {
+      return group.showComponents(securityContext);
+    }
+
+    @Override
+    public boolean showDetails(SecurityContext securityContext) {
+      return group.showDetails(securityContext);
+    }
+
+    @Override
+    public StatusAggregator getStatusAggregator() {
+      return group.getStatusAggregator();
+    }
+
+    @Override
+    public HttpCodeStatusMapper getHttpCodeStatusMapper() {
+      return group.getHttpCodeStatusMapper();
+    }
+
+    @Override
+    public AdditionalHealthEndpointPath getAdditionalPath() {
+      return group.getAdditionalPath();
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.NoneNestedConditions;
+
+/**
+ * Condition matching servlet and non-web applications, but not reactive ones. Beans that verify
+ * tokens by blocking on the Keycloak server, such as the {@code RemotePublicKeyLocator}, are only
+ * created when it matches, as reactive applications use their non-blocking counterparts.
+ */
+class NonReactiveApplicationCondition extends NoneNestedConditions {
+
+  NonReactiveApplicationCondition() {
+    super(ConfigurationPhase.REGISTER_BEAN);
+  }
+
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  static class ReactiveApplication {}
+}
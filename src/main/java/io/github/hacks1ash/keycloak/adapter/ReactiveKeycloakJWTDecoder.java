@@ -0,0 +1,106 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakJwtVerifier.ParsedToken;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.ReactiveRemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenPreFilter;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+/**
+ * A custom implementation of {@link ReactiveJwtDecoder} for decoding and verifying JWT tokens
+ * issued by Keycloak in reactive applications. It shares the verification and claim-mapping logic
+ * of {@link KeycloakJWTDecoder} and only differs in how the public key is obtained.
+ */
+public class ReactiveKeycloakJWTDecoder implements ReactiveJwtDecoder {
+
+  private final ReactiveRemotePublicKeyLocator remotePublicKeyLocator;
+
+  private final KeycloakJwtVerifier jwtVerifier;
+
+  private KeycloakMetrics metrics = KeycloakMetrics.NOOP;
+
+  /**
+   * Constructs a ReactiveKeycloakJWTDecoder with specified remote public key locator, Keycloak
+   * properties and the user type the token payload is deserialized into.
+   *
+   * @param remotePublicKeyLocator Non-blocking locator for public keys.
+   * @param keycloakProperties Properties configuration for Keycloak.
+   * @param userType The class type of the user, usually {@link JwtAuthConverter#getUserType()}.
+   */
+  public ReactiveKeycloakJWTDecoder(
+      ReactiveRemotePublicKeyLocator remotePublicKeyLocator,
+      KeycloakProperties keycloakProperties,
+      Class<? extends DefaultKeycloakUser> userType) {
+    this.remotePublicKeyLocator = remotePublicKeyLocator;
+    this.jwtVerifier = new KeycloakJwtVerifier(keycloakProperties, userType);
+  }
+
+  /**
+   * Decodes a JWT token to a {@link KeycloakJwt} object.
+   *
+   * @param token the JWT token string.
+   * @return a Mono emitting the decoded {@link KeycloakJwt} object, or an error if the token cannot
+   *     be decoded or if it's invalid.
+   */
+  @Override
+  public Mono<Jwt> decode(String token) throws JwtException {
+    return Mono.defer(
+        () -> {
+          long startTime = metrics.startTimer();
+          return Mono.defer(() -> verify(jwtVerifier.parse(token)))
+              .doOnSuccess(jwt -> metrics.recordDecode(startTime, true))
+              .doOnError(e -> metrics.recordDecode(startTime, false));
+        });
+  }
+
+  /**
+   * Sets the structural check of tokens. When set, oversized, malformed and expired tokens, and
+   * tokens signed with an unsupported algorithm, are rejected before being parsed.
+   *
+   * @param tokenPreFilter The pre-filter, or null to parse every token.
+   */
+  public void setTokenPreFilter(TokenPreFilter tokenPreFilter) {
+    this.jwtVerifier.setTokenPreFilter(tokenPreFilter);
+  }
+
+  /**
+   * Sets the metrics recording the decoding latency and the rejected tokens.
+   *
+   * @param metrics The metrics to record to.
+   */
+  public void setMetrics(KeycloakMetrics metrics) {
+    Assert.notNull(metrics, "metrics cannot be null");
+    this.metrics = metrics;
+    this.jwtVerifier.setMetrics(metrics);
+  }
+
+  /** Returns the verifier of this decoder, warmed up by the {@link KeycloakWarmup}. */
+  KeycloakJwtVerifier getJwtVerifier() {
+    return this.jwtVerifier;
+  }
+
+  private <T extends DefaultKeycloakUser> Mono<Jwt> verify(ParsedToken<T> parsedToken) {
+    if (parsedToken.keyId() == null) {
+      // Try the keys matching the algorithm, as the token doesn't say which one signed it
+      return remotePublicKeyLocator
+          .getCandidateKeys(parsedToken.header().getRawAlgorithm())
+          .map(
+              candidateKeys ->
+                  (Jwt)
+                      jwtVerifier.verify(
+                          parsedToken,
+                          candidateKeys,
+                          jwtVerifier.getRealmUrl(),
+                          remotePublicKeyLocator::recordKeyUse));
+    }
+    return remotePublicKeyLocator
+        .getPublicKey(parsedToken.keyId())
+        .map(publicKey -> (Jwt) jwtVerifier.verify(parsedToken, publicKey))
+        .switchIfEmpty(Mono.fromCallable(() -> (Jwt) jwtVerifier.verify(parsedToken, null)));
+  }
+}
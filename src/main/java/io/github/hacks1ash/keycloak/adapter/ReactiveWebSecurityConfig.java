@@ -0,0 +1,87 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.ReactiveRemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenPreFilter;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+/**
+ * Configuration class for setting up web security using Keycloak in a reactive (WebFlux) Spring
+ * Boot application. This class is the reactive counterpart of {@link WebSecurityConfig} and reuses
+ * the same {@link JwtAuthConverter} for claim mapping.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@EnableReactiveMethodSecurity
+@AllArgsConstructor
+public class ReactiveWebSecurityConfig {
+
+  private KeycloakProperties keycloakProperties;
+
+  private JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter;
+
+  private ReactiveRemotePublicKeyLocator reactiveRemotePublicKeyLocator;
+
+  private ObjectProvider<KeycloakMetrics> keycloakMetrics;
+
+  private ObjectProvider<TokenPreFilter> tokenPreFilter;
+
+  private Customizer<ServerHttpSecurity.AuthorizeExchangeSpec> authorizeExchangeCustomizer;
+
+  private Customizer<ServerHttpSecurity.CorsSpec> corsCustomizer;
+
+  private Customizer<ServerHttpSecurity.CsrfSpec> csrfCustomizer;
+
+  /**
+   * Configures the ServerHttpSecurity for the application. This method defines how security is
+   * managed, including CORS, CSRF and the setup of the resource server for OAuth2.
+   *
+   * @param http ServerHttpSecurity object to be configured.
+   * @return Configured {@link SecurityWebFilterChain}.
+   */
+  @Bean
+  public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http) {
+    return http.cors(this.corsCustomizer)
+        .csrf(this.csrfCustomizer)
+        .authorizeExchange(this.authorizeExchangeCustomizer)
+        .oauth2ResourceServer(
+            oAuth2ResourceServer ->
+                oAuth2ResourceServer.jwt(
+                    jwt ->
+                        jwt.jwtDecoder(reactiveJwtDecoder())
+                            .jwtAuthenticationConverter(
+                                new ReactiveJwtAuthenticationConverterAdapter(
+                                    this.jwtAuthConverter))))
+        .build();
+  }
+
+  /**
+   * Creates a {@link ReactiveJwtDecoder} bean using the ReactiveKeycloakJWTDecoder. This decoder is
+   * responsible for decoding and validating JWT tokens without blocking event-loop threads. Tokens
+   * are checked before being parsed if a TokenPreFilter bean is present.
+   *
+   * @return An instance of {@link ReactiveKeycloakJWTDecoder}.
+   */
+  @Bean
+  public ReactiveKeycloakJWTDecoder reactiveJwtDecoder() {
+    ReactiveKeycloakJWTDecoder reactiveJwtDecoder =
+        new ReactiveKeycloakJWTDecoder(
+            this.reactiveRemotePublicKeyLocator,
+            this.keycloakProperties,
+            this.jwtAuthConverter.getUserType());
+    reactiveJwtDecoder.setTokenPreFilter(this.tokenPreFilter.getIfAvailable());
+    this.keycloakMetrics.ifAvailable(reactiveJwtDecoder::setMetrics);
+    return reactiveJwtDecoder;
+  }
+}
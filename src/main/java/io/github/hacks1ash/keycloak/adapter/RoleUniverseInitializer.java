@@ -0,0 +1,124 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.RoleUniverse;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Builds the role universe of the {@link JwtAuthConverter} once all singletons are created, i.e.
+ * before the application serves requests. The universe holds the roles of {@code
+ * keycloak.authorities.known-roles}, prefixed like the granted authorities, and, if {@code
+ * keycloak.authorities.discover-roles} is set, the roles and authorities named by the {@link
+ * PreAuthorize} and {@link PostAuthorize} annotations of the beans.
+ *
+ * <p>Roles missing from the universe are still checked, by comparing the granted authorities, so
+ * the discovery only has to find the roles checked on hot paths.
+ */
+public class RoleUniverseInitializer implements SmartInitializingSingleton {
+
+  private static final Logger log = LoggerFactory.getLogger(RoleUniverseInitializer.class);
+
+  private static final Pattern AUTHORITY_CHECK =
+      Pattern.compile("has(?:Any)?(Role|Authority)\\s*\\(([^)]*)\\)");
+
+  private static final Pattern STRING_LITERAL = Pattern.compile("'([^']*)'|\"([^\"]*)\"");
+
+  private final KeycloakProperties keycloakProperties;
+
+  private final JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter;
+
+  private final ListableBeanFactory beanFactory;
+
+  private final String defaultRolePrefix;
+
+  /**
+   * Constructs a new instance of RoleUniverseInitializer.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param jwtAuthConverter The converter used by the application.
+   * @param beanFactory The bean factory whose beans are scanned for method security annotations.
+   * @param defaultRolePrefix The prefix added to the roles of {@code hasRole} expressions.
+   */
+  public RoleUniverseInitializer(
+      KeycloakProperties keycloakProperties,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      ListableBeanFactory beanFactory,
+      String defaultRolePrefix) {
+    this.keycloakProperties = keycloakProperties;
+    this.jwtAuthConverter = jwtAuthConverter;
+    this.beanFactory = beanFactory;
+    this.defaultRolePrefix = defaultRolePrefix;
+  }
+
+  /** Builds the role universe and sets it on the converter. */
+  @Override
+  public void afterSingletonsInstantiated() {
+    KeycloakProperties.Authorities authorities = keycloakProperties.getAuthorities();
+    Set<String> knownAuthorities = new LinkedHashSet<>();
+    for (String role : authorities.getKnownRoles()) {
+      knownAuthorities.add(authorities.getClientRolePrefix() + role);
+      if (authorities.isMapRealmRoles()) {
+        knownAuthorities.add(authorities.getRealmRolePrefix() + role);
+      }
+    }
+    if (authorities.isDiscoverRoles()) {
+      for (String beanName : beanFactory.getBeanDefinitionNames()) {
+        Class<?> beanType = beanFactory.getType(beanName, false);
+        if (beanType != null) {
+          discoverAuthorities(ClassUtils.getUserClass(beanType), knownAuthorities);
+        }
+      }
+    }
+    RoleUniverse roleUniverse = new RoleUniverse(knownAuthorities);
+    jwtAuthConverter.setRoleUniverse(roleUniverse);
+    log.debug("Role universe initialized with {} authorities.", roleUniverse.size());
+  }
+
+  private void discoverAuthorities(Class<?> beanType, Set<String> knownAuthorities) {
+    discoverAuthorities((AnnotatedElement) beanType, knownAuthorities);
+    for (Method method : ReflectionUtils.getUniqueDeclaredMethods(beanType)) {
+      discoverAuthorities(method, knownAuthorities);
+    }
+  }
+
+  private void discoverAuthorities(AnnotatedElement element, Set<String> knownAuthorities) {
+    PreAuthorize preAuthorize =
+        AnnotatedElementUtils.findMergedAnnotation(element, PreAuthorize.class);
+    if (preAuthorize != null) {
+      addAuthorities(preAuthorize.value(), knownAuthorities);
+    }
+    PostAuthorize postAuthorize =
+        AnnotatedElementUtils.findMergedAnnotation(element, PostAuthorize.class);
+    if (postAuthorize != null) {
+      addAuthorities(postAuthorize.value(), knownAuthorities);
+    }
+  }
+
+  // Adds the string literals passed to hasRole, hasAnyRole, hasAuthority and hasAnyAuthority
+  private void addAuthorities(String expression, Set<String> knownAuthorities) {
+    Matcher check = AUTHORITY_CHECK.matcher(expression);
+    while (check.find()) {
+      boolean role = check.group(1).equals("Role");
+      Matcher literal = STRING_LITERAL.matcher(check.group(2));
+      while (literal.find()) {
+        String name = literal.group(1) != null ? literal.group(1) : literal.group(2);
+        knownAuthorities.add(
+            role && !name.startsWith(defaultRolePrefix) ? defaultRolePrefix + name : name);
+      }
+    }
+  }
+}
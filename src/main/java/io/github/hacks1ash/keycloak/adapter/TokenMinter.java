@@ -0,0 +1,131 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import io.github.hacks1ash.keycloak.adapter.utils.SignatureAlgorithms;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.UUID;
+import org.keycloak.crypto.SignatureException;
+import org.keycloak.crypto.SignatureSignerContext;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.TokenUtil;
+
+/**
+ * Mints access tokens shaped like the ones issued by Keycloak, signed with a local key. The tokens
+ * are only meant to exercise the verification path without a Keycloak server during the startup
+ * warm-up, and are never accepted by the decoder since their key is unknown to the realm.
+ */
+final class TokenMinter {
+
+  private static final int TOKEN_LIFESPAN = 300; // 5 Minutes
+
+  private final String issuer;
+
+  private final String clientId;
+
+  /**
+   * Constructs a new instance of TokenMinter.
+   *
+   * @param issuer The issuer of the tokens, i.e. the realm URL.
+   * @param clientId The client the tokens are issued for.
+   */
+  TokenMinter(String issuer, String clientId) {
+    this.issuer = issuer;
+    this.clientId = clientId;
+  }
+
+  /**
+   * Generates a key pair suitable for the given JWS algorithm.
+   *
+   * @param algorithm The JWS algorithm name (e.g. 'RS256').
+   * @return A new key pair.
+   * @throws GeneralSecurityException if the key pair cannot be generated.
+   */
+  static KeyPair generateKeyPair(String algorithm) throws GeneralSecurityException {
+    if (algorithm.startsWith("ES")) {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+      generator.initialize(new ECGenParameterSpec(getCurveName(algorithm)));
+      return generator.generateKeyPair();
+    }
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair();
+  }
+
+  /**
+   * Mints a signed bearer token with the given number of realm and client roles.
+   *
+   * @param kid The key ID (KID) written to the token header.
+   * @param algorithm The JWS algorithm name (e.g. 'RS256').
+   * @param privateKey The key the token is signed with.
+   * @param roleCount The number of realm roles and of client roles.
+   * @return The signed token.
+   */
+  String mint(String kid, String algorithm, PrivateKey privateKey, int roleCount) {
+    AccessToken token = new AccessToken();
+    token.id(UUID.randomUUID().toString());
+    token.issuer(issuer);
+    token.subject(UUID.randomUUID().toString());
+    token.type(TokenUtil.TOKEN_TYPE_BEARER);
+    token.issuedFor(clientId);
+    token.issuedNow();
+    token.exp(token.getIat() + TOKEN_LIFESPAN);
+
+    AccessToken.Access access = token.addAccess(clientId);
+    AccessToken.Access realmAccess = new AccessToken.Access();
+    for (int i = 0; i < roleCount; i++) {
+      access.addRole("client-role-" + i);
+      realmAccess.addRole("realm-role-" + i);
+    }
+    token.setRealmAccess(realmAccess);
+
+    return new JWSBuilder()
+        .type("JWT")
+        .kid(kid)
+        .jsonContent(token)
+        .sign(new SignerContext(kid, algorithm, privateKey));
+  }
+
+  private static String getCurveName(String algorithm) {
+    return switch (algorithm) {
+      case "ES384" -> "secp384r1";
+      case "ES512" -> "secp521r1";
+      default -> "secp256r1";
+    };
+  }
+
+  private record SignerContext(String kid, String algorithm, PrivateKey privateKey)
+      implements SignatureSignerContext {
+
+    @Override
+    public String getKid() {
+      return kid;
+    }
+
+    @Override
+    public String getAlgorithm() {
+      return algorithm;
+    }
+
+    @Override
+    public String getHashAlgorithm() {
+      return "SHA-" + algorithm.substring(2);
+    }
+
+    @Override
+    public byte[] sign(byte[] data) throws SignatureException {
+      try {
+        Signature signature = SignatureAlgorithms.getSignature(algorithm);
+        signature.initSign(privateKey);
+        signature.update(data);
+        return signature.sign();
+      } catch (GeneralSecurityException e) {
+        throw new SignatureException("Signing failed", e);
+      }
+    }
+  }
+}
@@ -2,8 +2,12 @@ package io.github.hacks1ash.keycloak.adapter;
 
 import io.github.hacks1ash.keycloak.adapter.customizer.OAuth2ResourceServerCustomizer;
 import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.IssuerKeyLocatorRegistry;
 import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.RevocationIndex;
 import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.web.servlet.ServletListenerRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -17,11 +21,12 @@ import org.springframework.security.config.annotation.web.configurers.CsrfConfig
 import org.springframework.security.config.annotation.web.configurers.oauth2.server.resource.OAuth2ResourceServerConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.session.SessionRegistryImpl;
-import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.access.AccessDeniedHandler;
 import org.springframework.security.web.authentication.session.RegisterSessionAuthenticationStrategy;
+import org.springframework.security.web.csrf.CsrfFilter;
 import org.springframework.security.web.session.HttpSessionEventPublisher;
 
 /**
@@ -29,6 +34,7 @@ import org.springframework.security.web.session.HttpSessionEventPublisher;
  * class defines the necessary beans and configuration to integrate Keycloak with Spring Security.
  */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSecurity
 @EnableMethodSecurity(prePostEnabled = true, proxyTargetClass = true)
 @AllArgsConstructor
@@ -42,7 +48,15 @@ public class WebSecurityConfig {
 
   private JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter;
 
-  private RemotePublicKeyLocator remotePublicKeyLocator;
+  private KeycloakJWTDecoder jwtDecoder;
+
+  private ObjectProvider<RemotePublicKeyLocator> remotePublicKeyLocator;
+
+  private ObjectProvider<IssuerKeyLocatorRegistry> issuerKeyLocatorRegistry;
+
+  private ObjectProvider<OpaqueTokenIntrospector> opaqueTokenIntrospector;
+
+  private ObjectProvider<RevocationIndex> revocationIndex;
 
   private Customizer<
           AuthorizeHttpRequestsConfigurer<HttpSecurity>.AuthorizationManagerRequestMatcherRegistry>
@@ -65,7 +79,9 @@ public class WebSecurityConfig {
 
   /**
    * Configures the HttpSecurity for the application. This method defines how security is managed,
-   * including CORS, CSRF, session management, and the setup of the resource server for OAuth2.
+   * including CORS, CSRF, session management, and the setup of the resource server for OAuth2. If a
+   * RevocationIndex bean is present, the admin callbacks of Keycloak are handled ahead of CSRF
+   * protection and authentication, as they are authenticated by their signature.
    *
    * @param http HttpSecurity object to be configured.
    * @return Configured {@link SecurityFilterChain}.
@@ -73,6 +89,16 @@ public class WebSecurityConfig {
    */
   @Bean
   public SecurityFilterChain httpSecurity(HttpSecurity http) throws Exception {
+    RevocationIndex index = this.revocationIndex.getIfAvailable();
+    if (index != null) {
+      IssuerKeyLocatorRegistry registry = this.issuerKeyLocatorRegistry.getIfAvailable();
+      http.addFilterBefore(
+          registry == null
+              ? new KeycloakAdminActionFilter(
+                  keycloakProperties, this.remotePublicKeyLocator.getObject(), index)
+              : new KeycloakAdminActionFilter(keycloakProperties, registry, index),
+          CsrfFilter.class);
+    }
     return http.cors(this.corsCustomizer)
         .csrf(this.csrfCustomizer)
         .authorizeHttpRequests(this.authorizeHttpRequestsCustomizer)
@@ -91,30 +117,22 @@ public class WebSecurityConfig {
         .build();
   }
 
-  /**
-   * Creates a JwtDecoder bean using the KeycloakJWTDecoder. This decoder is responsible for
-   * decoding and validating JWT tokens in the context of Keycloak.
-   *
-   * @return An instance of {@link JwtDecoder}.
-   */
-  @Bean
-  public JwtDecoder jwtDecoder() {
-    return new KeycloakJWTDecoder(this.remotePublicKeyLocator, keycloakProperties);
-  }
-
   /**
    * Sets up the OAuth2 resource server configuration for the application, incorporating the
-   * necessary components such as JwtDecoder, JwtAuthConverter, AuthenticationEntryPoint, and
-   * AccessDeniedHandler.
+   * necessary components such as the KeycloakJWTDecoder bean, JwtAuthConverter,
+   * AuthenticationEntryPoint, and AccessDeniedHandler. Tokens are validated by introspection if an
+   * OpaqueTokenIntrospector bean is present, e.g. when {@code keycloak.introspection.enabled} is
+   * set.
    *
    * @return An OAuth2ResourceServerCustomizer instance for OAuth2 resource server configuration.
    */
   @Bean
   public Customizer<OAuth2ResourceServerConfigurer<HttpSecurity>> oAuth2ResourceServerCustomizer() {
     return new OAuth2ResourceServerCustomizer(
-        jwtDecoder(),
+        this.jwtDecoder,
         this.jwtAuthConverter,
         this.authenticationEntryPoint,
-        this.accessDeniedHandler);
+        this.accessDeniedHandler,
+        this.opaqueTokenIntrospector.getIfAvailable());
   }
 }
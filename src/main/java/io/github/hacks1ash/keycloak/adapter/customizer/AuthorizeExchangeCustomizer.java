@@ -0,0 +1,30 @@
+package io.github.hacks1ash.keycloak.adapter.customizer;
+
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+
+/**
+ * Customizer for configuring exchange authorization in reactive Spring Security.
+ *
+ * <p>This class implements {@link Customizer} and is specifically designed to work with the {@link
+ * ServerHttpSecurity.AuthorizeExchangeSpec} of Spring Security's ServerHttpSecurity configuration.
+ * It is the reactive counterpart of {@link AuthorizeHttpRequestsCustomizer}.
+ *
+ * <p>The customize method in this class configures the application to authenticate any exchange.
+ */
+public class AuthorizeExchangeCustomizer
+    implements Customizer<ServerHttpSecurity.AuthorizeExchangeSpec> {
+
+  /**
+   * Customizes the {@link ServerHttpSecurity.AuthorizeExchangeSpec} to define custom authorization
+   * rules for exchanges.
+   *
+   * <p>This implementation requires authentication for any exchange with the application.
+   *
+   * @param authorizeExchangeSpec The authorization spec to configure.
+   */
+  @Override
+  public void customize(ServerHttpSecurity.AuthorizeExchangeSpec authorizeExchangeSpec) {
+    authorizeExchangeSpec.anyExchange().authenticated();
+  }
+}
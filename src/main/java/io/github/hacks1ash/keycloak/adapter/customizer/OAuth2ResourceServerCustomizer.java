@@ -7,6 +7,7 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.oauth2.server.resource.OAuth2ResourceServerConfigurer;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.access.AccessDeniedHandler;
 
@@ -31,6 +32,24 @@ public class OAuth2ResourceServerCustomizer
 
   private AccessDeniedHandler accessDeniedHandler;
 
+  private OpaqueTokenIntrospector opaqueTokenIntrospector;
+
+  /**
+   * Constructs an OAuth2ResourceServerCustomizer validating tokens as JWTs.
+   *
+   * @param jwtDecoder The decoder of JWTs.
+   * @param jwtAuthConverter The converter of decoded JWTs to authentications.
+   * @param authenticationEntryPoint The entry point for unauthenticated requests.
+   * @param accessDeniedHandler The handler for requests denied access.
+   */
+  public OAuth2ResourceServerCustomizer(
+      JwtDecoder jwtDecoder,
+      JwtAuthConverter<? extends DefaultKeycloakUser> jwtAuthConverter,
+      AuthenticationEntryPoint authenticationEntryPoint,
+      AccessDeniedHandler accessDeniedHandler) {
+    this(jwtDecoder, jwtAuthConverter, authenticationEntryPoint, accessDeniedHandler, null);
+  }
+
   /**
    * Customizes the {@link OAuth2ResourceServerConfigurer} of HttpSecurity to define custom OAuth2
    * Resource Server policies.
@@ -38,14 +57,24 @@ public class OAuth2ResourceServerCustomizer
    * <p>This method configures various aspects of OAuth2 Resource Server, such as JWT decoding, JWT
    * authentication conversion, authentication entry point, and access denied handler. It ensures
    * that the resource server is aligned with the application's security requirements and the
-   * specificities of the Keycloak authentication.
+   * specificities of the Keycloak authentication. When an opaque token introspector is set, tokens
+   * are validated by introspection instead of as JWTs, and converted by the same converter.
    *
    * @param configurer The OAuth2 Resource Server configurer to be customized.
    */
   @Override
   public void customize(OAuth2ResourceServerConfigurer<HttpSecurity> configurer) {
+    if (this.opaqueTokenIntrospector != null) {
+      configurer.opaqueToken(
+          opaqueToken ->
+              opaqueToken
+                  .introspector(this.opaqueTokenIntrospector)
+                  .authenticationConverter(this.jwtAuthConverter));
+    } else {
+      configurer.jwt(
+          jwt -> jwt.decoder(this.jwtDecoder).jwtAuthenticationConverter(this.jwtAuthConverter));
+    }
     configurer
-        .jwt(jwt -> jwt.decoder(this.jwtDecoder).jwtAuthenticationConverter(this.jwtAuthConverter))
         .authenticationEntryPoint(this.authenticationEntryPoint)
         .accessDeniedHandler(this.accessDeniedHandler);
   }
@@ -0,0 +1,32 @@
+package io.github.hacks1ash.keycloak.adapter.customizer;
+
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+
+/**
+ * Customizer for configuring Cross-Origin Resource Sharing (CORS) in reactive Spring Security.
+ *
+ * <p>This class implements {@link org.springframework.security.config.Customizer} and is
+ * specifically designed to work with the {@link ServerHttpSecurity.CorsSpec} of Spring Security's
+ * ServerHttpSecurity configuration. It is the reactive counterpart of {@link CorsCustomizer}.
+ *
+ * <p>The customize method in this class disables CORS handling in the Spring Security
+ * configuration.
+ */
+public class ServerCorsCustomizer implements Customizer<ServerHttpSecurity.CorsSpec> {
+
+  /**
+   * Customizes the {@link ServerHttpSecurity.CorsSpec} of ServerHttpSecurity to define custom CORS
+   * policies.
+   *
+   * <p>This implementation disables CORS handling, meaning the application will not handle CORS
+   * requests specifically. It is important to understand the security implications of this
+   * configuration in the context of your application.
+   *
+   * @param corsSpec The CORS spec to be customized.
+   */
+  @Override
+  public void customize(ServerHttpSecurity.CorsSpec corsSpec) {
+    corsSpec.disable();
+  }
+}
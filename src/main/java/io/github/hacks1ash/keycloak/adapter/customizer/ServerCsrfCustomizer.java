@@ -0,0 +1,32 @@
+package io.github.hacks1ash.keycloak.adapter.customizer;
+
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+
+/**
+ * Customizer for configuring Cross-Site Request Forgery (CSRF) protection in reactive Spring
+ * Security.
+ *
+ * <p>This class implements {@link org.springframework.security.config.Customizer} and is
+ * specifically designed to work with the {@link ServerHttpSecurity.CsrfSpec} of Spring Security's
+ * ServerHttpSecurity configuration. It is the reactive counterpart of {@link CsrfCustomizer}.
+ *
+ * <p>The customize method in this class disables CSRF protection in the Spring Security
+ * configuration.
+ */
+public class ServerCsrfCustomizer implements Customizer<ServerHttpSecurity.CsrfSpec> {
+
+  /**
+   * Customizes the {@link ServerHttpSecurity.CsrfSpec} of ServerHttpSecurity to define custom CSRF
+   * policies.
+   *
+   * <p>This implementation disables CSRF protection, which is appropriate for stateless APIs
+   * authenticated with bearer tokens.
+   *
+   * @param csrfSpec The CSRF spec to be customized.
+   */
+  @Override
+  public void customize(ServerHttpSecurity.CsrfSpec csrfSpec) {
+    csrfSpec.disable();
+  }
+}
@@ -0,0 +1,134 @@
+package io.github.hacks1ash.keycloak.adapter.metrics;
+
+/**
+ * Instrumentation hooks for token decoding, conversion and realm key fetching. All methods have
+ * empty defaults, and {@link #NOOP} is used until metrics are configured, so an application without
+ * a metrics backend pays no more than a virtual call per hook.
+ *
+ * <p>Timed operations call {@link #startTimer()} before the operation and pass the returned value
+ * to the matching {@code record} method. Implementations that do not record timings return 0 and
+ * never read the clock.
+ */
+public interface KeycloakMetrics {
+
+  /** Metrics implementation that records nothing. */
+  KeycloakMetrics NOOP = new KeycloakMetrics() {};
+
+  /**
+   * Returns the start time of a timed operation.
+   *
+   * @return The start time in nanoseconds, or 0 if timings are not recorded.
+   */
+  default long startTimer() {
+    return 0L;
+  }
+
+  /**
+   * Records the decoding of a token, including key lookup and verification.
+   *
+   * @param startTime The value returned by {@link #startTimer()} before decoding.
+   * @param success Whether the token was decoded successfully.
+   */
+  default void recordDecode(long startTime, boolean success) {}
+
+  /**
+   * Records the conversion of a decoded token into an authentication.
+   *
+   * @param startTime The value returned by {@link #startTimer()} before converting.
+   */
+  default void recordConversion(long startTime) {}
+
+  /**
+   * Records a token that failed verification.
+   *
+   * @param reason The reason the token was rejected.
+   */
+  default void recordVerificationFailure(FailureReason reason) {}
+
+  /**
+   * Records a lookup of a public key in the key cache.
+   *
+   * @param result Whether the key was found, found after its expiry, or not found.
+   */
+  default void recordKeyLookup(KeyLookupResult result) {}
+
+  /**
+   * Records a request for the realm public keys.
+   *
+   * @param startTime The value returned by {@link #startTimer()} before the request.
+   * @param success Whether the keys were retrieved successfully.
+   */
+  default void recordJwksFetch(long startTime, boolean success) {}
+
+  /**
+   * Records the number of public keys currently published by the realm.
+   *
+   * @param keyCount The number of signature keys.
+   */
+  default void recordKeyCount(int keyCount) {}
+
+  /** Records a key fetch skipped because the previous request was too recent. */
+  default void recordThrottledFetch() {}
+
+  /** Reasons a token is rejected, used as a low-cardinality metric tag. */
+  enum FailureReason {
+    /** The token is expired or not yet valid. */
+    EXPIRED("expired"),
+    /** The signature does not match the public key. */
+    BAD_SIGNATURE("bad_signature"),
+    /** The token was issued by another realm or server. */
+    WRONG_ISSUER("wrong_issuer"),
+    /** No public key is known for the key ID of the token. */
+    UNKNOWN_KID("unknown_kid"),
+    /** The token could not be parsed. */
+    MALFORMED("malformed"),
+    /** The token or one of its segments exceeds the maximum size. */
+    OVERSIZED("oversized"),
+    /** The token was revoked by a not-before time or a logout. */
+    REVOKED("revoked"),
+    /** Any other failed check, e.g. a missing subject or a wrong token type. */
+    INVALID("invalid");
+
+    private final String tagValue;
+
+    FailureReason(String tagValue) {
+      this.tagValue = tagValue;
+    }
+
+    /**
+     * Returns the value of the metric tag for this reason.
+     *
+     * @return The tag value.
+     */
+    public String getTagValue() {
+      return tagValue;
+    }
+  }
+
+  /** Results of a key cache lookup, used as a low-cardinality metric tag. */
+  enum KeyLookupResult {
+    /** The key was found and has not expired. */
+    HIT("hit"),
+    /** The key was found after its expiry and served while the keys are refreshed. */
+    STALE("stale"),
+    /** The key was not found and the keys had to be fetched. */
+    MISS("miss"),
+    /** The key ID was recently found to be unknown, or missing, and the keys were not fetched. */
+    REJECTED("rejected");
+
+    private final String tagValue;
+
+    KeyLookupResult(String tagValue) {
+      this.tagValue = tagValue;
+    }
+
+    /**
+     * Returns the value of the metric tag for this result.
+     *
+     * @return The tag value.
+     */
+    public String getTagValue() {
+      return tagValue;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package io.github.hacks1ash.keycloak.adapter.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link KeycloakMetrics} backed by a Micrometer {@link MeterRegistry}. All meters are registered
+ * up front, so recording never looks up a meter by name and every tag has a fixed set of values.
+ *
+ * <p>The following meters are registered:
+ *
+ * <ul>
+ *   <li>{@code keycloak.token.decode}: timer tagged with {@code outcome} (success, failure).
+ *   <li>{@code keycloak.token.verification.failures}: counter tagged with {@code reason}.
+ *   <li>{@code keycloak.token.convert}: timer.
+ *   <li>{@code keycloak.jwks.key.lookups}: counter tagged with {@code result} (hit, stale, miss,
+ *       rejected).
+ *   <li>{@code keycloak.jwks.fetch}: timer tagged with {@code outcome} (success, failure).
+ *   <li>{@code keycloak.jwks.keys}: gauge of the number of realm signature keys.
+ *   <li>{@code keycloak.jwks.fetch.throttled}: counter of key fetches skipped by the throttle.
+ * </ul>
+ */
+public class MicrometerKeycloakMetrics implements KeycloakMetrics {
+
+  private static final String OUTCOME_TAG = "outcome";
+
+  private final Timer decodeSuccessTimer;
+
+  private final Timer decodeFailureTimer;
+
+  private final Timer conversionTimer;
+
+  private final Map<FailureReason, Counter> verificationFailureCounters =
+      new EnumMap<>(FailureReason.class);
+
+  private final Map<KeyLookupResult, Counter> keyLookupCounters =
+      new EnumMap<>(KeyLookupResult.class);
+
+  private final Timer jwksFetchSuccessTimer;
+
+  private final Timer jwksFetchFailureTimer;
+
+  private final Counter throttledFetchCounter;
+
+  private final AtomicInteger keyCount = new AtomicInteger();
+
+  /**
+   * Constructs a new instance of MicrometerKeycloakMetrics and registers its meters.
+   *
+   * @param meterRegistry The registry the meters are registered with.
+   */
+  public MicrometerKeycloakMetrics(MeterRegistry meterRegistry) {
+    this.decodeSuccessTimer = decodeTimer(meterRegistry, "success");
+    this.decodeFailureTimer = decodeTimer(meterRegistry, "failure");
+    this.conversionTimer =
+        Timer.builder("keycloak.token.convert")
+            .description("Time taken to convert a decoded token into an authentication")
+            .register(meterRegistry);
+
+    for (FailureReason reason : FailureReason.values()) {
+      verificationFailureCounters.put(
+          reason,
+          Counter.builder("keycloak.token.verification.failures")
+              .description("Number of tokens rejected during verification")
+              .tag("reason", reason.getTagValue())
+              .register(meterRegistry));
+    }
+
+    for (KeyLookupResult result : KeyLookupResult.values()) {
+      keyLookupCounters.put(
+          result,
+          Counter.builder("keycloak.jwks.key.lookups")
+              .description("Number of public key lookups in the key cache")
+              .tag("result", result.getTagValue())
+              .register(meterRegistry));
+    }
+
+    this.jwksFetchSuccessTimer = jwksFetchTimer(meterRegistry, "success");
+    this.jwksFetchFailureTimer = jwksFetchTimer(meterRegistry, "failure");
+    this.throttledFetchCounter =
+        Counter.builder("keycloak.jwks.fetch.throttled")
+            .description("Number of realm key fetches skipped because of the request throttle")
+            .register(meterRegistry);
+
+    Gauge.builder("keycloak.jwks.keys", keyCount, AtomicInteger::get)
+        .description("Number of signature keys published by the realm")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public long startTimer() {
+    return System.nanoTime();
+  }
+
+  @Override
+  public void recordDecode(long startTime, boolean success) {
+    (success ? decodeSuccessTimer : decodeFailureTimer)
+        .record(elapsed(startTime), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void recordConversion(long startTime) {
+    conversionTimer.record(elapsed(startTime), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void recordVerificationFailure(FailureReason reason) {
+    verificationFailureCounters.get(reason).increment();
+  }
+
+  @Override
+  public void recordKeyLookup(KeyLookupResult result) {
+    keyLookupCounters.get(result).increment();
+  }
+
+  @Override
+  public void recordJwksFetch(long startTime, boolean success) {
+    (success ? jwksFetchSuccessTimer : jwksFetchFailureTimer)
+        .record(elapsed(startTime), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void recordKeyCount(int keyCount) {
+    this.keyCount.set(keyCount);
+  }
+
+  @Override
+  public void recordThrottledFetch() {
+    throttledFetchCounter.increment();
+  }
+
+  private static Timer decodeTimer(MeterRegistry meterRegistry, String outcome) {
+    return Timer.builder("keycloak.token.decode")
+        .description("Time taken to decode and verify a token")
+        .tag(OUTCOME_TAG, outcome)
+        .register(meterRegistry);
+  }
+
+  private static Timer jwksFetchTimer(MeterRegistry meterRegistry, String outcome) {
+    return Timer.builder("keycloak.jwks.fetch")
+        .description("Time taken to fetch the realm public keys")
+        .tag(OUTCOME_TAG, outcome)
+        .register(meterRegistry);
+  }
+
+  private static long elapsed(long startTime) {
+    return System.nanoTime() - startTime;
+  }
+}
@@ -1,21 +1,49 @@
 package io.github.hacks1ash.keycloak.adapter.model;
 
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.AddressClaimSet;
 
 /**
  * Base class for Keycloak user representation.
  * This class extends the AccessToken representation from Keycloak,
  * enabling additional functionality and fields specific to the user's context in a Spring Boot application.
+ *
+ * <p>When read by {@link KeycloakUserReader}, only the claims needed for verification and role
+ * mapping are decoded up front. The getters of the other standard claims, and {@link
+ * #getOtherClaims()}, read the remaining claims from the token payload on first access.
+ *
+ * <p>With lazy claims enabled, subclasses must not read the inherited protected fields of these
+ * claims, e.g. {@code email} or {@code otherClaims}, without calling the getter or {@link
+ * #readDeferredClaims()} first: until the claims have been read, the fields are null or empty. The
+ * fields declared by subclasses themselves are always read up front.
  */
 public class DefaultKeycloakUser extends AccessToken {
 
+  /** Decoded payload whose remaining claims have not been read yet, or null. */
+  private transient volatile byte[] deferredPayload;
+
+  /** Claims of the deferred payload that have already been decoded. */
+  private transient Set<String> decodedClaims;
+
+  /** Whether the deferred claims are being read, to ignore getters called by data binding. */
+  private transient boolean readingDeferredClaims;
+
+  /** Guards the reading of the deferred claims, set along with the deferred payload. */
+  private transient ReentrantLock deferredClaimsLock;
+
   /**
    * Checks if the current user is a service account.
    *
    * @return true if the user is a service account, false otherwise.
    */
   public boolean isServiceAccount() {
-    return this.otherClaims.containsKey("clientId");
+    return this.getOtherClaims().containsKey("clientId");
   }
 
   /**
@@ -28,4 +56,259 @@ public class DefaultKeycloakUser extends AccessToken {
     Object serviceAccountId = this.getOtherClaims().get("clientId");
     return serviceAccountId != null ? serviceAccountId.toString() : null;
   }
+
+  @Override
+  public Map<String, Object> getOtherClaims() {
+    readDeferredClaims();
+    return super.getOtherClaims();
+  }
+
+  @Override
+  public String getNonce() {
+    readDeferredClaims();
+    return super.getNonce();
+  }
+
+  @Override
+  public Long getAuth_time() {
+    readDeferredClaims();
+    return super.getAuth_time();
+  }
+
+  @Override
+  @Deprecated
+  public int getAuthTime() {
+    readDeferredClaims();
+    return super.getAuthTime();
+  }
+
+  @Override
+  public String getAccessTokenHash() {
+    readDeferredClaims();
+    return super.getAccessTokenHash();
+  }
+
+  @Override
+  public String getCodeHash() {
+    readDeferredClaims();
+    return super.getCodeHash();
+  }
+
+  @Override
+  public String getName() {
+    readDeferredClaims();
+    return super.getName();
+  }
+
+  @Override
+  public String getGivenName() {
+    readDeferredClaims();
+    return super.getGivenName();
+  }
+
+  @Override
+  public String getFamilyName() {
+    readDeferredClaims();
+    return super.getFamilyName();
+  }
+
+  @Override
+  public String getMiddleName() {
+    readDeferredClaims();
+    return super.getMiddleName();
+  }
+
+  @Override
+  public String getNickName() {
+    readDeferredClaims();
+    return super.getNickName();
+  }
+
+  @Override
+  public String getPreferredUsername() {
+    readDeferredClaims();
+    return super.getPreferredUsername();
+  }
+
+  @Override
+  public String getProfile() {
+    readDeferredClaims();
+    return super.getProfile();
+  }
+
+  @Override
+  public String getPicture() {
+    readDeferredClaims();
+    return super.getPicture();
+  }
+
+  @Override
+  public String getWebsite() {
+    readDeferredClaims();
+    return super.getWebsite();
+  }
+
+  @Override
+  public String getEmail() {
+    readDeferredClaims();
+    return super.getEmail();
+  }
+
+  @Override
+  public Boolean getEmailVerified() {
+    readDeferredClaims();
+    return super.getEmailVerified();
+  }
+
+  @Override
+  public String getGender() {
+    readDeferredClaims();
+    return super.getGender();
+  }
+
+  @Override
+  public String getBirthdate() {
+    readDeferredClaims();
+    return super.getBirthdate();
+  }
+
+  @Override
+  public String getZoneinfo() {
+    readDeferredClaims();
+    return super.getZoneinfo();
+  }
+
+  @Override
+  public String getLocale() {
+    readDeferredClaims();
+    return super.getLocale();
+  }
+
+  @Override
+  public String getPhoneNumber() {
+    readDeferredClaims();
+    return super.getPhoneNumber();
+  }
+
+  @Override
+  public Boolean getPhoneNumberVerified() {
+    readDeferredClaims();
+    return super.getPhoneNumberVerified();
+  }
+
+  @Override
+  public AddressClaimSet getAddress() {
+    readDeferredClaims();
+    return super.getAddress();
+  }
+
+  @Override
+  public Long getUpdatedAt() {
+    readDeferredClaims();
+    return super.getUpdatedAt();
+  }
+
+  @Override
+  public String getClaimsLocales() {
+    readDeferredClaims();
+    return super.getClaimsLocales();
+  }
+
+  @Override
+  public String getAcr() {
+    readDeferredClaims();
+    return super.getAcr();
+  }
+
+  @Override
+  public String getStateHash() {
+    readDeferredClaims();
+    return super.getStateHash();
+  }
+
+  @Override
+  public Set<String> getTrustedCertificates() {
+    readDeferredClaims();
+    return super.getTrustedCertificates();
+  }
+
+  @Override
+  public Set<String> getAllowedOrigins() {
+    readDeferredClaims();
+    return super.getAllowedOrigins();
+  }
+
+  @Override
+  public Authorization getAuthorization() {
+    readDeferredClaims();
+    return super.getAuthorization();
+  }
+
+  @Override
+  public Confirmation getConfirmation() {
+    readDeferredClaims();
+    return super.getConfirmation();
+  }
+
+  @Override
+  public String getScope() {
+    readDeferredClaims();
+    return super.getScope();
+  }
+
+  /**
+   * Keeps the given payload to read the claims that have not been decoded yet on first access.
+   *
+   * @param payload The decoded token payload.
+   * @param decodedClaims The claims already decoded.
+   */
+  void deferClaims(byte[] payload, Set<String> decodedClaims) {
+    this.decodedClaims = decodedClaims;
+    this.deferredClaimsLock = new ReentrantLock();
+    this.deferredPayload = payload;
+  }
+
+  /**
+   * Reads the deferred claims, if any. Concurrent callers wait until the claims have been read,
+   * without pinning the carrier of virtual threads. Subclasses reading inherited claim fields
+   * directly must call this method first.
+   *
+   * @throws UncheckedIOException if a deferred claim is invalid.
+   */
+  protected final void readDeferredClaims() {
+    if (this.deferredPayload == null) {
+      return;
+    }
+    ReentrantLock lock = this.deferredClaimsLock;
+    lock.lock();
+    try {
+      byte[] payload = this.deferredPayload;
+      if (payload == null || this.readingDeferredClaims) {
+        return;
+      }
+      this.readingDeferredClaims = true;
+      try {
+        KeycloakUserReader.readDeferredClaims(this, payload, this.decodedClaims);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to read the claims of the token", e);
+      } finally {
+        this.readingDeferredClaims = false;
+        this.decodedClaims = null;
+        this.deferredPayload = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reads the deferred claims before serializing, as the payload they are read from is transient.
+   *
+   * @return This user.
+   * @throws ObjectStreamException never.
+   */
+  protected Object writeReplace() throws ObjectStreamException {
+    readDeferredClaims();
+    return this;
+  }
 }
@@ -0,0 +1,289 @@
+package io.github.hacks1ash.keycloak.adapter.model;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.JsonSerialization;
+
+/**
+ * Reads token payloads into a {@link DefaultKeycloakUser} type with Jackson's streaming parser
+ * instead of full data binding.
+ *
+ * <p>Only the claims needed to verify the token, check its revocation and map its roles ({@code
+ * sub}, {@code iss}, {@code exp}, {@code sid}, {@code realm_access}, {@code resource_access}, ...)
+ * are decoded up front, together with the properties declared by subclasses of {@link
+ * DefaultKeycloakUser}, which are bound as usual. Every other claim is skipped and kept as raw
+ * payload bytes, and is only bound the first time one of the getters of {@link DefaultKeycloakUser}
+ * that needs it is called. Subclasses reading the inherited fields of these claims directly see
+ * them empty until then, see {@link DefaultKeycloakUser}.
+ *
+ * @param <T> The user type that extends DefaultKeycloakUser.
+ */
+public final class KeycloakUserReader<T extends DefaultKeycloakUser> {
+
+  private static final ObjectMapper MAPPER = JsonSerialization.mapper;
+
+  /** Claims decoded by this reader itself. */
+  private static final Set<String> STREAMED_CLAIMS =
+      Set.of(
+          "jti",
+          "exp",
+          "nbf",
+          "iat",
+          "iss",
+          "aud",
+          "sub",
+          "typ",
+          "azp",
+          "sid",
+          "session_state",
+          "realm_access",
+          "resource_access");
+
+  private final Constructor<T> constructor;
+
+  /** Properties declared by subclasses of DefaultKeycloakUser, always bound up front. */
+  private final Set<String> subclassProperties;
+
+  /** Claims that are never deferred, i.e. streamed and subclass properties. */
+  private final Set<String> decodedClaims;
+
+  /**
+   * Constructs a KeycloakUserReader for the given user type.
+   *
+   * @param userType The user type the token payload is read into.
+   * @throws IllegalArgumentException if the user type has no no-argument constructor.
+   */
+  public KeycloakUserReader(Class<T> userType) {
+    try {
+      this.constructor = userType.getDeclaredConstructor();
+      this.constructor.setAccessible(true);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(
+          "User type " + userType.getName() + " has no no-argument constructor", e);
+    }
+    this.subclassProperties = findSubclassProperties(userType);
+
+    Set<String> decoded = new HashSet<>(STREAMED_CLAIMS);
+    decoded.addAll(this.subclassProperties);
+    this.decodedClaims = Set.copyOf(decoded);
+  }
+
+  /**
+   * Reads a token payload into a new user.
+   *
+   * @param payload The decoded token payload.
+   * @return The user, whose remaining claims are read on first access.
+   * @throws IOException if the payload is not a JSON object or a decoded claim is invalid.
+   */
+  public T read(byte[] payload) throws IOException {
+    T user = newUser();
+    TokenBuffer subclassClaims = null;
+    boolean deferred = false;
+
+    try (JsonParser parser = MAPPER.createParser(payload)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException(parser, "Token payload is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.currentName();
+        parser.nextToken();
+        if (this.subclassProperties.contains(name)) {
+          if (subclassClaims == null) {
+            subclassClaims = new TokenBuffer(parser);
+            subclassClaims.writeStartObject();
+          }
+          subclassClaims.writeFieldName(name);
+          subclassClaims.copyCurrentStructure(parser);
+        } else if (!readClaim(user, name, parser)) {
+          parser.skipChildren();
+          deferred = true;
+        }
+      }
+    }
+
+    if (subclassClaims != null) {
+      subclassClaims.writeEndObject();
+      MAPPER.readerForUpdating(user).readValue(subclassClaims.asParser());
+    }
+    if (deferred) {
+      user.deferClaims(payload, this.decodedClaims);
+    }
+    return user;
+  }
+
+  /**
+   * Binds the claims of a payload that were skipped by {@link #read(byte[])}.
+   *
+   * @param user The user to bind the claims to.
+   * @param payload The decoded token payload.
+   * @param decodedClaims The claims already decoded, which are skipped.
+   * @throws IOException if a claim is invalid.
+   */
+  static void readDeferredClaims(
+      DefaultKeycloakUser user, byte[] payload, Set<String> decodedClaims) throws IOException {
+    TokenFilter deferredClaims =
+        new TokenFilter() {
+          @Override
+          public TokenFilter includeProperty(String name) {
+            return decodedClaims.contains(name) ? null : TokenFilter.INCLUDE_ALL;
+          }
+        };
+    try (JsonParser parser =
+        new FilteringParserDelegate(
+            MAPPER.createParser(payload),
+            deferredClaims,
+            TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH,
+            true)) {
+      MAPPER.readerForUpdating(user).readValue(parser);
+    }
+  }
+
+  private T newUser() throws IOException {
+    try {
+      return this.constructor.newInstance();
+    } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      throw new IOException("Cannot instantiate " + this.constructor.getDeclaringClass(), e);
+    }
+  }
+
+  /** Decodes a streamed claim, returning false if the claim is deferred instead. */
+  private static boolean readClaim(DefaultKeycloakUser user, String name, JsonParser parser)
+      throws IOException {
+    switch (name) {
+      case "jti" -> user.id(readString(parser));
+      case "exp" -> user.exp(readLong(parser));
+      case "nbf" -> user.nbf(readLong(parser));
+      case "iat" -> user.iat(readLong(parser));
+      case "iss" -> user.issuer(readString(parser));
+      case "aud" -> user.audience(readAudience(parser));
+      case "sub" -> user.subject(readString(parser));
+      case "typ" -> user.type(readString(parser));
+      case "azp" -> user.issuedFor(readString(parser));
+      case "sid", "session_state" -> user.setSessionState(readString(parser));
+      case "realm_access" -> user.setRealmAccess(readAccess(parser));
+      case "resource_access" -> user.setResourceAccess(readResourceAccess(parser));
+      default -> {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String readString(JsonParser parser) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (!token.isScalarValue()) {
+      throw new JsonParseException(parser, "Expected a string for " + parser.currentName());
+    }
+    return parser.getValueAsString();
+  }
+
+  private static Long readLong(JsonParser parser) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (!token.isNumeric()) {
+      throw new JsonParseException(parser, "Expected a number for " + parser.currentName());
+    }
+    return parser.getValueAsLong();
+  }
+
+  private static String[] readAudience(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      String audience = readString(parser);
+      return audience == null ? null : new String[] {audience};
+    }
+    List<String> audience = new ArrayList<>();
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      audience.add(readString(parser));
+    }
+    return audience.toArray(String[]::new);
+  }
+
+  private static Map<String, AccessToken.Access> readResourceAccess(JsonParser parser)
+      throws IOException {
+    if (parser.currentToken() == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    expectObject(parser);
+    Map<String, AccessToken.Access> resourceAccess = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String client = parser.currentName();
+      parser.nextToken();
+      resourceAccess.put(client, readAccess(parser));
+    }
+    return resourceAccess;
+  }
+
+  private static AccessToken.Access readAccess(JsonParser parser) throws IOException {
+    if (parser.currentToken() == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    expectObject(parser);
+    AccessToken.Access access = new AccessToken.Access();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.currentName();
+      JsonToken token = parser.nextToken();
+      if ("roles".equals(name) && token == JsonToken.START_ARRAY) {
+        Set<String> roles = new HashSet<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          roles.add(readString(parser));
+        }
+        access.roles(roles);
+      } else if ("verify_caller".equals(name) && token.isBoolean()) {
+        access.verifyCaller(parser.getBooleanValue());
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return access;
+  }
+
+  private static void expectObject(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Expected an object for " + parser.currentName());
+    }
+  }
+
+  /** Returns the names of the JSON properties declared by subclasses of DefaultKeycloakUser. */
+  private static Set<String> findSubclassProperties(Class<?> userType) {
+    BeanDescription description =
+        MAPPER.getDeserializationConfig().introspect(MAPPER.constructType(userType));
+    Set<String> properties = new HashSet<>();
+    for (BeanPropertyDefinition property : description.findProperties()) {
+      if (isDeclaredBySubclass(property.getField())
+          || isDeclaredBySubclass(property.getSetter())
+          || isDeclaredBySubclass(property.getGetter())) {
+        properties.add(property.getName());
+      }
+    }
+    return Set.copyOf(properties);
+  }
+
+  private static boolean isDeclaredBySubclass(AnnotatedMember member) {
+    return member != null
+        && member.getDeclaringClass() != DefaultKeycloakUser.class
+        && DefaultKeycloakUser.class.isAssignableFrom(member.getDeclaringClass());
+  }
+}
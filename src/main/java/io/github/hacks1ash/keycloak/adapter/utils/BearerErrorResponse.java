@@ -0,0 +1,85 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+/**
+ * A bearer token error response (RFC 6750) whose {@code WWW-Authenticate} header and JSON body are
+ * built once, so that rejecting a request only copies a few bytes into the response. The response
+ * is written directly, without {@link HttpServletResponse#sendError(int)} and the error dispatch to
+ * {@code /error} it triggers.
+ */
+public class BearerErrorResponse {
+
+  private final int status;
+
+  private final String wwwAuthenticate;
+
+  private final byte[] body;
+
+  private BearerErrorResponse(HttpStatus status, String wwwAuthenticate, String body) {
+    this.status = status.value();
+    this.wwwAuthenticate = wwwAuthenticate;
+    this.body = body.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Creates the response to a request without bearer token, which carries no error code as required
+   * by RFC 6750 section 3.1.
+   *
+   * @param realm The realm named in the challenge.
+   * @return The 401 Unauthorized response.
+   */
+  public static BearerErrorResponse missingToken(String realm) {
+    return new BearerErrorResponse(
+        HttpStatus.UNAUTHORIZED,
+        "Bearer realm=\"" + quote(realm) + "\"",
+        "{\"error\":\"unauthorized\"}");
+  }
+
+  /**
+   * Creates a response with the given error code and description.
+   *
+   * @param status The status of the response.
+   * @param realm The realm named in the challenge.
+   * @param error The error code, e.g. {@code invalid_token}.
+   * @param description The human-readable error description.
+   * @return The response.
+   */
+  public static BearerErrorResponse of(
+      HttpStatus status, String realm, String error, String description) {
+    return new BearerErrorResponse(
+        status,
+        String.format(
+            "Bearer realm=\"%s\", error=\"%s\", error_description=\"%s\"",
+            quote(realm), error, quote(description)),
+        String.format(
+            "{\"error\":\"%s\",\"error_description\":\"%s\"}", error, quote(description)));
+  }
+
+  /**
+   * Writes the response, unless it has already been committed.
+   *
+   * @param response The HTTP response to write to.
+   * @throws IOException if the body cannot be written.
+   */
+  public void write(HttpServletResponse response) throws IOException {
+    if (response.isCommitted()) {
+      return;
+    }
+    response.setStatus(status);
+    response.setHeader(HttpHeaders.WWW_AUTHENTICATE, wwwAuthenticate);
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  // Escapes the characters that would end a quoted string of the header or of the JSON body
+  private static String quote(String value) {
+    return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
@@ -0,0 +1,184 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Bounded cache mapping the role sets of a token to an immutable, shared set of granted
+ * authorities. Tokens of the same user or service account carry the same roles, so their
+ * authorities are computed once instead of on every request, and each {@link GrantedAuthority} is
+ * interned so that equal authorities of different role sets share one instance.
+ *
+ * <p>When a {@link RoleUniverse} is set, the bits of the authorities are computed along with them
+ * and cached as well.
+ *
+ * <p>When the cache reaches its maximum size it is cleared, which keeps memory bounded even if the
+ * role sets keep changing.
+ */
+public class GrantedAuthoritiesCache {
+
+  private static final Logger log = LoggerFactory.getLogger(GrantedAuthoritiesCache.class);
+
+  private final String realmRolePrefix;
+
+  private final String clientRolePrefix;
+
+  private final int maximumSize;
+
+  private final Map<RoleSets, RoleAuthorities> authorities = new ConcurrentHashMap<>();
+
+  private final Map<String, GrantedAuthority> internedAuthorities = new ConcurrentHashMap<>();
+
+  private volatile RoleUniverse roleUniverse;
+
+  private volatile RoleAuthorities noAuthorities = new RoleAuthorities(Set.of(), null);
+
+  /**
+   * Constructs a new instance of GrantedAuthoritiesCache.
+   *
+   * @param realmRolePrefix The prefix added to realm roles.
+   * @param clientRolePrefix The prefix added to client roles.
+   * @param maximumSize Maximum number of role sets kept in the cache.
+   */
+  public GrantedAuthoritiesCache(String realmRolePrefix, String clientRolePrefix, int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be greater than 0");
+    }
+    this.realmRolePrefix = realmRolePrefix;
+    this.clientRolePrefix = clientRolePrefix;
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * Returns the granted authorities for the given realm and client roles.
+   *
+   * @param realmRoles The realm roles of the token, or null if realm roles are not mapped.
+   * @param clientRoles The client roles of the token, or null if it has none.
+   * @return An immutable set of granted authorities, shared between tokens with the same roles.
+   */
+  public Set<GrantedAuthority> getAuthorities(Set<String> realmRoles, Set<String> clientRoles) {
+    return getRoleAuthorities(realmRoles, clientRoles).grantedAuthorities();
+  }
+
+  /**
+   * Returns the granted authorities for the given realm and client roles, together with their bits
+   * in the role universe.
+   *
+   * @param realmRoles The realm roles of the token, or null if realm roles are not mapped.
+   * @param clientRoles The client roles of the token, or null if it has none.
+   * @return The authorities, shared between tokens with the same roles.
+   */
+  public RoleAuthorities getRoleAuthorities(Set<String> realmRoles, Set<String> clientRoles) {
+    RoleSets roleSets = new RoleSets(emptyIfNull(realmRoles), emptyIfNull(clientRoles));
+    if (roleSets.isEmpty()) {
+      return noAuthorities;
+    }
+
+    RoleAuthorities cached = authorities.get(roleSets);
+    if (cached != null) {
+      return cached;
+    }
+
+    RoleAuthorities roleAuthorities = createRoleAuthorities(roleSets, this::intern);
+    if (authorities.size() >= maximumSize) {
+      log.debug("Granted authorities cache is full, clearing it.");
+      authorities.clear();
+    }
+    authorities.put(
+        new RoleSets(Set.copyOf(roleSets.realmRoles()), Set.copyOf(roleSets.clientRoles())),
+        roleAuthorities);
+    return roleAuthorities;
+  }
+
+  /**
+   * Computes the granted authorities for the given realm and client roles without caching or
+   * interning them, e.g. for synthetic tokens whose roles no other token carries.
+   *
+   * @param realmRoles The realm roles of the token, or null if realm roles are not mapped.
+   * @param clientRoles The client roles of the token, or null if it has none.
+   * @return The authorities, computed for this call only.
+   */
+  public RoleAuthorities createRoleAuthorities(Set<String> realmRoles, Set<String> clientRoles) {
+    RoleSets roleSets = new RoleSets(emptyIfNull(realmRoles), emptyIfNull(clientRoles));
+    if (roleSets.isEmpty()) {
+      return noAuthorities;
+    }
+    return createRoleAuthorities(roleSets, SimpleGrantedAuthority::new);
+  }
+
+  /**
+   * Sets the universe of the roles whose bits are computed along with the granted authorities, and
+   * clears the cache.
+   *
+   * @param roleUniverse The role universe, or null to stop computing bits.
+   */
+  public void setRoleUniverse(RoleUniverse roleUniverse) {
+    this.roleUniverse = roleUniverse;
+    RoleBitSet noRoles = roleUniverse == null ? null : roleUniverse.toBitSet(Set.of());
+    this.noAuthorities = new RoleAuthorities(Set.of(), noRoles);
+    authorities.clear();
+  }
+
+  /**
+   * Returns the approximate number of cached role sets.
+   *
+   * @return The number of cached role sets.
+   */
+  public int size() {
+    return authorities.size();
+  }
+
+  private RoleAuthorities createRoleAuthorities(
+      RoleSets roleSets, Function<String, GrantedAuthority> authorityFactory) {
+    Set<GrantedAuthority> grantedAuthorities =
+        new LinkedHashSet<>(roleSets.realmRoles().size() + roleSets.clientRoles().size());
+    for (String role : roleSets.realmRoles()) {
+      grantedAuthorities.add(authorityFactory.apply(realmRolePrefix + role));
+    }
+    for (String role : roleSets.clientRoles()) {
+      grantedAuthorities.add(authorityFactory.apply(clientRolePrefix + role));
+    }
+    Set<GrantedAuthority> authoritySet = Collections.unmodifiableSet(grantedAuthorities);
+    RoleUniverse universe = this.roleUniverse;
+    return new RoleAuthorities(
+        authoritySet, universe == null ? null : universe.toBitSet(authoritySet));
+  }
+
+  private GrantedAuthority intern(String authority) {
+    GrantedAuthority interned = internedAuthorities.get(authority);
+    if (interned != null) {
+      return interned;
+    }
+    if (internedAuthorities.size() >= maximumSize * 10) {
+      internedAuthorities.clear();
+    }
+    return internedAuthorities.computeIfAbsent(authority, SimpleGrantedAuthority::new);
+  }
+
+  private static Set<String> emptyIfNull(Set<String> roles) {
+    return roles == null ? Set.of() : roles;
+  }
+
+  private record RoleSets(Set<String> realmRoles, Set<String> clientRoles) {
+
+    private boolean isEmpty() {
+      return realmRoles.isEmpty() && clientRoles.isEmpty();
+    }
+  }
+
+  /**
+   * The granted authorities of a role set.
+   *
+   * @param grantedAuthorities The immutable set of granted authorities.
+   * @param roleBitSet The bits of the granted authorities, or null if no role universe is set.
+   */
+  public record RoleAuthorities(Set<GrantedAuthority> grantedAuthorities, RoleBitSet roleBitSet) {}
+}
@@ -0,0 +1,194 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.keycloak.common.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Registry of {@link RemotePublicKeyLocator}s indexed by token issuer, for applications accepting
+ * tokens from several realms. Only issuers from the configured allow-list are accepted, a locator
+ * is created the first time a token of its issuer is seen, and locators that have not been used for
+ * the configured idle timeout are evicted, so memory stays bounded as tenants come and go.
+ */
+public class IssuerKeyLocatorRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(IssuerKeyLocatorRegistry.class);
+
+  private static final int MIN_TIME_BETWEEN_EVICTIONS = 60; // 1 Minute
+
+  private final KeycloakProperties keycloakProperties;
+
+  private final RestClient restClient;
+
+  private final Set<String> allowedIssuers;
+
+  private final int idleTimeout;
+
+  private final Map<String, Entry> locators = new ConcurrentHashMap<>();
+
+  private final List<Runnable> keysChangeListeners = new CopyOnWriteArrayList<>();
+
+  private final AtomicInteger lastEvictionTime = new AtomicInteger();
+
+  private JwksRefreshScheduler refreshScheduler;
+
+  private KeycloakMetrics metrics = KeycloakMetrics.NOOP;
+
+  /**
+   * Constructs a new instance of IssuerKeyLocatorRegistry.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param restTemplate RestTemplate for HTTP requests.
+   * @param allowedIssuers The issuers, i.e. realm URLs, whose tokens are accepted.
+   * @param idleTimeout How long a locator may stay unused before it is evicted.
+   */
+  public IssuerKeyLocatorRegistry(
+      KeycloakProperties keycloakProperties,
+      RestTemplate restTemplate,
+      Set<String> allowedIssuers,
+      Duration idleTimeout) {
+    this(keycloakProperties, RestClient.create(restTemplate), allowedIssuers, idleTimeout);
+  }
+
+  /**
+   * Constructs a new instance of IssuerKeyLocatorRegistry.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param restClient RestClient for HTTP requests.
+   * @param allowedIssuers The issuers, i.e. realm URLs, whose tokens are accepted.
+   * @param idleTimeout How long a locator may stay unused before it is evicted.
+   */
+  public IssuerKeyLocatorRegistry(
+      KeycloakProperties keycloakProperties,
+      RestClient restClient,
+      Set<String> allowedIssuers,
+      Duration idleTimeout) {
+    this.keycloakProperties = keycloakProperties;
+    this.restClient = restClient;
+    this.allowedIssuers = Set.copyOf(allowedIssuers);
+    this.idleTimeout = (int) idleTimeout.toSeconds();
+  }
+
+  /**
+   * Returns the locator for the given issuer, creating it on first use.
+   *
+   * @param issuer The issuer of the token.
+   * @return The locator of the issuer's realm keys, or null if the issuer is not allowed.
+   */
+  public RemotePublicKeyLocator getLocator(String issuer) {
+    if (issuer == null || !allowedIssuers.contains(issuer)) {
+      return null;
+    }
+
+    int currentTime = Time.currentTime();
+    evictIdle(currentTime);
+
+    Entry entry = locators.computeIfAbsent(issuer, this::createEntry);
+    entry.lastAccessTime = currentTime;
+    return entry.locator;
+  }
+
+  /**
+   * Returns the issuers whose tokens are accepted.
+   *
+   * @return The allowed issuers.
+   */
+  public Set<String> getAllowedIssuers() {
+    return allowedIssuers;
+  }
+
+  /**
+   * Returns the issuers whose locator is currently held by the registry.
+   *
+   * @return The issuers with an active locator.
+   */
+  public Set<String> getActiveIssuers() {
+    return Set.copyOf(locators.keySet());
+  }
+
+  /**
+   * Sets the scheduler running the background refresh of the locators created from now on.
+   *
+   * @param refreshScheduler The scheduler running the background refreshes.
+   */
+  public void setRefreshScheduler(JwksRefreshScheduler refreshScheduler) {
+    this.refreshScheduler = refreshScheduler;
+  }
+
+  /**
+   * Sets the metrics recording key cache lookups and key fetches of the locators created from now
+   * on.
+   *
+   * @param metrics The metrics to record to.
+   */
+  public void setMetrics(KeycloakMetrics metrics) {
+    Assert.notNull(metrics, "metrics cannot be null");
+    this.metrics = metrics;
+  }
+
+  /**
+   * Registers a listener that is invoked whenever the keys of any issuer have been rotated.
+   *
+   * @param listener The listener to invoke after the keys changed.
+   */
+  public void addKeysChangeListener(Runnable listener) {
+    keysChangeListeners.add(listener);
+  }
+
+  private Entry createEntry(String issuer) {
+    log.debug(String.format("Creating public key locator for issuer %s", issuer));
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(keycloakProperties, restClient, issuer);
+    locator.setMetrics(metrics);
+    keysChangeListeners.forEach(locator::addKeysChangeListener);
+    if (refreshScheduler != null) {
+      locator.enableBackgroundRefresh(refreshScheduler);
+    }
+    return new Entry(locator);
+  }
+
+  private void evictIdle(int currentTime) {
+    int lastEviction = lastEvictionTime.get();
+    if (currentTime < lastEviction + MIN_TIME_BETWEEN_EVICTIONS
+        || !lastEvictionTime.compareAndSet(lastEviction, currentTime)) {
+      return;
+    }
+
+    locators
+        .entrySet()
+        .removeIf(
+            issuerEntry -> {
+              Entry entry = issuerEntry.getValue();
+              if (entry.lastAccessTime + idleTimeout > currentTime) {
+                return false;
+              }
+              log.debug(
+                  String.format("Evicting idle public key locator for %s", issuerEntry.getKey()));
+              entry.locator.disableBackgroundRefresh();
+              return true;
+            });
+  }
+
+  private static final class Entry {
+
+    private final RemotePublicKeyLocator locator;
+
+    private volatile int lastAccessTime = Time.currentTime();
+
+    private Entry(RemotePublicKeyLocator locator) {
+      this.locator = locator;
+    }
+  }
+}
@@ -1,7 +1,20 @@
 package io.github.hacks1ash.keycloak.adapter.utils;
 
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.crypto.KeyType;
 import org.keycloak.crypto.KeyUse;
 import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.crypto.PublicKeysWrapper;
@@ -45,13 +58,37 @@ public class JWKSUtils {
         }
         keyWrapper.setType(jwk.getKeyType());
         keyWrapper.setUse(getKeyUse(jwk.getPublicKeyUse()));
-        keyWrapper.setPublicKey(parser.toPublicKey());
+        try {
+          keyWrapper.setPublicKey(toPublicKey(jwk, parser));
+        } catch (RuntimeException | GeneralSecurityException e) {
+          log.warn(
+              "Ignoring JWK key '{}'. Unable to read public key: {}",
+              jwk.getKeyId(),
+              e.getMessage());
+          continue;
+        }
         result.add(keyWrapper);
       }
     }
     return new PublicKeysWrapper(result);
   }
 
+  /**
+   * Extracts the public keys for a specific use (e.g., signature) from a JSONWebKeySet, indexed by
+   * their key ID (KID).
+   *
+   * @param keySet The JSON Web Key Set to extract keys from.
+   * @param requestedUse The key use for which keys are requested (e.g., 'sig' for signature).
+   * @return The public keys from the provided JWKS that match the requested use, by KID.
+   */
+  public static Map<String, PublicKey> getPublicKeysForUse(
+      JSONWebKeySet keySet, JWK.Use requestedUse) {
+    return getKeyWrappersForUse(keySet, requestedUse).getKeys().stream()
+        .collect(
+            Collectors.toMap(
+                KeyWrapper::getKid, keyWrapper -> (PublicKey) keyWrapper.getPublicKey()));
+  }
+
   /**
    * Retrieves a single JWK for a specific use from a JSONWebKeySet.
    *
@@ -73,6 +110,40 @@ public class JWKSUtils {
     return null;
   }
 
+  private static PublicKey toPublicKey(JWK jwk, JWKParser parser) throws GeneralSecurityException {
+    if (!KeyType.EC.equals(jwk.getKeyType())) {
+      return parser.toPublicKey();
+    }
+
+    // Keycloak's parser needs a crypto provider for EC keys, the JDK can read them directly.
+    AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+    parameters.init(new ECGenParameterSpec(getCurveName(getOtherClaim(jwk, "crv"))));
+    ECPoint point =
+        new ECPoint(
+            new BigInteger(1, Base64Url.decode(getOtherClaim(jwk, "x"))),
+            new BigInteger(1, Base64Url.decode(getOtherClaim(jwk, "y"))));
+    return KeyFactory.getInstance("EC")
+        .generatePublic(
+            new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+  }
+
+  private static String getOtherClaim(JWK jwk, String name) {
+    Object value = jwk.getOtherClaims().get(name);
+    if (value == null) {
+      throw new IllegalArgumentException("Missing field " + name);
+    }
+    return value.toString();
+  }
+
+  private static String getCurveName(String curve) {
+    return switch (curve) {
+      case "P-256" -> "secp256r1";
+      case "P-384" -> "secp384r1";
+      case "P-521" -> "secp521r1";
+      default -> throw new IllegalArgumentException("Unsupported curve " + curve);
+    };
+  }
+
   private static KeyUse getKeyUse(String keyUse) {
     return switch (keyUse) {
       case "sig" -> KeyUse.SIG;
@@ -0,0 +1,56 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import org.keycloak.common.VerificationException;
+import org.keycloak.crypto.SignatureVerifierContext;
+
+/**
+ * {@link SignatureVerifierContext} backed directly by the JCA. Unlike the verifiers shipped with
+ * keycloak-core, it supports the RS, PS and ES algorithm families without a Keycloak crypto
+ * provider being installed.
+ */
+public class JcaSignatureVerifierContext implements SignatureVerifierContext {
+
+  private final String kid;
+
+  private final String algorithm;
+
+  private final PublicKey publicKey;
+
+  /**
+   * Constructs a new instance of JcaSignatureVerifierContext.
+   *
+   * @param kid Key ID of the public key.
+   * @param algorithm The JWS algorithm of the token (e.g. 'ES256').
+   * @param publicKey The public key used to verify the signature.
+   */
+  public JcaSignatureVerifierContext(String kid, String algorithm, PublicKey publicKey) {
+    this.kid = kid;
+    this.algorithm = algorithm;
+    this.publicKey = publicKey;
+  }
+
+  @Override
+  public String getKid() {
+    return kid;
+  }
+
+  @Override
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  @Override
+  public boolean verify(byte[] data, byte[] signature) throws VerificationException {
+    try {
+      Signature verifier = SignatureAlgorithms.getSignature(algorithm);
+      verifier.initVerify(publicKey);
+      verifier.update(data);
+      return verifier.verify(signature);
+    } catch (GeneralSecurityException e) {
+      throw new VerificationException("Signature verification failed", e);
+    }
+  }
+}
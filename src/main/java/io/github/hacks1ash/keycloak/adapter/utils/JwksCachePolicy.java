@@ -0,0 +1,94 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.util.Locale;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Derives how long fetched realm keys stay fresh from the {@code Cache-Control} header of the
+ * certificate endpoint, clamped to the bounds configured in {@link KeycloakProperties.Jwks}.
+ *
+ * <p>The {@code max-age} directive, minus the {@code Age} of a cached response, is used when
+ * present. {@code no-cache} and {@code no-store} mean the keys should be fetched as often as
+ * allowed, i.e. after the minimum TTL, and responses without a usable directive use the default
+ * TTL.
+ */
+public class JwksCachePolicy {
+
+  private static final String MAX_AGE = "max-age=";
+
+  private final int defaultTtl;
+
+  private final int minTtl;
+
+  private final int maxTtl;
+
+  /**
+   * Constructs a new instance of JwksCachePolicy.
+   *
+   * @param jwks The settings of the realm keys retrieval.
+   */
+  public JwksCachePolicy(KeycloakProperties.Jwks jwks) {
+    this.minTtl = (int) jwks.getMinCacheTtl().toSeconds();
+    this.maxTtl = (int) jwks.getMaxCacheTtl().toSeconds();
+    if (this.minTtl > this.maxTtl) {
+      throw new IllegalArgumentException("minCacheTtl must not be greater than maxCacheTtl");
+    }
+    this.defaultTtl = clamp((int) jwks.getCacheTtl().toSeconds());
+  }
+
+  /**
+   * Returns the TTL used when the response headers say nothing about caching, e.g. for keys loaded
+   * from a snapshot file.
+   *
+   * @return The TTL in seconds.
+   */
+  public int getDefaultTtl() {
+    return defaultTtl;
+  }
+
+  /**
+   * Returns the TTL of keys fetched with the given response headers.
+   *
+   * @param headers The headers of the response of the certificate endpoint.
+   * @return The TTL in seconds, between the configured bounds.
+   */
+  public int getTtl(HttpHeaders headers) {
+    String cacheControl = headers.getCacheControl();
+    if (cacheControl == null) {
+      return defaultTtl;
+    }
+
+    long maxAge = -1;
+    for (String directive : cacheControl.split(",")) {
+      String name = directive.trim().toLowerCase(Locale.ROOT);
+      if (name.equals("no-cache") || name.equals("no-store")) {
+        return minTtl;
+      }
+      if (name.startsWith(MAX_AGE)) {
+        maxAge = parseSeconds(name.substring(MAX_AGE.length()));
+      }
+    }
+    if (maxAge < 0) {
+      return defaultTtl;
+    }
+
+    long age = parseSeconds(headers.getFirst("Age"));
+    return clamp(maxAge - Math.max(age, 0));
+  }
+
+  private int clamp(long ttl) {
+    return (int) Math.max(minTtl, Math.min(maxTtl, ttl));
+  }
+
+  private static long parseSeconds(String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value.trim().replace("\"", ""));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
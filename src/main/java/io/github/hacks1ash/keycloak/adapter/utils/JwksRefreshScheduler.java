@@ -0,0 +1,116 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduler that refreshes realm public keys in the background, so request threads never wait for a
+ * routine JWKS refresh. All tasks run on a single daemon thread that is stopped when the scheduler
+ * is closed.
+ */
+public class JwksRefreshScheduler implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(JwksRefreshScheduler.class);
+
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /**
+   * Schedules a task to be run repeatedly. Every run is delayed by the interval plus a random
+   * jitter, which spreads the refreshes of many instances over time.
+   *
+   * @param task The task to run.
+   * @param interval The interval between two runs.
+   * @param jitter The maximum random delay added to each run.
+   * @return The scheduled task, which can be cancelled.
+   */
+  public ScheduledTask schedule(Runnable task, Duration interval, Duration jitter) {
+    ScheduledTask scheduledTask = new ScheduledTask(task, interval, jitter);
+    scheduledTask.scheduleNext();
+    return scheduledTask;
+  }
+
+  /**
+   * Runs a task once, as soon as possible, on the refresh thread.
+   *
+   * @param task The task to run.
+   */
+  public void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  /** Stops the refresh thread and cancels all scheduled refreshes. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  static long randomJitter(Duration jitter) {
+    long jitterMillis = jitter.toMillis();
+    return jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0;
+  }
+
+  /** A task run repeatedly by the scheduler until it is cancelled or the scheduler is closed. */
+  public final class ScheduledTask {
+
+    private final Runnable task;
+
+    private final Duration interval;
+
+    private final Duration jitter;
+
+    private volatile boolean cancelled;
+
+    private volatile ScheduledFuture<?> nextRun;
+
+    private ScheduledTask(Runnable task, Duration interval, Duration jitter) {
+      this.task = task;
+      this.interval = interval;
+      this.jitter = jitter;
+    }
+
+    /** Cancels the next run and stops the task from being rescheduled. */
+    public void cancel() {
+      cancelled = true;
+      ScheduledFuture<?> future = nextRun;
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+
+    private void scheduleNext() {
+      if (cancelled || executor.isShutdown()) {
+        return;
+      }
+      try {
+        nextRun =
+            executor.schedule(
+                this::run, interval.toMillis() + randomJitter(jitter), TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        log.debug("Background refresh of realm keys rejected", e);
+      }
+    }
+
+    private void run() {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        log.error("Error when refreshing realm keys in the background", e);
+      } finally {
+        scheduleNext();
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.util.JsonSerialization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local copy of the last realm public keys (JWKS) successfully retrieved from the Keycloak server.
+ * It lets an application verify tokens right after a restart, even while Keycloak is unreachable.
+ *
+ * <p>The file is replaced atomically, so a crash while writing never leaves a truncated key set
+ * behind, and a snapshot older than the configured maximum age is ignored.
+ */
+public class JwksSnapshotFile {
+
+  private static final Logger log = LoggerFactory.getLogger(JwksSnapshotFile.class);
+
+  private final Path path;
+
+  private final Duration maxAge;
+
+  /**
+   * Constructs a new instance of JwksSnapshotFile.
+   *
+   * @param path The file the key set is stored in.
+   * @param maxAge The age after which a stored key set is no longer used.
+   */
+  public JwksSnapshotFile(Path path, Duration maxAge) {
+    this.path = path;
+    this.maxAge = maxAge;
+  }
+
+  /**
+   * Reads the stored key set.
+   *
+   * @param currentTime The current time in seconds.
+   * @return The stored key set and the time it was retrieved, or null if there is none, it cannot
+   *     be read or it is too old.
+   */
+  public StoredKeySet read(int currentTime) {
+    StoredKeySet storedKeySet;
+    try {
+      storedKeySet = JsonSerialization.readValue(Files.readAllBytes(path), StoredKeySet.class);
+    } catch (NoSuchFileException e) {
+      log.debug(String.format("No realm keys snapshot found at %s", path));
+      return null;
+    } catch (IOException e) {
+      log.warn(String.format("Ignoring unreadable realm keys snapshot %s", path), e);
+      return null;
+    }
+
+    if (storedKeySet.jwks() == null
+        || currentTime - storedKeySet.fetchedAt() > maxAge.toSeconds()) {
+      log.info(String.format("Ignoring realm keys snapshot %s older than %s", path, maxAge));
+      return null;
+    }
+    return storedKeySet;
+  }
+
+  /**
+   * Replaces the stored key set. The key set is written to a temporary file in the same directory,
+   * which is then moved over the previous snapshot.
+   *
+   * @param jwks The key set retrieved from the Keycloak server.
+   * @param fetchedAt The time, in seconds, at which the key set was retrieved.
+   * @throws IOException if the key set cannot be written.
+   */
+  public void write(JSONWebKeySet jwks, int fetchedAt) throws IOException {
+    Path directory = path.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path tempFile = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      Files.write(tempFile, JsonSerialization.writeValueAsBytes(new StoredKeySet(fetchedAt, jwks)));
+      try {
+        Files.move(
+            tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Content of the snapshot file.
+   *
+   * @param fetchedAt The time, in seconds, at which the key set was retrieved.
+   * @param jwks The key set retrieved from the Keycloak server.
+   */
+  public record StoredKeySet(int fetchedAt, JSONWebKeySet jwks) {}
+}
@@ -0,0 +1,176 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the realm public keys together with the time they were fetched and how long
+ * they stay fresh. A snapshot is always published as a whole, so readers never observe a partially
+ * updated key set.
+ *
+ * <p>Keys that were published by a previous fetch but are missing from the current one are kept as
+ * retired keys until their grace period ends, so tokens signed just before a key rotation remain
+ * valid without fetching the keys again.
+ *
+ * @param keys The public keys indexed by key ID (KID).
+ * @param fetchedAt The time, in seconds, at which the keys were fetched.
+ * @param ttl The time, in seconds, for which the keys are considered fresh.
+ * @param retiredKeys The keys no longer published, indexed by key ID (KID).
+ */
+public record KeySnapshot(
+    Map<String, PublicKey> keys, int fetchedAt, int ttl, Map<String, RetiredKey> retiredKeys) {
+
+  /** Snapshot used before the keys have been fetched for the first time. */
+  public static final KeySnapshot EMPTY = new KeySnapshot(Map.of(), 0, 0);
+
+  /**
+   * Constructs a KeySnapshot, copying the keys into compact immutable maps.
+   *
+   * @param keys The public keys indexed by key ID (KID).
+   * @param fetchedAt The time, in seconds, at which the keys were fetched.
+   * @param ttl The time, in seconds, for which the keys are considered fresh.
+   * @param retiredKeys The keys no longer published, indexed by key ID (KID).
+   */
+  public KeySnapshot {
+    keys = Map.copyOf(keys);
+    retiredKeys = Map.copyOf(retiredKeys);
+  }
+
+  /**
+   * Constructs a KeySnapshot without retired keys.
+   *
+   * @param keys The public keys indexed by key ID (KID).
+   * @param fetchedAt The time, in seconds, at which the keys were fetched.
+   * @param ttl The time, in seconds, for which the keys are considered fresh.
+   */
+  public KeySnapshot(Map<String, PublicKey> keys, int fetchedAt, int ttl) {
+    this(keys, fetchedAt, ttl, Map.of());
+  }
+
+  /**
+   * Returns the public key for the given key ID if the snapshot is still usable at the given time.
+   * Retired keys are returned until their grace period ends.
+   *
+   * @param kid Key ID for which the public key is required.
+   * @param currentTime The current time in seconds.
+   * @param maxStale How long, in seconds, the keys may be used after they expired.
+   * @return PublicKey associated with the given KID, or null if not found or expired.
+   */
+  public PublicKey getKey(String kid, int currentTime, int maxStale) {
+    if (kid == null || !isUsable(currentTime, maxStale)) {
+      return null;
+    }
+    PublicKey publicKey = keys.get(kid);
+    if (publicKey == null && !retiredKeys.isEmpty()) {
+      RetiredKey retiredKey = retiredKeys.get(kid);
+      if (retiredKey != null && retiredKey.retiredUntil() > currentTime) {
+        return retiredKey.publicKey();
+      }
+    }
+    return publicKey;
+  }
+
+  /**
+   * Returns the public keys, including retired keys within their grace period, that can verify
+   * signatures of the given algorithm, if the snapshot is still usable at the given time.
+   *
+   * @param algorithm The JWS algorithm (e.g. 'RS256').
+   * @param currentTime The current time in seconds.
+   * @param maxStale How long, in seconds, the keys may be used after they expired.
+   * @return The matching public keys indexed by key ID (KID), possibly empty.
+   */
+  public Map<String, PublicKey> getKeys(String algorithm, int currentTime, int maxStale) {
+    Map<String, PublicKey> publicKeys = new LinkedHashMap<>();
+    if (!isUsable(currentTime, maxStale)) {
+      return publicKeys;
+    }
+    keys.forEach(
+        (kid, publicKey) -> {
+          if (SignatureAlgorithms.isCompatible(algorithm, publicKey)) {
+            publicKeys.put(kid, publicKey);
+          }
+        });
+    retiredKeys.forEach(
+        (kid, retiredKey) -> {
+          if (retiredKey.retiredUntil() > currentTime
+              && SignatureAlgorithms.isCompatible(algorithm, retiredKey.publicKey())) {
+            publicKeys.put(kid, retiredKey.publicKey());
+          }
+        });
+    return publicKeys;
+  }
+
+  /**
+   * Checks whether the snapshot can still be used at the given time.
+   *
+   * @param currentTime The current time in seconds.
+   * @param maxStale How long, in seconds, the keys may be used after they expired.
+   * @return true if the keys have not expired, or expired less than {@code maxStale} ago.
+   */
+  public boolean isUsable(int currentTime, int maxStale) {
+    return fetchedAt + ttl + maxStale > currentTime;
+  }
+
+  /**
+   * Returns a copy of this snapshot with the same keys but a new fetch time.
+   *
+   * @param fetchedAt The new fetch time in seconds.
+   * @return The updated snapshot.
+   */
+  public KeySnapshot withFetchedAt(int fetchedAt) {
+    return withFetchedAt(fetchedAt, ttl);
+  }
+
+  /**
+   * Returns a copy of this snapshot with the same keys but a new fetch time and TTL.
+   *
+   * @param fetchedAt The new fetch time in seconds.
+   * @param ttl The new TTL in seconds.
+   * @return The updated snapshot.
+   */
+  public KeySnapshot withFetchedAt(int fetchedAt, int ttl) {
+    return new KeySnapshot(keys, fetchedAt, ttl, retiredKeys);
+  }
+
+  /**
+   * Returns the snapshot replacing this one after a fetch. Keys of this snapshot missing from the
+   * fetched keys are retired for the grace period, and retired keys whose grace period has ended or
+   * that are published again are dropped.
+   *
+   * @param fetchedKeys The fetched public keys indexed by key ID (KID).
+   * @param fetchedAt The time, in seconds, at which the keys were fetched.
+   * @param ttl The time, in seconds, for which the keys are considered fresh.
+   * @param gracePeriod How long, in seconds, retired keys are still used.
+   * @return The new snapshot.
+   */
+  public KeySnapshot rotate(
+      Map<String, PublicKey> fetchedKeys, int fetchedAt, int ttl, int gracePeriod) {
+    if (gracePeriod <= 0 || (retiredKeys.isEmpty() && fetchedKeys.equals(keys))) {
+      return new KeySnapshot(fetchedKeys, fetchedAt, ttl);
+    }
+    Map<String, RetiredKey> retired = new HashMap<>();
+    retiredKeys.forEach(
+        (kid, retiredKey) -> {
+          if (retiredKey.retiredUntil() > fetchedAt && !fetchedKeys.containsKey(kid)) {
+            retired.put(kid, retiredKey);
+          }
+        });
+    keys.forEach(
+        (kid, publicKey) -> {
+          if (!fetchedKeys.containsKey(kid)) {
+            retired.put(kid, new RetiredKey(publicKey, fetchedAt + gracePeriod));
+          }
+        });
+    return new KeySnapshot(fetchedKeys, fetchedAt, ttl, retired);
+  }
+
+  /**
+   * A public key that is no longer published by the realm.
+   *
+   * @param publicKey The public key.
+   * @param retiredUntil The time, in seconds, until which the key is still used.
+   */
+  public record RetiredKey(PublicKey publicKey, int retiredUntil) {}
+}
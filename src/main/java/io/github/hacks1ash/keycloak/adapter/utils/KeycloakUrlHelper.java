@@ -26,7 +26,28 @@ public class KeycloakUrlHelper {
    * @return A String representing the URL to the certificate endpoint of the specified realm.
    */
   public static String getCertificateUrl(String serverUrl, String realm) {
-    return getRealmUrl(serverUrl, realm) + "/protocol/openid-connect/certs";
+    return getCertificateUrl(getRealmUrl(serverUrl, realm));
+  }
+
+  /**
+   * Constructs the URL for the certificate endpoint of a realm from the realm URL, which is also
+   * the issuer of the realm's tokens.
+   *
+   * @param realmUrl The URL of the realm.
+   * @return A String representing the URL to the certificate endpoint of the realm.
+   */
+  public static String getCertificateUrl(String realmUrl) {
+    return realmUrl + "/protocol/openid-connect/certs";
+  }
+
+  /**
+   * Constructs the URL for the token introspection endpoint of a realm from the realm URL.
+   *
+   * @param realmUrl The URL of the realm.
+   * @return A String representing the URL to the token introspection endpoint of the realm.
+   */
+  public static String getIntrospectionUrl(String realmUrl) {
+    return realmUrl + "/protocol/openid-connect/token/introspect";
   }
 
   private KeycloakUrlHelper() {
@@ -0,0 +1,308 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.utils.RemoteKeySetCache.FetchOutcome;
+import io.github.hacks1ash.keycloak.adapter.utils.RemoteKeySetCache.FetchResult;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.keycloak.common.util.Time;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link RemotePublicKeyLocator} for reactive applications. The public
+ * keys are fetched with a {@link WebClient} and published as an immutable {@link KeySnapshot}.
+ *
+ * <p>Concurrent cache misses share one in-flight fetch, so a burst of tokens signed with a new key
+ * results in a single request to the Keycloak server. The keys are cached and refreshed with the
+ * same policy as {@link RemotePublicKeyLocator}: recently unknown key IDs are rejected without a
+ * fetch, fetches are limited by a {@link TokenBucket}, keys removed from the realm are retired for
+ * {@code keycloak.jwks.retired-key-grace-period}, tokens without a key ID are verified against the
+ * keys matching their algorithm, and requests are conditional once the server has sent an {@code
+ * ETag} or {@code Last-Modified} header.
+ *
+ * <p>When background refresh is enabled, the keys are reloaded periodically and expired keys are
+ * served for {@code keycloak.jwks.max-stale} while a refresh runs. Refreshes are retried on I/O and
+ * server errors with an exponential backoff, delayed without blocking any thread.
+ */
+public class ReactiveRemotePublicKeyLocator {
+
+  private static final Logger log = LoggerFactory.getLogger(ReactiveRemotePublicKeyLocator.class);
+
+  private final KeycloakProperties keycloakProperties;
+
+  private final WebClient webClient;
+
+  private final RemoteKeySetCache keySet;
+
+  private final AtomicReference<Mono<FetchResult>> inFlightRequest = new AtomicReference<>();
+
+  private volatile Disposable scheduledRefresh;
+
+  /**
+   * Constructs a new instance of ReactiveRemotePublicKeyLocator.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param webClient WebClient for HTTP requests.
+   */
+  public ReactiveRemotePublicKeyLocator(
+      KeycloakProperties keycloakProperties, WebClient webClient) {
+    this.keycloakProperties = keycloakProperties;
+    this.webClient = webClient;
+    this.keySet =
+        new RemoteKeySetCache(
+            keycloakProperties,
+            KeycloakUrlHelper.getRealmUrl(
+                keycloakProperties.getServerUrl(), keycloakProperties.getRealm()),
+            log);
+  }
+
+  /**
+   * Retrieves the public key for a given key ID (KID). If the key is not available in the cache,
+   * the latest public keys are fetched from the Keycloak server, sharing any fetch already in
+   * flight. The key ID is only remembered as unknown when it is missing from keys retrieved by a
+   * fetch that started after this lookup.
+   *
+   * @param kid Key ID for which the public key is required.
+   * @return A Mono emitting the PublicKey associated with the given KID, or empty if not found.
+   */
+  public Mono<PublicKey> getPublicKey(String kid) {
+    int currentTime = Time.currentTime();
+    long lookupTime = System.nanoTime();
+
+    PublicKey publicKey = keySet.getCachedKey(kid, currentTime);
+    if (publicKey != null) {
+      return Mono.just(publicKey);
+    }
+    if (keySet.rejectLookup(kid, currentTime)) {
+      return Mono.empty();
+    }
+
+    return fetchKeys(true, true)
+        .mapNotNull(
+            fetched -> {
+              PublicKey fetchedKey = fetched.snapshot().getKey(kid, Time.currentTime(), 0);
+              if (fetchedKey == null
+                  && fetched.retrieved()
+                  && !fetched.isRequestedBefore(lookupTime)) {
+                keySet.addUnknownKeyId(kid, currentTime);
+              }
+              return fetchedKey;
+            });
+  }
+
+  /**
+   * Retrieves the keys that may have signed a token without key ID, i.e. the published and retired
+   * keys matching the algorithm of the token, ordered by their most recent successful use. The keys
+   * are only fetched when none have been fetched yet or they expired, never because no key matched.
+   *
+   * @param algorithm The JWS algorithm of the token (e.g. 'RS256').
+   * @return A Mono emitting the candidate keys indexed by key ID (KID), possibly empty.
+   * @see #recordKeyUse(String)
+   */
+  public Mono<List<Map.Entry<String, PublicKey>>> getCandidateKeys(String algorithm) {
+    List<Map.Entry<String, PublicKey>> candidates =
+        keySet.getCachedCandidateKeys(algorithm, Time.currentTime());
+    if (candidates != null) {
+      return Mono.just(candidates);
+    }
+    return fetchKeys(true, true)
+        .map(
+            fetched ->
+                keySet.getCandidateKeys(fetched.snapshot(), algorithm, Time.currentTime(), 0));
+  }
+
+  /**
+   * Records that a token without key ID was verified with the given key, so that the key is tried
+   * first for the next such token.
+   *
+   * @param kid The key ID (KID) of the key that verified the token.
+   */
+  public void recordKeyUse(String kid) {
+    keySet.recordKeyUse(kid);
+  }
+
+  /**
+   * Fetches the latest public keys from the Keycloak server, sharing any fetch already in flight.
+   * The cache expiry is only extended when the keys were retrieved successfully, and I/O and server
+   * errors are retried with an exponential backoff.
+   *
+   * @return A Mono emitting the key snapshot after the fetch.
+   */
+  public Mono<KeySnapshot> refresh() {
+    return fetchKeysWithRetries(false, 0).map(FetchResult::snapshot);
+  }
+
+  /**
+   * Returns the currently published snapshot of the public keys.
+   *
+   * @return The current key snapshot.
+   */
+  public KeySnapshot getKeySnapshot() {
+    return keySet.getKeySnapshot();
+  }
+
+  /**
+   * Enables the periodic background refresh of the public keys, using the interval and jitter from
+   * {@link KeycloakProperties.Jwks}. Once enabled, expired keys are served for up to {@code
+   * max-stale} while a refresh runs.
+   */
+  public void enableBackgroundRefresh() {
+    keySet.setBackgroundRefresh(
+        () -> refresh().doFinally(signal -> keySet.backgroundRefreshCompleted()).subscribe());
+
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    this.scheduledRefresh =
+        Mono.defer(
+                () ->
+                    Mono.delay(
+                        jwks.getRefreshInterval()
+                            .plusMillis(
+                                JwksRefreshScheduler.randomJitter(jwks.getRefreshJitter()))))
+            .then(Mono.defer(this::refresh))
+            .repeat()
+            .subscribe(
+                snapshot -> {},
+                e -> log.error("Error when refreshing realm keys in the background", e));
+  }
+
+  /**
+   * Stops the periodic background refresh of the public keys, e.g. before the locator is discarded.
+   * Expired keys are no longer served once the background refresh is disabled.
+   */
+  public void disableBackgroundRefresh() {
+    Disposable refresh = this.scheduledRefresh;
+    keySet.setBackgroundRefresh(null);
+    this.scheduledRefresh = null;
+    if (refresh != null) {
+      refresh.dispose();
+    }
+  }
+
+  /**
+   * Returns the number of lookups rejected without fetching the keys, because the key ID was
+   * missing or recently found to be unknown.
+   *
+   * @return The rejected lookup count.
+   */
+  public long getRejectedLookupCount() {
+    return keySet.getRejectedLookupCount();
+  }
+
+  /**
+   * Returns the number of key fetches skipped because the refetch throttle was exhausted.
+   *
+   * @return The throttled fetch count.
+   */
+  public long getThrottledFetchCount() {
+    return keySet.getThrottledFetchCount();
+  }
+
+  /**
+   * Sets the metrics recording key cache lookups and key fetches.
+   *
+   * @param metrics The metrics to record to.
+   */
+  public void setMetrics(KeycloakMetrics metrics) {
+    keySet.setMetrics(metrics);
+  }
+
+  private Mono<FetchResult> fetchKeys(boolean throttled, boolean extendOnFailure) {
+    long requestTime = System.nanoTime();
+    Mono<FetchResult> request =
+        Mono.defer(() -> acquireAndSendRequest(throttled, extendOnFailure, requestTime))
+            .doFinally(signal -> inFlightRequest.set(null))
+            .cache();
+    Mono<FetchResult> inFlight = inFlightRequest.compareAndExchange(null, request);
+    return inFlight != null ? inFlight : request;
+  }
+
+  /**
+   * Fetches the keys, retrying I/O and server errors with an exponential backoff. The backoff is
+   * delayed after the failed fetch has completed, so lookups joining the fetch in flight never wait
+   * for it.
+   */
+  private Mono<FetchResult> fetchKeysWithRetries(boolean extendOnFailure, int attempt) {
+    return fetchKeys(false, extendOnFailure)
+        .flatMap(
+            fetched -> {
+              Duration backoff = keySet.getRetryBackoff(fetched.outcome(), attempt);
+              if (backoff == null) {
+                return Mono.just(fetched);
+              }
+              return Mono.delay(backoff)
+                  .then(Mono.defer(() -> fetchKeysWithRetries(extendOnFailure, attempt + 1)));
+            });
+  }
+
+  // Only the fetch that won the in-flight slot takes a token, once, for all the lookups joining it
+  private Mono<FetchResult> acquireAndSendRequest(
+      boolean throttled, boolean extendOnFailure, long requestTime) {
+    int currentTime = Time.currentTime();
+    if (!keySet.acquireFetch(throttled, currentTime)) {
+      return Mono.just(keySet.newFetchResult(requestTime, FetchOutcome.THROTTLED));
+    }
+    return sendRequest(currentTime)
+        .map(
+            outcome -> {
+              if (outcome != FetchOutcome.RETRIEVED && extendOnFailure) {
+                keySet.extendAfterFailure(currentTime);
+              }
+              return keySet.newFetchResult(requestTime, outcome);
+            });
+  }
+
+  private Mono<FetchOutcome> sendRequest(int currentTime) {
+    if (log.isTraceEnabled()) {
+      log.trace(
+          String.format(
+              "Sending request to retrieve realm public keys for client %s",
+              keycloakProperties.getClientId()));
+    }
+
+    KeycloakMetrics metrics = keySet.getMetrics();
+    return Mono.defer(
+        () -> {
+          long startTime = metrics.startTimer();
+          return requestKeys(currentTime)
+              .doOnNext(
+                  outcome -> metrics.recordJwksFetch(startTime, outcome == FetchOutcome.RETRIEVED));
+        });
+  }
+
+  /**
+   * Requests the keys, conditionally if the previous response had an ETag or Last-Modified header.
+   */
+  private Mono<FetchOutcome> requestKeys(int currentTime) {
+    return webClient
+        .get()
+        .uri(KeycloakUrlHelper.getCertificateUrl(keySet.getRealmUrl()))
+        .headers(requestHeaders -> requestHeaders.addAll(keySet.getConditionalHeaders()))
+        .retrieve()
+        .toEntity(JSONWebKeySet.class)
+        .map(response -> keySet.publish(response, currentTime))
+        .defaultIfEmpty(FetchOutcome.FAILED)
+        .onErrorResume(
+            e -> {
+              log.error("Error when sending request to retrieve realm keys", e);
+              return Mono.just(isUnavailable(e) ? FetchOutcome.UNAVAILABLE : FetchOutcome.FAILED);
+            });
+  }
+
+  // I/O and server errors are worth retrying, unlike client errors
+  private static boolean isUnavailable(Throwable e) {
+    return e instanceof WebClientRequestException
+        || (e instanceof WebClientResponseException responseException
+            && responseException.getStatusCode().is5xxServerError());
+  }
+}
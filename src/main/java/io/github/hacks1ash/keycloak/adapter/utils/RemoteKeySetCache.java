@@ -0,0 +1,490 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics.KeyLookupResult;
+import java.io.IOException;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.slf4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+
+/**
+ * Cached keys of a realm together with the policy deciding how they are looked up and refreshed,
+ * shared by {@link RemotePublicKeyLocator} and {@link ReactiveRemotePublicKeyLocator}. The locators
+ * only differ in how they send the requests and wait for them.
+ *
+ * <p>The keys are published as one immutable {@link KeySnapshot}. Expired keys are served for
+ * {@code keycloak.jwks.max-stale} while a background refresh runs, unknown key IDs are rejected and
+ * fetches triggered by lookups are throttled. Responses are published here, including 304 Not
+ * Modified answers to the conditional headers built from the previous response, and failed
+ * refreshes are retried with an exponential backoff.
+ */
+final class RemoteKeySetCache {
+
+  private final KeycloakProperties keycloakProperties;
+
+  private final String realmUrl;
+
+  private final Logger log;
+
+  private final AtomicReference<KeySnapshot> keySnapshot = new AtomicReference<>(KeySnapshot.EMPTY);
+
+  private final List<Runnable> keysChangeListeners = new CopyOnWriteArrayList<>();
+
+  private final AtomicBoolean refreshInProgress = new AtomicBoolean();
+
+  private final UnknownKeyIdCache unknownKeyIds;
+
+  private final TokenBucket refetchBucket;
+
+  private final JwksCachePolicy cachePolicy;
+
+  private final int retiredKeyGracePeriod;
+
+  private final int maxStale;
+
+  private final Map<String, Long> keyUses = new ConcurrentHashMap<>();
+
+  private final AtomicLong keyUseSequence = new AtomicLong();
+
+  private final LongAdder rejectedLookupCount = new LongAdder();
+
+  private final LongAdder throttledFetchCount = new LongAdder();
+
+  private volatile Runnable backgroundRefresh;
+
+  private KeycloakMetrics metrics = KeycloakMetrics.NOOP;
+
+  private JwksSnapshotFile snapshotFile;
+
+  private volatile int lastRequestTime = 0;
+
+  private volatile CacheValidators cacheValidators;
+
+  private volatile String lastUsedKid;
+
+  /**
+   * Constructs the cache of the keys of the given realm.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param realmUrl The URL of the realm whose keys are cached.
+   * @param log The logger of the locator using the cache.
+   */
+  RemoteKeySetCache(KeycloakProperties keycloakProperties, String realmUrl, Logger log) {
+    this.keycloakProperties = keycloakProperties;
+    this.realmUrl = realmUrl;
+    this.log = log;
+
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    this.unknownKeyIds =
+        new UnknownKeyIdCache(jwks.getUnknownKidTtl(), jwks.getUnknownKidCacheMaximumSize());
+    this.refetchBucket = new TokenBucket(jwks.getRefetchBurst(), jwks.getRefetchInterval());
+    this.cachePolicy = new JwksCachePolicy(jwks);
+    this.retiredKeyGracePeriod = (int) jwks.getRetiredKeyGracePeriod().toSeconds();
+    this.maxStale = (int) jwks.getMaxStale().toSeconds();
+  }
+
+  String getRealmUrl() {
+    return realmUrl;
+  }
+
+  KeySnapshot getKeySnapshot() {
+    return keySnapshot.get();
+  }
+
+  KeycloakMetrics getMetrics() {
+    return metrics;
+  }
+
+  void setMetrics(KeycloakMetrics metrics) {
+    Assert.notNull(metrics, "metrics cannot be null");
+    this.metrics = metrics;
+  }
+
+  void setSnapshotFile(JwksSnapshotFile snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  void addKeysChangeListener(Runnable listener) {
+    keysChangeListeners.add(listener);
+  }
+
+  long getRejectedLookupCount() {
+    return rejectedLookupCount.sum();
+  }
+
+  long getThrottledFetchCount() {
+    return throttledFetchCount.sum();
+  }
+
+  int getLastRequestTime() {
+    return lastRequestTime;
+  }
+
+  /**
+   * Returns the cached key for the given key ID, or an expired one while it is refreshed in the
+   * background.
+   *
+   * @return The cached key, or null if the keys must be fetched or the lookup rejected.
+   * @see #rejectLookup(String, int)
+   */
+  PublicKey getCachedKey(String kid, int currentTime) {
+    KeySnapshot snapshot = keySnapshot.get();
+    PublicKey publicKey = snapshot.getKey(kid, currentTime, 0);
+    if (publicKey != null) {
+      metrics.recordKeyLookup(KeyLookupResult.HIT);
+      return publicKey;
+    }
+
+    // Serve the expired key while it is refreshed in the background.
+    if (backgroundRefresh != null) {
+      publicKey = snapshot.getKey(kid, currentTime, maxStale);
+      if (publicKey != null) {
+        metrics.recordKeyLookup(KeyLookupResult.STALE);
+        refreshInBackground();
+        return publicKey;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Rejects a key ID missing from the cached keys that fetching the keys cannot resolve, because it
+   * is missing or was recently found to be unknown.
+   *
+   * @return true if the lookup is rejected, false if the keys must be fetched.
+   */
+  boolean rejectLookup(String kid, int currentTime) {
+    if (kid == null || unknownKeyIds.contains(kid, currentTime)) {
+      rejectedLookupCount.increment();
+      metrics.recordKeyLookup(KeyLookupResult.REJECTED);
+      return true;
+    }
+    metrics.recordKeyLookup(KeyLookupResult.MISS);
+    return false;
+  }
+
+  /**
+   * Remembers a key ID as unknown. Only a key set actually retrieved after the lookup started
+   * proves the key ID unknown.
+   */
+  void addUnknownKeyId(String kid, int currentTime) {
+    unknownKeyIds.add(kid, currentTime);
+  }
+
+  /**
+   * Returns the cached keys that may have signed a token without key ID, or expired ones while they
+   * are refreshed in the background.
+   *
+   * @return The candidate keys, or null if the keys must be fetched first.
+   */
+  List<Map.Entry<String, PublicKey>> getCachedCandidateKeys(String algorithm, int currentTime) {
+    KeySnapshot snapshot = keySnapshot.get();
+    if (snapshot.isUsable(currentTime, 0)) {
+      metrics.recordKeyLookup(KeyLookupResult.HIT);
+      return getCandidateKeys(snapshot, algorithm, currentTime, 0);
+    }
+    if (backgroundRefresh != null && snapshot.isUsable(currentTime, maxStale)) {
+      // Serve the expired keys while they are refreshed in the background.
+      metrics.recordKeyLookup(KeyLookupResult.STALE);
+      refreshInBackground();
+      return getCandidateKeys(snapshot, algorithm, currentTime, maxStale);
+    }
+    metrics.recordKeyLookup(KeyLookupResult.MISS);
+    return null;
+  }
+
+  /**
+   * Returns the keys of a snapshot matching the given algorithm, most recently successful first.
+   */
+  List<Map.Entry<String, PublicKey>> getCandidateKeys(
+      KeySnapshot snapshot, String algorithm, int currentTime, int maxStale) {
+    List<Map.Entry<String, PublicKey>> candidates =
+        new ArrayList<>(snapshot.getKeys(algorithm, currentTime, maxStale).entrySet());
+    if (candidates.size() > 1) {
+      candidates.sort(
+          Comparator.comparingLong(
+                  (Map.Entry<String, PublicKey> candidate) ->
+                      keyUses.getOrDefault(candidate.getKey(), 0L))
+              .reversed());
+    }
+    return candidates;
+  }
+
+  void recordKeyUse(String kid) {
+    if (!kid.equals(lastUsedKid)) {
+      lastUsedKid = kid;
+      keyUses.put(kid, keyUseSequence.incrementAndGet());
+    }
+  }
+
+  /**
+   * Decides whether a request may be sent. A throttled fetch, i.e. one triggered by a lookup, takes
+   * a token from the refetch bucket.
+   *
+   * @return true if the request may be sent, false if the refetch throttle is exhausted.
+   */
+  boolean acquireFetch(boolean throttled, int currentTime) {
+    if (throttled && !refetchBucket.tryAcquire()) {
+      throttledFetchCount.increment();
+      metrics.recordThrottledFetch();
+      log.debug(
+          String.format(
+              "Won't send request to realm jwks url. Last request time was %d. Current time is %d.",
+              lastRequestTime, currentTime));
+      return false;
+    }
+    lastRequestTime = currentTime;
+    return true;
+  }
+
+  /**
+   * Returns the headers making the next request conditional, if the previous response had an ETag
+   * or Last-Modified header.
+   */
+  HttpHeaders getConditionalHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+    CacheValidators validators = cacheValidators;
+    if (validators != null && keySnapshot.get() != KeySnapshot.EMPTY) {
+      if (validators.etag() != null) {
+        headers.setIfNoneMatch(validators.etag());
+      }
+      if (validators.lastModified() != null) {
+        headers.set(HttpHeaders.IF_MODIFIED_SINCE, validators.lastModified());
+      }
+    }
+    return headers;
+  }
+
+  /**
+   * Publishes the keys of a response, or only extends the cached keys if the response is 304 Not
+   * Modified.
+   *
+   * @return {@link FetchOutcome#RETRIEVED}, or {@link FetchOutcome#FAILED} if the response has no
+   *     body.
+   */
+  FetchOutcome publish(ResponseEntity<JSONWebKeySet> responseEntity, int currentTime) {
+    if (responseEntity.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+      // The cached keys are still current, only their fetch time and TTL are updated
+      int ttl = cachePolicy.getTtl(responseEntity.getHeaders());
+      keySnapshot.updateAndGet(snapshot -> snapshot.withFetchedAt(currentTime, ttl));
+      log.debug(String.format("Realm public keys not modified %s", realmUrl));
+      CacheValidators validators = cacheValidators;
+      if (snapshotFile != null && validators != null) {
+        saveSnapshot(validators.keySet(), currentTime);
+      }
+      return FetchOutcome.RETRIEVED;
+    }
+
+    JSONWebKeySet jwks = responseEntity.getBody();
+
+    if (jwks == null) {
+      log.debug(String.format("Realm public keys not found  %s", realmUrl));
+      return FetchOutcome.FAILED;
+    }
+
+    Map<String, PublicKey> publicKeys = JWKSUtils.getPublicKeysForUse(jwks, JWK.Use.SIG);
+
+    if (log.isDebugEnabled()) {
+      log.debug(
+          String.format(
+              "Realm public keys successfully retrieved for client %s. New kids: %s",
+              keycloakProperties.getClientId(), publicKeys.keySet()));
+    }
+
+    int ttl = cachePolicy.getTtl(responseEntity.getHeaders());
+    // Publish keys, fetch time and TTL at once, retiring the keys that are no longer published
+    KeySnapshot previous =
+        keySnapshot.getAndUpdate(
+            snapshot -> snapshot.rotate(publicKeys, currentTime, ttl, retiredKeyGracePeriod));
+    metrics.recordKeyCount(publicKeys.size());
+    cacheValidators = CacheValidators.of(responseEntity.getHeaders(), jwks);
+
+    if (!previous.keys().equals(publicKeys)) {
+      unknownKeyIds.clear();
+      KeySnapshot current = keySnapshot.get();
+      keyUses
+          .keySet()
+          .removeIf(
+              kid -> !current.keys().containsKey(kid) && !current.retiredKeys().containsKey(kid));
+      keysChangeListeners.forEach(Runnable::run);
+    }
+
+    if (snapshotFile != null) {
+      saveSnapshot(jwks, currentTime);
+    }
+
+    return FetchOutcome.RETRIEVED;
+  }
+
+  /** Keeps using the current keys for another TTL if Keycloak can't be reached. */
+  void extendAfterFailure(int currentTime) {
+    keySnapshot.updateAndGet(snapshot -> snapshot.withFetchedAt(currentTime));
+  }
+
+  /**
+   * Returns how long to wait before retrying a fetch. Only I/O and server errors are retried, with
+   * an exponential backoff.
+   *
+   * @param outcome The outcome of the last attempt.
+   * @param attempt The number of the last attempt, starting at 0.
+   * @return The backoff, or null if the fetch is not retried.
+   */
+  Duration getRetryBackoff(FetchOutcome outcome, int attempt) {
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    if (outcome != FetchOutcome.UNAVAILABLE || attempt >= jwks.getMaxRetries()) {
+      return null;
+    }
+    long backoff = jwks.getRetryBackoff().toMillis() << Math.min(attempt, 10);
+    log.debug(String.format("Retrying request to retrieve realm keys in %d ms", backoff));
+    return Duration.ofMillis(backoff);
+  }
+
+  FetchResult newFetchResult(long requestTime, FetchOutcome outcome) {
+    return new FetchResult(keySnapshot.get(), requestTime, outcome);
+  }
+
+  /**
+   * Sets how a refresh is started in the background when expired keys are served. The refresh must
+   * call {@link #backgroundRefreshCompleted()} once it completed.
+   *
+   * @param backgroundRefresh The refresh to start, or null to no longer serve expired keys.
+   */
+  void setBackgroundRefresh(Runnable backgroundRefresh) {
+    this.backgroundRefresh = backgroundRefresh;
+  }
+
+  boolean isBackgroundRefreshEnabled() {
+    return backgroundRefresh != null;
+  }
+
+  void backgroundRefreshCompleted() {
+    refreshInProgress.set(false);
+  }
+
+  /**
+   * Loads the keys saved in the snapshot file, if no keys have been fetched yet, and starts a
+   * background refresh right away when background refresh is enabled.
+   *
+   * @return true if keys were loaded from the snapshot file.
+   */
+  boolean loadSnapshot(int currentTime) {
+    if (snapshotFile == null) {
+      return false;
+    }
+
+    JwksSnapshotFile.StoredKeySet storedKeySet = snapshotFile.read(currentTime);
+    if (storedKeySet == null) {
+      return false;
+    }
+
+    Map<String, PublicKey> publicKeys =
+        JWKSUtils.getPublicKeysForUse(storedKeySet.jwks(), JWK.Use.SIG);
+    int fetchedAt = Math.min(storedKeySet.fetchedAt(), currentTime);
+    if (publicKeys.isEmpty()
+        || !keySnapshot.compareAndSet(
+            KeySnapshot.EMPTY,
+            new KeySnapshot(publicKeys, fetchedAt, cachePolicy.getDefaultTtl()))) {
+      return false;
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug(
+          String.format(
+              "Realm public keys loaded from snapshot for client %s. Kids: %s",
+              keycloakProperties.getClientId(), publicKeys.keySet()));
+    }
+    metrics.recordKeyCount(publicKeys.size());
+
+    refreshInBackground();
+    return true;
+  }
+
+  private void refreshInBackground() {
+    Runnable refresh = backgroundRefresh;
+    if (refresh == null || !refreshInProgress.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      refresh.run();
+    } catch (RuntimeException e) {
+      refreshInProgress.set(false);
+      log.debug("Background refresh of realm keys rejected", e);
+    }
+  }
+
+  private void saveSnapshot(JSONWebKeySet jwks, int currentTime) {
+    try {
+      snapshotFile.write(jwks, currentTime);
+    } catch (IOException e) {
+      log.warn("Error when saving realm keys snapshot", e);
+    }
+  }
+
+  /**
+   * The keys published after a fetch, shared by all the lookups that joined it.
+   *
+   * @param snapshot The key snapshot published once the fetch completed.
+   * @param requestTime The {@link System#nanoTime()} at which the fetch started.
+   * @param outcome Whether the keys were retrieved, or why not.
+   */
+  record FetchResult(KeySnapshot snapshot, long requestTime, FetchOutcome outcome) {
+
+    boolean retrieved() {
+      return outcome == FetchOutcome.RETRIEVED;
+    }
+
+    // A fetch started before a lookup may have missed keys published in the meantime
+    boolean isRequestedBefore(long lookupTime) {
+      return requestTime - lookupTime < 0;
+    }
+  }
+
+  /** Outcome of a fetch of the keys. */
+  enum FetchOutcome {
+    /** The keys were retrieved, or found unmodified. */
+    RETRIEVED,
+    /** No request was sent, because the refetch throttle was exhausted. */
+    THROTTLED,
+    /** The server could not be reached or answered with a server error, worth retrying. */
+    UNAVAILABLE,
+    /** The request failed otherwise. */
+    FAILED
+  }
+
+  /**
+   * Validators of the last key set retrieved, sent with the next request so that the server can
+   * answer 304 Not Modified instead of sending and having to parse the same key set again.
+   *
+   * @param etag The ETag of the response, or null.
+   * @param lastModified The Last-Modified header of the response, or null.
+   * @param keySet The key set of the response, saved again to the snapshot file when unmodified.
+   */
+  private record CacheValidators(String etag, String lastModified, JSONWebKeySet keySet) {
+
+    private static CacheValidators of(HttpHeaders headers, JSONWebKeySet keySet) {
+      String etag = headers.getETag();
+      String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+      if (etag == null && lastModified == null) {
+        return null;
+      }
+      return new CacheValidators(etag, lastModified, keySet);
+    }
+  }
+}
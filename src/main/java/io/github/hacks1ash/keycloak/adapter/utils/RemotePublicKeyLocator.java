@@ -1,38 +1,79 @@
 package io.github.hacks1ash.keycloak.adapter.utils;
 
 import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.utils.RemoteKeySetCache.FetchOutcome;
+import io.github.hacks1ash.keycloak.adapter.utils.RemoteKeySetCache.FetchResult;
 import java.security.PublicKey;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import org.keycloak.common.util.Time;
-import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.jose.jwk.JSONWebKeySet;
-import org.keycloak.jose.jwk.JWK;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 /**
  * Locator class for retrieving remote public keys from a Keycloak server. This class is responsible
  * for fetching and caching the public keys used to verify JWT tokens.
+ *
+ * <p>When background refresh is enabled, the keys are reloaded periodically ahead of their expiry
+ * and expired keys are still served for {@code keycloak.jwks.max-stale} while a refresh is running,
+ * so request threads never block on a routine refresh.
+ *
+ * <p>The keys, their fetch time and their TTL are published together as one immutable {@link
+ * KeySnapshot}, so a lookup is a single volatile read and never sees a half-updated key set.
+ * Concurrent fetches are coalesced into a single in-flight request without holding any monitor,
+ * which keeps the locator safe to use from virtual threads.
+ *
+ * <p>Key IDs missing from freshly fetched keys are remembered in an {@link UnknownKeyIdCache} and
+ * rejected without any coordination until they expire, and the fetches triggered by unknown key IDs
+ * are limited by a {@link TokenBucket}. Tokens with random key IDs therefore cannot make the
+ * locator fetch the keys over and over.
+ *
+ * <p>Fetched keys stay fresh for the {@code Cache-Control} max-age of the response, within the
+ * bounds configured in {@link KeycloakProperties.Jwks}, see {@link JwksCachePolicy}.
+ *
+ * <p>Refreshes and resets are retried on I/O and server errors with an exponential backoff, slept
+ * between two fetches rather than during one. A fetch triggered by a lookup is sent only once, so a
+ * request thread waits for at most one request and never for a backoff. Fetches are conditional
+ * once the server has sent an {@code ETag} or {@code Last-Modified} header, so a routine refresh of
+ * unchanged keys is answered with 304 Not Modified and nothing is parsed.
+ *
+ * <p>Keys removed from the realm are kept as retired keys for {@code
+ * keycloak.jwks.retired-key-grace-period}, so tokens signed with a rotated key stay valid without
+ * any extra fetch. Tokens without a key ID are verified against the keys matching their algorithm,
+ * most recently successful first, see {@link #getCandidateKeys(String)}.
+ *
+ * <p>When a {@link JwksSnapshotFile} is set, every retrieved key set is also saved locally and can
+ * be loaded on the next start, before the Keycloak server is reachable.
+ *
+ * <p>The cached keys and the policies above are shared with {@link ReactiveRemotePublicKeyLocator}
+ * through {@code RemoteKeySetCache}; this locator only sends the requests and waits for them.
  */
 public class RemotePublicKeyLocator {
 
   private static final Logger log = LoggerFactory.getLogger(RemotePublicKeyLocator.class);
 
-  private static final int PUBLIC_KEY_CACHE_TTL = 86400; // 1 Day
-  private static final int MIN_TIME_BETWEEN_REQUESTS = 10; // 10 Seconds
-
   private final KeycloakProperties keycloakProperties;
 
-  private final RestTemplate restTemplate;
+  private final RestClient restClient;
+
+  private final RemoteKeySetCache keySet;
 
-  private final Map<String, PublicKey> currentKeys = new ConcurrentHashMap<>();
+  private final AtomicReference<CompletableFuture<FetchResult>> inFlightRequest =
+      new AtomicReference<>();
 
-  private volatile int lastRequestTime = 0;
+  private volatile JwksRefreshScheduler.ScheduledTask scheduledRefresh;
 
   /**
    * Constructs a new instance of RemotePublicKeyLocator.
@@ -41,65 +82,291 @@ public class RemotePublicKeyLocator {
    * @param restTemplate RestTemplate for HTTP requests.
    */
   public RemotePublicKeyLocator(KeycloakProperties keycloakProperties, RestTemplate restTemplate) {
+    this(keycloakProperties, RestClient.create(restTemplate));
+  }
+
+  /**
+   * Constructs a new instance of RemotePublicKeyLocator.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param restClient RestClient for HTTP requests.
+   */
+  public RemotePublicKeyLocator(KeycloakProperties keycloakProperties, RestClient restClient) {
+    this(
+        keycloakProperties,
+        restClient,
+        KeycloakUrlHelper.getRealmUrl(
+            keycloakProperties.getServerUrl(), keycloakProperties.getRealm()));
+  }
+
+  /**
+   * Constructs a new instance of RemotePublicKeyLocator for the given realm instead of the one
+   * configured in the Keycloak properties.
+   *
+   * @param keycloakProperties Configuration properties for Keycloak.
+   * @param restClient RestClient for HTTP requests.
+   * @param realmUrl The URL of the realm whose keys are located, i.e. the token issuer.
+   */
+  public RemotePublicKeyLocator(
+      KeycloakProperties keycloakProperties, RestClient restClient, String realmUrl) {
     this.keycloakProperties = keycloakProperties;
-    this.restTemplate = restTemplate;
+    this.restClient = restClient;
+    this.keySet = new RemoteKeySetCache(keycloakProperties, realmUrl, log);
   }
 
   /**
    * Retrieves the public key for a given key ID (KID). If the key is not available in the cache, it
    * triggers a request to the Keycloak server to fetch the latest public keys and updates the
-   * cache.
+   * cache, unless the key ID was missing from the keys fetched recently. A lookup joining a fetch
+   * that was sent before the lookup started fetches again if the key is still missing, since the
+   * key may have been published in the meantime.
    *
    * @param kid Key ID for which the public key is required.
    * @return PublicKey associated with the given KID, or null if not found.
    */
   public PublicKey getPublicKey(String kid) {
     int currentTime = Time.currentTime();
+    long lookupTime = System.nanoTime();
 
-    // Check if key is in cache.
-    PublicKey publicKey = lookupCachedKey(PUBLIC_KEY_CACHE_TTL, currentTime, kid);
+    PublicKey publicKey = keySet.getCachedKey(kid, currentTime);
     if (publicKey != null) {
       return publicKey;
     }
+    if (keySet.rejectLookup(kid, currentTime)) {
+      return null;
+    }
 
-    // Check if we are allowed to send request
-    synchronized (this) {
-      currentTime = Time.currentTime();
-      if (currentTime > lastRequestTime + MIN_TIME_BETWEEN_REQUESTS) {
-        sendRequest();
-        lastRequestTime = currentTime;
-      } else {
-        log.debug(
-            String.format(
-                "Won't send request to realm jwks url. Last request time was %d. Current time is %d.",
-                lastRequestTime, currentTime));
-      }
+    // Send request if we are allowed to, or wait for the one already in flight
+    FetchResult fetched = fetchKeys(true, true).join();
+    publicKey = fetched.snapshot().getKey(kid, Time.currentTime(), 0);
+    if (publicKey == null && fetched.isRequestedBefore(lookupTime)) {
+      // The request in flight was sent before this lookup, possibly before the key was published
+      fetched = fetchKeys(true, true).join();
+      publicKey = fetched.snapshot().getKey(kid, Time.currentTime(), 0);
+    }
+    if (publicKey == null && fetched.retrieved() && !fetched.isRequestedBefore(lookupTime)) {
+      keySet.addUnknownKeyId(kid, currentTime);
+    }
+    return publicKey;
+  }
 
-      return lookupCachedKey(PUBLIC_KEY_CACHE_TTL, currentTime, kid);
+  /**
+   * Retrieves the keys that may have signed a token without key ID, i.e. the published and retired
+   * keys matching the algorithm of the token, ordered by their most recent successful use. The keys
+   * are only fetched when none have been fetched yet or they expired, never because no key matched.
+   *
+   * @param algorithm The JWS algorithm of the token (e.g. 'RS256').
+   * @return The candidate keys indexed by key ID (KID), possibly empty.
+   * @see #recordKeyUse(String)
+   */
+  public List<Map.Entry<String, PublicKey>> getCandidateKeys(String algorithm) {
+    List<Map.Entry<String, PublicKey>> candidates =
+        keySet.getCachedCandidateKeys(algorithm, Time.currentTime());
+    if (candidates != null) {
+      return candidates;
     }
+    KeySnapshot snapshot = fetchKeys(true, true).join().snapshot();
+    return keySet.getCandidateKeys(snapshot, algorithm, Time.currentTime(), 0);
+  }
+
+  /**
+   * Records that a token without key ID was verified with the given key, so that the key is tried
+   * first for the next such token.
+   *
+   * @param kid The key ID (KID) of the key that verified the token.
+   */
+  public void recordKeyUse(String kid) {
+    keySet.recordKeyUse(kid);
   }
 
   /**
    * Resets the cached keys by fetching the latest set from the Keycloak server. This method is
-   * useful when there's a need to manually refresh the public keys cache.
+   * useful when there's a need to manually refresh the public keys cache. I/O and server errors are
+   * retried with an exponential backoff.
    */
   public void reset() {
-    synchronized (this) {
-      sendRequest();
-      lastRequestTime = Time.currentTime();
-      log.debug(String.format("Reset time offset to %d.", lastRequestTime));
+    fetchKeysWithRetries(true);
+    log.debug(String.format("Reset time offset to %d.", keySet.getLastRequestTime()));
+  }
+
+  /**
+   * Fetches the latest public keys from the Keycloak server. Unlike {@link #reset()}, the cache
+   * expiry is only extended when the keys were retrieved successfully, so a failed refresh leaves
+   * the current keys in their stale window. I/O and server errors are retried with an exponential
+   * backoff.
+   */
+  public void refresh() {
+    fetchKeysWithRetries(false);
+  }
+
+  /**
+   * Returns the currently published snapshot of the public keys.
+   *
+   * @return The current key snapshot.
+   */
+  public KeySnapshot getKeySnapshot() {
+    return keySet.getKeySnapshot();
+  }
+
+  /**
+   * Enables the periodic background refresh of the public keys on the given scheduler, using the
+   * interval and jitter from {@link KeycloakProperties.Jwks}. Once enabled, expired keys are served
+   * for up to {@code max-stale} while a refresh runs on the scheduler.
+   *
+   * @param refreshScheduler The scheduler running the background refreshes.
+   */
+  public void enableBackgroundRefresh(JwksRefreshScheduler refreshScheduler) {
+    keySet.setBackgroundRefresh(
+        () ->
+            refreshScheduler.execute(
+                () -> {
+                  try {
+                    refresh();
+                  } finally {
+                    keySet.backgroundRefreshCompleted();
+                  }
+                }));
+    this.scheduledRefresh =
+        refreshScheduler.schedule(
+            this::refresh,
+            keycloakProperties.getJwks().getRefreshInterval(),
+            keycloakProperties.getJwks().getRefreshJitter());
+  }
+
+  /**
+   * Stops the periodic background refresh of the public keys, e.g. before the locator is discarded.
+   * Expired keys are no longer served once the background refresh is disabled.
+   */
+  public void disableBackgroundRefresh() {
+    JwksRefreshScheduler.ScheduledTask scheduledTask = this.scheduledRefresh;
+    keySet.setBackgroundRefresh(null);
+    this.scheduledRefresh = null;
+    if (scheduledTask != null) {
+      scheduledTask.cancel();
     }
   }
 
-  private PublicKey lookupCachedKey(int publicKeyCacheTtl, int currentTime, String kid) {
-    if (lastRequestTime + publicKeyCacheTtl > currentTime && kid != null) {
-      return currentKeys.get(kid);
-    } else {
-      return null;
+  /**
+   * Returns the number of lookups rejected without fetching the keys, because the key ID was
+   * missing or recently found to be unknown.
+   *
+   * @return The rejected lookup count.
+   */
+  public long getRejectedLookupCount() {
+    return keySet.getRejectedLookupCount();
+  }
+
+  /**
+   * Returns the number of key fetches skipped because the refetch throttle was exhausted.
+   *
+   * @return The throttled fetch count.
+   */
+  public long getThrottledFetchCount() {
+    return keySet.getThrottledFetchCount();
+  }
+
+  /**
+   * Sets the metrics recording key cache lookups and key fetches.
+   *
+   * @param metrics The metrics to record to.
+   */
+  public void setMetrics(KeycloakMetrics metrics) {
+    keySet.setMetrics(metrics);
+  }
+
+  /**
+   * Sets the local file in which every successfully retrieved key set is saved.
+   *
+   * @param snapshotFile The snapshot file, or null to disable the snapshot.
+   * @see #loadSnapshot()
+   */
+  public void setSnapshotFile(JwksSnapshotFile snapshotFile) {
+    keySet.setSnapshotFile(snapshotFile);
+  }
+
+  /**
+   * Loads the keys saved in the snapshot file, so tokens can be verified without waiting for the
+   * Keycloak server. The loaded keys are only published if no keys have been fetched yet, and a
+   * background refresh is triggered right away when background refresh is enabled. The keys keep
+   * the time they were retrieved at, so they expire as if they had never been saved.
+   *
+   * @return true if keys were loaded from the snapshot file.
+   */
+  public boolean loadSnapshot() {
+    return keySet.loadSnapshot(Time.currentTime());
+  }
+
+  /**
+   * Registers a listener that is invoked whenever a fetch returns a key set that differs from the
+   * cached one, i.e. when the realm keys have been rotated.
+   *
+   * @param listener The listener to invoke after the keys changed.
+   */
+  public void addKeysChangeListener(Runnable listener) {
+    keySet.addKeysChangeListener(listener);
+  }
+
+  /**
+   * Fetches the keys on the calling thread, or joins the fetch already in flight. Waiting threads
+   * park on a future instead of a monitor, so virtual threads never pin their carrier thread while
+   * the Keycloak server is slow to answer.
+   */
+  private CompletableFuture<FetchResult> fetchKeys(boolean throttled, boolean extendOnFailure) {
+    CompletableFuture<FetchResult> request = new CompletableFuture<>();
+    CompletableFuture<FetchResult> inFlight = inFlightRequest.compareAndExchange(null, request);
+    if (inFlight != null) {
+      return inFlight;
+    }
+
+    long requestTime = System.nanoTime();
+    FetchOutcome outcome = FetchOutcome.FAILED;
+    try {
+      int currentTime = Time.currentTime();
+      if (!keySet.acquireFetch(throttled, currentTime)) {
+        outcome = FetchOutcome.THROTTLED;
+      } else {
+        outcome = sendRequest(currentTime);
+        if (outcome != FetchOutcome.RETRIEVED && extendOnFailure) {
+          keySet.extendAfterFailure(currentTime);
+        }
+      }
+    } finally {
+      inFlightRequest.set(null);
+      request.complete(keySet.newFetchResult(requestTime, outcome));
+    }
+    return request;
+  }
+
+  /**
+   * Fetches the keys, retrying I/O and server errors with an exponential backoff. The backoff is
+   * slept after the failed fetch has completed, so lookups joining the fetch in flight never wait
+   * for it.
+   */
+  private void fetchKeysWithRetries(boolean extendOnFailure) {
+    for (int attempt = 0; ; attempt++) {
+      FetchOutcome outcome = fetchKeys(false, extendOnFailure).join().outcome();
+      Duration backoff = keySet.getRetryBackoff(outcome, attempt);
+      if (backoff == null) {
+        return;
+      }
+      try {
+        Thread.sleep(backoff.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
     }
   }
 
-  private void sendRequest() {
+  private FetchOutcome sendRequest(int currentTime) {
+    KeycloakMetrics metrics = keySet.getMetrics();
+    long startTime = metrics.startTimer();
+    FetchOutcome outcome = requestKeys(currentTime);
+    metrics.recordJwksFetch(startTime, outcome == FetchOutcome.RETRIEVED);
+    return outcome;
+  }
+
+  private FetchOutcome requestKeys(int currentTime) {
     if (log.isTraceEnabled()) {
       log.trace(
           String.format(
@@ -108,37 +375,26 @@ public class RemotePublicKeyLocator {
     }
 
     try {
-      ResponseEntity<JSONWebKeySet> responseEntity =
-          restTemplate.getForEntity(
-              KeycloakUrlHelper.getCertificateUrl(
-                  keycloakProperties.getServerUrl(), keycloakProperties.getRealm()),
-              JSONWebKeySet.class);
-      JSONWebKeySet jwks = responseEntity.getBody();
-
-      if (jwks == null) {
-        log.debug(String.format("Realm public keys not found  %s", keycloakProperties.getRealm()));
-        return;
-      }
-
-      Map<String, PublicKey> publicKeys =
-          JWKSUtils.getKeyWrappersForUse(jwks, JWK.Use.SIG).getKeys().stream()
-              .collect(
-                  Collectors.toMap(
-                      KeyWrapper::getKid, keyWrapper -> (PublicKey) keyWrapper.getPublicKey()));
-
-      if (log.isDebugEnabled()) {
-        log.debug(
-            String.format(
-                "Realm public keys successfully retrieved for client %s. New kids: %s",
-                keycloakProperties.getClientId(), publicKeys.keySet()));
-      }
-
-      // Update current keys
-      currentKeys.clear();
-      currentKeys.putAll(publicKeys);
-
+      return keySet.publish(exchange(), currentTime);
+    } catch (ResourceAccessException | HttpServerErrorException e) {
+      log.error("Error when sending request to retrieve realm keys", e);
+      return FetchOutcome.UNAVAILABLE;
     } catch (RestClientException e) {
       log.error("Error when sending request to retrieve realm keys", e);
+      return FetchOutcome.FAILED;
     }
   }
+
+  /**
+   * Requests the keys, conditionally if the previous response had an ETag or Last-Modified header.
+   */
+  private ResponseEntity<JSONWebKeySet> exchange() {
+    HttpHeaders headers = keySet.getConditionalHeaders();
+    return restClient
+        .get()
+        .uri(KeycloakUrlHelper.getCertificateUrl(keySet.getRealmUrl()))
+        .headers(requestHeaders -> requestHeaders.addAll(headers))
+        .retrieve()
+        .toEntity(JSONWebKeySet.class);
+  }
 }
@@ -0,0 +1,34 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Utility class creating the {@link RestTemplate} instances used to call the Keycloak server. They
+ * are backed by the JDK HTTP client, which keeps idle connections alive and reuses them across
+ * requests, and never wait longer than the given timeouts. The JDK client has no configurable
+ * connection pool: to bound the number of connections, provide a client backed by a pooling HTTP
+ * library instead.
+ */
+public class RestTemplateHelper {
+
+  private RestTemplateHelper() {
+    throw new IllegalStateException("RestTemplateHelper class");
+  }
+
+  /**
+   * Creates a RestTemplate backed by the JDK HTTP client, with the given timeouts.
+   *
+   * @param connectTimeout Timeout for establishing a connection.
+   * @param readTimeout Timeout for receiving the response once the request has been sent.
+   * @return A new RestTemplate.
+   */
+  public static RestTemplate create(Duration connectTimeout, Duration readTimeout) {
+    HttpClient httpClient = HttpClient.newBuilder().connectTimeout(connectTimeout).build();
+    JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+    requestFactory.setReadTimeout(readTimeout);
+    return new RestTemplate(requestFactory);
+  }
+}
@@ -0,0 +1,141 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.keycloak.common.util.Time;
+
+/**
+ * In-memory index of revoked tokens, fed by the admin callbacks of Keycloak. A token is revoked
+ * when it was issued before the realm-wide not-before time, or belongs to a revoked session.
+ *
+ * <p>{@link #isRevoked(String, long)} is called for every request, so it is a volatile read while
+ * nothing is revoked, and a single hash lookup without allocation otherwise. Revoked sessions are
+ * only kept for the configured retention, which must cover the lifespan of the access tokens, as
+ * tokens issued before the revocation have expired after that.
+ */
+public class RevocationIndex {
+
+  private static final int MIN_PURGE_SIZE = 1024;
+
+  private final int retention;
+
+  /** Expiry of the entry by revoked session ID. */
+  private final Map<String, Integer> revokedSessions = new ConcurrentHashMap<>();
+
+  /** Size of the index above which expired entries are purged on the next revocation. */
+  private final AtomicInteger purgeSize = new AtomicInteger(MIN_PURGE_SIZE);
+
+  private final LongAdder revokedCount = new LongAdder();
+
+  private volatile int notBefore;
+
+  /** Whether any session has ever been revoked, to skip the lookup otherwise. */
+  private volatile boolean indexed;
+
+  /**
+   * Constructs a new instance of RevocationIndex.
+   *
+   * @param retention How long revoked sessions are remembered, at least the lifespan of the access
+   *     tokens.
+   */
+  public RevocationIndex(Duration retention) {
+    if (retention.toSeconds() <= 0) {
+      throw new IllegalArgumentException("retention must be greater than 0");
+    }
+    this.retention = (int) retention.toSeconds();
+  }
+
+  /**
+   * Checks whether a token is revoked.
+   *
+   * @param sessionId The session ID ({@code sid}) of the token, or null.
+   * @param issuedAt The issue time ({@code iat}) of the token in seconds.
+   * @return true if the token must be rejected.
+   */
+  public boolean isRevoked(String sessionId, long issuedAt) {
+    if (issuedAt < this.notBefore) {
+      revokedCount.increment();
+      return true;
+    }
+    if (!this.indexed) {
+      return false;
+    }
+    boolean revoked = sessionId != null && revokedSessions.containsKey(sessionId);
+    if (revoked) {
+      revokedCount.increment();
+    }
+    return revoked;
+  }
+
+  /**
+   * Rejects every token issued before the given time. Older times than the current not-before time
+   * are ignored.
+   *
+   * @param notBefore The not-before time in seconds.
+   */
+  public synchronized void setNotBefore(int notBefore) {
+    if (notBefore > this.notBefore) {
+      this.notBefore = notBefore;
+    }
+  }
+
+  /**
+   * Returns the realm-wide not-before time.
+   *
+   * @return The not-before time in seconds, or 0 if not set.
+   */
+  public int getNotBefore() {
+    return this.notBefore;
+  }
+
+  /**
+   * Rejects every token of a session, e.g. after the user logged out.
+   *
+   * @param sessionId The session ID.
+   */
+  public void revokeSession(String sessionId) {
+    int currentTime = Time.currentTime();
+    purgeIfNeeded(currentTime);
+    revokedSessions.put(sessionId, currentTime + retention);
+    this.indexed = true;
+  }
+
+  /** Forgets all revocations, including the realm-wide not-before time. */
+  public synchronized void clear() {
+    revokedSessions.clear();
+    this.notBefore = 0;
+  }
+
+  /**
+   * Returns the number of revoked sessions currently remembered.
+   *
+   * @return The number of entries.
+   */
+  public int size() {
+    return revokedSessions.size();
+  }
+
+  /**
+   * Returns the number of tokens rejected as revoked.
+   *
+   * @return The revoked token count.
+   */
+  public long getRevokedCount() {
+    return revokedCount.sum();
+  }
+
+  private void purgeIfNeeded(int currentTime) {
+    int threshold = purgeSize.get();
+    if (size() < threshold || !purgeSize.compareAndSet(threshold, Integer.MAX_VALUE)) {
+      return;
+    }
+    try {
+      revokedSessions.values().removeIf(expiresAt -> expiresAt <= currentTime);
+    } finally {
+      purgeSize.set(Math.max(MIN_PURGE_SIZE, size() * 2));
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+/**
+ * The authorities of a token as bits of a {@link RoleUniverse}. A bit set only knows about the
+ * authorities of its own universe: for any other authority, {@link #isKnown(String)} returns false
+ * and the granted authorities must be checked instead.
+ */
+public final class RoleBitSet {
+
+  private final RoleUniverse universe;
+
+  private final long[] words;
+
+  RoleBitSet(RoleUniverse universe, long[] words) {
+    this.universe = universe;
+    this.words = words;
+  }
+
+  /**
+   * Returns the universe this bit set was built with.
+   *
+   * @return The universe.
+   */
+  public RoleUniverse getUniverse() {
+    return this.universe;
+  }
+
+  /**
+   * Checks whether an authority is part of the universe of this bit set, i.e. whether {@link
+   * #contains(String)} is conclusive for it.
+   *
+   * @param authority The authority, e.g. {@code ROLE_admin}.
+   * @return true if the authority is known.
+   */
+  public boolean isKnown(String authority) {
+    return this.universe.indexOf(authority) >= 0;
+  }
+
+  /**
+   * Checks whether the token has a known authority.
+   *
+   * @param authority The authority, e.g. {@code ROLE_admin}.
+   * @return true if the authority is known and granted, false otherwise.
+   */
+  public boolean contains(String authority) {
+    int index = this.universe.indexOf(authority);
+    return index >= 0 && get(index);
+  }
+
+  /**
+   * Returns the bit at the given position.
+   *
+   * @param index The bit position of an authority of the universe.
+   * @return true if the authority is granted.
+   */
+  public boolean get(int index) {
+    return (this.words[index >>> 6] & 1L << index) != 0;
+  }
+
+  /**
+   * Checks whether the token has any of the authorities of a mask built by {@link
+   * RoleUniverse#toMask} of the same universe.
+   *
+   * @param mask The mask.
+   * @return true if any authority of the mask is granted.
+   */
+  public boolean intersects(long[] mask) {
+    for (int i = 0; i < this.words.length; i++) {
+      if ((this.words[i] & mask[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,112 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * An immutable set of known authorities, each mapped to a bit position, so that the authorities of
+ * a token can be held in a {@link RoleBitSet} and checked with bit operations instead of string
+ * comparisons.
+ *
+ * <p>A universe is never modified. Adding roles creates a new universe, and every {@link
+ * RoleBitSet} keeps a reference to the universe it was built with, so a bit set always answers for
+ * the authorities it knows about, whichever universe is current.
+ */
+public class RoleUniverse {
+
+  private final List<String> authorities;
+
+  private final Map<String, Integer> indexes;
+
+  private final RoleBitSet emptyBitSet;
+
+  /**
+   * Constructs a RoleUniverse of the given authorities, in order, ignoring duplicates.
+   *
+   * @param authorities The known authorities, e.g. {@code ROLE_admin}.
+   */
+  public RoleUniverse(Collection<String> authorities) {
+    this.authorities = List.copyOf(new LinkedHashSet<>(authorities));
+    this.indexes = new HashMap<>(this.authorities.size() * 2);
+    for (int i = 0; i < this.authorities.size(); i++) {
+      this.indexes.put(this.authorities.get(i), i);
+    }
+    this.emptyBitSet = new RoleBitSet(this, new long[wordCount()]);
+  }
+
+  /**
+   * Returns the bit position of an authority.
+   *
+   * @param authority The authority, e.g. {@code ROLE_admin}.
+   * @return The bit position, or -1 if the authority is not part of this universe.
+   */
+  public int indexOf(String authority) {
+    Integer index = this.indexes.get(authority);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Returns the known authorities, in the order of their bit positions.
+   *
+   * @return The known authorities.
+   */
+  public List<String> getAuthorities() {
+    return this.authorities;
+  }
+
+  /**
+   * Returns the number of known authorities.
+   *
+   * @return The number of known authorities.
+   */
+  public int size() {
+    return this.authorities.size();
+  }
+
+  /**
+   * Builds the bit set of the given granted authorities. Authorities that are not part of this
+   * universe are left out.
+   *
+   * @param grantedAuthorities The granted authorities of a token.
+   * @return The bit set of the known authorities among them.
+   */
+  public RoleBitSet toBitSet(Collection<? extends GrantedAuthority> grantedAuthorities) {
+    if (grantedAuthorities.isEmpty()) {
+      return this.emptyBitSet;
+    }
+    long[] words = new long[wordCount()];
+    for (GrantedAuthority grantedAuthority : grantedAuthorities) {
+      int index = indexOf(grantedAuthority.getAuthority());
+      if (index >= 0) {
+        words[index >>> 6] |= 1L << index;
+      }
+    }
+    return new RoleBitSet(this, words);
+  }
+
+  /**
+   * Builds a mask of the given authorities, to be tested with {@link
+   * RoleBitSet#intersects(long[])}. Authorities that are not part of this universe are left out.
+   *
+   * @param authorities The authorities, e.g. {@code ROLE_admin}.
+   * @return The mask.
+   */
+  public long[] toMask(Collection<String> authorities) {
+    long[] mask = new long[wordCount()];
+    for (String authority : authorities) {
+      int index = indexOf(authority);
+      if (index >= 0) {
+        mask[index >>> 6] |= 1L << index;
+      }
+    }
+    return mask;
+  }
+
+  private int wordCount() {
+    return (this.authorities.size() + 63) >>> 6;
+  }
+}
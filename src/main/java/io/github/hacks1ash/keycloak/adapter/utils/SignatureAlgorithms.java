@@ -0,0 +1,86 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+
+/**
+ * Utility class mapping JWS signature algorithms to JCA {@link Signature} instances. ECDSA
+ * signatures use the IEEE P1363 format, which is the concatenated R and S encoding used by JWS, so
+ * no conversion from or to DER is necessary.
+ */
+public class SignatureAlgorithms {
+
+  private SignatureAlgorithms() {
+    throw new IllegalStateException("SignatureAlgorithms class");
+  }
+
+  /**
+   * Creates a new, uninitialized {@link Signature} for a JWS algorithm of the RS, PS or ES family.
+   *
+   * @param algorithm The JWS algorithm name (e.g. 'RS256').
+   * @return A Signature instance for the given algorithm.
+   * @throws NoSuchAlgorithmException if the algorithm is not supported.
+   * @throws InvalidAlgorithmParameterException if the PSS parameters are not supported.
+   */
+  public static Signature getSignature(String algorithm)
+      throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+    if (algorithm == null) {
+      throw new NoSuchAlgorithmException("Missing signature algorithm");
+    }
+    return switch (algorithm) {
+      case "RS256" -> Signature.getInstance("SHA256withRSA");
+      case "RS384" -> Signature.getInstance("SHA384withRSA");
+      case "RS512" -> Signature.getInstance("SHA512withRSA");
+      case "PS256" -> getPssSignature("SHA-256", MGF1ParameterSpec.SHA256, 32);
+      case "PS384" -> getPssSignature("SHA-384", MGF1ParameterSpec.SHA384, 48);
+      case "PS512" -> getPssSignature("SHA-512", MGF1ParameterSpec.SHA512, 64);
+      case "ES256" -> Signature.getInstance("SHA256withECDSAinP1363Format");
+      case "ES384" -> Signature.getInstance("SHA384withECDSAinP1363Format");
+      case "ES512" -> Signature.getInstance("SHA512withECDSAinP1363Format");
+      default -> throw new NoSuchAlgorithmException("Unsupported signature algorithm " + algorithm);
+    };
+  }
+
+  /**
+   * Checks whether a public key can verify signatures of a JWS algorithm of the RS, PS or ES
+   * family, i.e. is an RSA key for RS and PS algorithms, or an EC key on the curve of the ES
+   * algorithm.
+   *
+   * @param algorithm The JWS algorithm name (e.g. 'RS256').
+   * @param publicKey The public key.
+   * @return true if the key matches the algorithm.
+   */
+  public static boolean isCompatible(String algorithm, PublicKey publicKey) {
+    if (algorithm == null) {
+      return false;
+    }
+    return switch (algorithm) {
+      case "RS256", "RS384", "RS512", "PS256", "PS384", "PS512" ->
+          publicKey instanceof RSAPublicKey;
+      case "ES256" -> getFieldSize(publicKey) == 256;
+      case "ES384" -> getFieldSize(publicKey) == 384;
+      case "ES512" -> getFieldSize(publicKey) == 521;
+      default -> false;
+    };
+  }
+
+  private static int getFieldSize(PublicKey publicKey) {
+    return publicKey instanceof ECPublicKey ecPublicKey
+        ? ecPublicKey.getParams().getCurve().getField().getFieldSize()
+        : 0;
+  }
+
+  private static Signature getPssSignature(
+      String digest, MGF1ParameterSpec mgf1ParameterSpec, int saltLength)
+      throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+    Signature signature = Signature.getInstance("RSASSA-PSS");
+    signature.setParameter(new PSSParameterSpec(digest, "MGF1", mgf1ParameterSpec, saltLength, 1));
+    return signature;
+  }
+}
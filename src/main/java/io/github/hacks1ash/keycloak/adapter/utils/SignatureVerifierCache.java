@@ -0,0 +1,149 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.keycloak.common.VerificationException;
+
+/**
+ * Cache of JCA {@link Signature} instances already initialized for verification, pooled per key ID
+ * and algorithm. Looking up the provider and initializing a Signature with a public key costs more
+ * than verifying a small token with it, so the instances are reused across requests instead.
+ *
+ * <p>Pools are not thread-confined, so the cache stays bounded with virtual threads: each pool
+ * holds a few idle instances in an array of slots that are taken and returned with a single
+ * compare-and-set, without locking or allocation. A pool is only used for the exact public key
+ * instance and algorithm it was created for, so a rotated key never verifies with a stale instance,
+ * and {@link #invalidateAll()} drops the pools of keys that are no longer published.
+ */
+public class SignatureVerifierCache {
+
+  private static final int SLOT_COUNT =
+      Math.max(2, Math.min(64, Runtime.getRuntime().availableProcessors()));
+
+  // Pools are only created for keys of the realm, this only guards against unusual key sets
+  private static final int MAX_POOLS = 256;
+
+  private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+  /**
+   * Verifies a signature of the RS, PS or ES family.
+   *
+   * @param kid Key ID of the public key, or null.
+   * @param algorithm The JWS algorithm of the token (e.g. 'ES256').
+   * @param publicKey The public key used to verify the signature.
+   * @param data The signed data.
+   * @param signature The signature.
+   * @return true if the signature is valid.
+   * @throws VerificationException if the algorithm is not supported or the signature is malformed.
+   */
+  public boolean verify(
+      String kid, String algorithm, PublicKey publicKey, byte[] data, byte[] signature)
+      throws VerificationException {
+    try {
+      Pool pool = getPool(kid == null ? "" : kid, algorithm, publicKey);
+      Signature verifier = pool.take();
+      verifier.update(data);
+      boolean valid = verifier.verify(signature);
+      // verify() resets the instance to its state after initVerify, so it can be reused. An
+      // instance that threw is dropped instead.
+      pool.release(verifier);
+      return valid;
+    } catch (GeneralSecurityException e) {
+      throw new VerificationException("Signature verification failed", e);
+    }
+  }
+
+  /** Drops all pooled instances, e.g. after the realm keys have changed. */
+  public void invalidateAll() {
+    pools.clear();
+  }
+
+  /**
+   * Drops the pooled instances of one key, e.g. of a key that only signed synthetic tokens.
+   *
+   * @param kid The key ID (KID) of the key.
+   */
+  public void invalidate(String kid) {
+    pools.remove(kid);
+  }
+
+  /**
+   * Returns the number of pools, i.e. of key ID and algorithm pairs in use.
+   *
+   * @return The number of pools.
+   */
+  public int size() {
+    return pools.size();
+  }
+
+  private Pool getPool(String kid, String algorithm, PublicKey publicKey)
+      throws GeneralSecurityException {
+    Pool pool = pools.get(kid);
+    if (pool != null && pool.matches(algorithm, publicKey)) {
+      return pool;
+    }
+    // Fails for unsupported algorithms and mismatching keys before replacing the pool of the key
+    Signature signature = SignatureAlgorithms.getSignature(algorithm);
+    signature.initVerify(publicKey);
+
+    if (pools.size() >= MAX_POOLS) {
+      pools.clear();
+    }
+    Pool created = new Pool(algorithm, publicKey);
+    created.release(signature);
+    if (pool == null) {
+      Pool existing = pools.putIfAbsent(kid, created);
+      return existing != null && existing.matches(algorithm, publicKey) ? existing : created;
+    }
+    pools.replace(kid, pool, created);
+    return created;
+  }
+
+  /** Idle Signature instances initialized with one public key for one algorithm. */
+  private static final class Pool {
+
+    private final String algorithm;
+
+    private final PublicKey publicKey;
+
+    private final AtomicReferenceArray<Signature> slots = new AtomicReferenceArray<>(SLOT_COUNT);
+
+    private Pool(String algorithm, PublicKey publicKey) {
+      this.algorithm = algorithm;
+      this.publicKey = publicKey;
+    }
+
+    private boolean matches(String algorithm, PublicKey publicKey) {
+      return this.publicKey == publicKey && this.algorithm.equals(algorithm);
+    }
+
+    private Signature take() throws GeneralSecurityException {
+      int start = ThreadLocalRandom.current().nextInt(SLOT_COUNT);
+      for (int i = 0; i < SLOT_COUNT; i++) {
+        int index = (start + i) % SLOT_COUNT;
+        Signature signature = slots.get(index);
+        if (signature != null && slots.compareAndSet(index, signature, null)) {
+          return signature;
+        }
+      }
+      Signature signature = SignatureAlgorithms.getSignature(algorithm);
+      signature.initVerify(publicKey);
+      return signature;
+    }
+
+    private void release(Signature signature) {
+      int start = ThreadLocalRandom.current().nextInt(SLOT_COUNT);
+      for (int i = 0; i < SLOT_COUNT; i++) {
+        int index = (start + i) % SLOT_COUNT;
+        if (slots.get(index) == null && slots.compareAndSet(index, null, signature)) {
+          return;
+        }
+      }
+    }
+  }
+}
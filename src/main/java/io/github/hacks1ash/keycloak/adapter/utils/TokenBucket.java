@@ -0,0 +1,53 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket allowing bursts of up to {@code capacity} operations, refilled with one
+ * token per {@code refillInterval}. It is implemented as a generic cell rate algorithm, so the
+ * whole state is a single timestamp updated with compare-and-set.
+ */
+public class TokenBucket {
+
+  private final long refillIntervalNanos;
+
+  private final long burstToleranceNanos;
+
+  /** Time at which the bucket will be full again, in {@link System#nanoTime()} units. */
+  private final AtomicLong theoreticalArrivalTime;
+
+  /**
+   * Constructs a full TokenBucket.
+   *
+   * @param capacity Maximum number of operations allowed in a burst.
+   * @param refillInterval Time after which one more operation is allowed.
+   */
+  public TokenBucket(int capacity, Duration refillInterval) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be greater than 0");
+    }
+    this.refillIntervalNanos = refillInterval.toNanos();
+    this.burstToleranceNanos = (capacity - 1) * this.refillIntervalNanos;
+    this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Takes a token from the bucket if one is available.
+   *
+   * @return true if the operation is allowed, false if the bucket is empty.
+   */
+  public boolean tryAcquire() {
+    long now = System.nanoTime();
+    while (true) {
+      long current = theoreticalArrivalTime.get();
+      long arrivalTime = current - now > 0 ? current : now;
+      if (arrivalTime - now > burstToleranceNanos) {
+        return false;
+      }
+      if (theoreticalArrivalTime.compareAndSet(current, arrivalTime + refillIntervalNanos)) {
+        return true;
+      }
+    }
+  }
+}
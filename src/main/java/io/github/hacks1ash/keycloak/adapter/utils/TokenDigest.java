@@ -0,0 +1,62 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class computing the SHA-256 digest of raw tokens, used as cache keys so that tokens are
+ * never retained themselves. A {@link MessageDigest} is looked up once and cloned for every digest,
+ * since the provider lookup of {@link MessageDigest#getInstance(String)} costs more than hashing a
+ * token. Clones are not thread-confined, so this also holds up with virtual threads.
+ */
+public class TokenDigest {
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  private static final MessageDigest PROTOTYPE = newMessageDigest();
+
+  private static final boolean CLONEABLE = isCloneable();
+
+  private TokenDigest() {
+    throw new IllegalStateException("TokenDigest class");
+  }
+
+  /**
+   * Computes the SHA-256 digest of a raw token.
+   *
+   * @param token The raw token value.
+   * @return The digest, wrapped so that it can be used as a map key.
+   */
+  public static ByteBuffer sha256(String token) {
+    MessageDigest messageDigest = CLONEABLE ? cloneMessageDigest() : newMessageDigest();
+    return ByteBuffer.wrap(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  private static MessageDigest cloneMessageDigest() {
+    try {
+      return (MessageDigest) PROTOTYPE.clone();
+    } catch (CloneNotSupportedException e) {
+      return newMessageDigest();
+    }
+  }
+
+  private static MessageDigest newMessageDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+    }
+  }
+
+  // The SUN provider supports cloning, others may not
+  private static boolean isCloneable() {
+    try {
+      PROTOTYPE.clone();
+      return true;
+    } catch (CloneNotSupportedException e) {
+      return false;
+    }
+  }
+}
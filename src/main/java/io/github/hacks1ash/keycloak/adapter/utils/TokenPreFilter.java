@@ -0,0 +1,387 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics.FailureReason;
+import java.util.Arrays;
+import java.util.List;
+import org.keycloak.common.util.Time;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+/**
+ * A cheap structural check of bearer tokens, run before they are parsed. It sheds oversized and
+ * malformed tokens, tokens signed with an unsupported algorithm and expired tokens without
+ * deserializing the header or the payload: the segments are decoded lazily, byte by byte, by a
+ * minimal scanner that stops as soon as it has read the {@code alg}, {@code kid} and {@code exp}
+ * claims.
+ *
+ * <p>The filter only rejects tokens that the full verification would reject as well. Whenever the
+ * scanner meets something it does not handle, e.g. an escaped claim name or an {@code exp} that is
+ * not a plain integer, the token is passed on to the full verification. Rejected tokens are
+ * reported by a {@link Rejection}, whose exceptions have no stack trace and share their error.
+ */
+public class TokenPreFilter {
+
+  // Base64url alphabet of compact JWS, without padding
+  private static final byte[] BASE64_URL = new byte[128];
+
+  private static final int ALG = 'a' << 16 | 'l' << 8 | 'g';
+
+  private static final int KID = 'k' << 16 | 'i' << 8 | 'd';
+
+  private static final int EXP = 'e' << 16 | 'x' << 8 | 'p';
+
+  // Returned by the scanner when it cannot tell whether the token is valid
+  private static final int UNKNOWN = -2;
+
+  static {
+    Arrays.fill(BASE64_URL, (byte) -1);
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    for (int i = 0; i < alphabet.length(); i++) {
+      BASE64_URL[alphabet.charAt(i)] = (byte) i;
+    }
+  }
+
+  private final int maxTokenLength;
+
+  private final int maxHeaderLength;
+
+  private final int maxPayloadLength;
+
+  private final int maxSignatureLength;
+
+  /**
+   * Constructs a TokenPreFilter with the limits of {@code keycloak.pre-filter}.
+   *
+   * @param keycloakProperties Properties configuration for Keycloak.
+   */
+  public TokenPreFilter(KeycloakProperties keycloakProperties) {
+    KeycloakProperties.PreFilter preFilter = keycloakProperties.getPreFilter();
+    this.maxTokenLength = preFilter.getMaxTokenLength();
+    this.maxHeaderLength = preFilter.getMaxHeaderLength();
+    this.maxPayloadLength = preFilter.getMaxPayloadLength();
+    this.maxSignatureLength = preFilter.getMaxSignatureLength();
+  }
+
+  /**
+   * Checks the structure, the algorithm and the expiration time of a token.
+   *
+   * @param token The raw token value.
+   * @return The reason why the token is rejected, or null if it must be fully verified.
+   */
+  public Rejection check(String token) {
+    if (token == null) {
+      return Rejection.MALFORMED;
+    }
+    int length = token.length();
+    if (length > this.maxTokenLength) {
+      return Rejection.OVERSIZED;
+    }
+
+    int firstDot = -1;
+    int secondDot = -1;
+    for (int i = 0; i < length; i++) {
+      char c = token.charAt(i);
+      if (c == '.') {
+        if (firstDot < 0) {
+          firstDot = i;
+        } else if (secondDot < 0) {
+          secondDot = i;
+        } else {
+          return Rejection.MALFORMED;
+        }
+      } else if (c >= BASE64_URL.length || BASE64_URL[c] < 0) {
+        return Rejection.MALFORMED;
+      }
+    }
+    if (secondDot < 0) {
+      return Rejection.MALFORMED;
+    }
+
+    int headerLength = firstDot;
+    int payloadLength = secondDot - firstDot - 1;
+    int signatureLength = length - secondDot - 1;
+    if (headerLength > this.maxHeaderLength
+        || payloadLength > this.maxPayloadLength
+        || signatureLength > this.maxSignatureLength) {
+      return Rejection.OVERSIZED;
+    }
+    if (!isSegmentLength(headerLength)
+        || !isSegmentLength(payloadLength)
+        || !isSegmentLength(signatureLength)) {
+      return Rejection.MALFORMED;
+    }
+
+    Rejection rejection = checkHeader(new Scanner(token, 0, firstDot));
+    return rejection != null
+        ? rejection
+        : checkPayload(new Scanner(token, firstDot + 1, secondDot), Time.currentTime());
+  }
+
+  // A base64 segment can't leave a single character for the last byte
+  private static boolean isSegmentLength(int length) {
+    return length > 0 && length % 4 != 1;
+  }
+
+  private static Rejection checkHeader(Scanner scanner) {
+    int b = scanner.readNonWhitespace();
+    if (b != '{') {
+      return Rejection.MALFORMED;
+    }
+    boolean algorithmFound = false;
+    b = scanner.readNonWhitespace();
+    while (b != '}') {
+      int name = scanner.readName(b);
+      if (name == UNKNOWN) {
+        return null;
+      }
+      if (name == ALG) {
+        int algorithm = scanner.readAlgorithm();
+        if (algorithm == UNKNOWN) {
+          return null;
+        }
+        if (algorithm == 0) {
+          return Rejection.UNSUPPORTED_ALGORITHM;
+        }
+        algorithmFound = true;
+        b = scanner.readNonWhitespace();
+      } else {
+        b = scanner.readNonWhitespace();
+        if (name == KID && (b == '{' || b == '[')) {
+          return Rejection.MALFORMED;
+        }
+        b = scanner.skipValue(b);
+      }
+      if (b == ',') {
+        b = scanner.readNonWhitespace();
+      } else if (b != '}') {
+        return null;
+      }
+    }
+    return algorithmFound ? null : Rejection.UNSUPPORTED_ALGORITHM;
+  }
+
+  private static Rejection checkPayload(Scanner scanner, int currentTime) {
+    int b = scanner.readNonWhitespace();
+    if (b != '{') {
+      return Rejection.MALFORMED;
+    }
+    b = scanner.readNonWhitespace();
+    while (b != '}') {
+      int name = scanner.readName(b);
+      if (name == UNKNOWN) {
+        return null;
+      }
+      b = scanner.readNonWhitespace();
+      if (name == EXP) {
+        // Same as AccessToken.isExpired, where an exp of 0 means no expiration
+        long exp = scanner.readInteger(b);
+        return exp > 0 && currentTime > exp ? Rejection.EXPIRED : null;
+      }
+      b = scanner.skipValue(b);
+      if (b == ',') {
+        b = scanner.readNonWhitespace();
+      } else if (b != '}') {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /** The reasons why a token is rejected before being parsed. */
+  public enum Rejection {
+    /** The token or one of its segments is longer than allowed. */
+    OVERSIZED(FailureReason.OVERSIZED, "Token exceeds the maximum size"),
+    /** The token is not made of three base64url segments, or its header is not a JSON object. */
+    MALFORMED(FailureReason.MALFORMED, "Failed to parse JWT"),
+    /** The token is not signed with an algorithm of the RS, PS or ES family. */
+    UNSUPPORTED_ALGORITHM(FailureReason.INVALID, "Unsupported token signature algorithm"),
+    /** The token is expired. */
+    EXPIRED(FailureReason.EXPIRED, "Token is not active");
+
+    private final FailureReason failureReason;
+
+    private final String message;
+
+    private final List<OAuth2Error> errors;
+
+    Rejection(FailureReason failureReason, String message) {
+      this.failureReason = failureReason;
+      this.message = message;
+      this.errors = List.of(OAuthUtils.createOAuth2Error(message));
+    }
+
+    /**
+     * Returns the reason recorded by the metrics for this rejection.
+     *
+     * @return The failure reason.
+     */
+    public FailureReason getFailureReason() {
+      return failureReason;
+    }
+
+    /**
+     * Creates the exception thrown for this rejection. A new instance is created for every rejected
+     * token, so callers may add suppressed exceptions or a cause, but it has no stack trace and
+     * shares the immutable error of the rejection.
+     *
+     * @return The exception to throw.
+     */
+    public JwtValidationException createException() {
+      return new RejectedTokenException(message, errors);
+    }
+  }
+
+  // Rejections are expected and frequent, so filling in the stack trace would cost more than the
+  // scan that rejected the token
+  private static class RejectedTokenException extends JwtValidationException {
+
+    RejectedTokenException(String message, List<OAuth2Error> errors) {
+      super(message, errors);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  // Reads a JSON object from a base64url segment, decoding one byte at a time
+  private static class Scanner {
+
+    private final String token;
+
+    private final int end;
+
+    private int position;
+
+    private int bits;
+
+    private int bitCount;
+
+    Scanner(String token, int start, int end) {
+      this.token = token;
+      this.position = start;
+      this.end = end;
+    }
+
+    // Returns the next decoded byte, or -1 at the end of the segment
+    int read() {
+      while (this.bitCount < 8) {
+        if (this.position == this.end) {
+          return -1;
+        }
+        this.bits = this.bits << 6 | BASE64_URL[this.token.charAt(this.position++)];
+        this.bitCount += 6;
+      }
+      this.bitCount -= 8;
+      return this.bits >>> this.bitCount & 0xFF;
+    }
+
+    int readNonWhitespace() {
+      int b;
+      do {
+        b = read();
+      } while (b == ' ' || b == '\t' || b == '\n' || b == '\r');
+      return b;
+    }
+
+    // Reads a member name and the following colon. Names of three ASCII characters are returned
+    // packed into an int, other names as 0.
+    int readName(int b) {
+      if (b != '"') {
+        return UNKNOWN;
+      }
+      int name = 0;
+      int length = 0;
+      while ((b = read()) != '"') {
+        if (b < 0 || b == '\\') {
+          return UNKNOWN;
+        }
+        name = name << 8 | b;
+        length++;
+      }
+      if (readNonWhitespace() != ':') {
+        return UNKNOWN;
+      }
+      return length == 3 ? name : 0;
+    }
+
+    // Reads the value of alg. Returns 1 for a supported algorithm, 0 for an unsupported one
+    int readAlgorithm() {
+      int b = readNonWhitespace();
+      if (b != '"') {
+        return 0;
+      }
+      int family = 0;
+      int digits = 0;
+      int length = 0;
+      while ((b = read()) != '"') {
+        if (b < 0 || b == '\\') {
+          return UNKNOWN;
+        }
+        if (length < 2) {
+          family = family << 8 | b;
+        } else {
+          digits = digits * 10 + (b - '0');
+        }
+        if (++length > 5 || (length > 2 && (b < '0' || b > '9'))) {
+          return 0;
+        }
+      }
+      boolean supportedFamily =
+          family == ('R' << 8 | 'S') || family == ('P' << 8 | 'S') || family == ('E' << 8 | 'S');
+      boolean supportedDigest = digits == 256 || digits == 384 || digits == 512;
+      return length == 5 && supportedFamily && supportedDigest ? 1 : 0;
+    }
+
+    // Reads a non-negative integer, or returns UNKNOWN for any other value
+    long readInteger(int b) {
+      long value = 0;
+      int length = 0;
+      while (b >= '0' && b <= '9') {
+        if (++length > 18) {
+          return UNKNOWN;
+        }
+        value = value * 10 + (b - '0');
+        b = read();
+      }
+      if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+        b = readNonWhitespace();
+      }
+      return length > 0 && (b == ',' || b == '}') ? value : UNKNOWN;
+    }
+
+    // Skips the value starting with b and returns the first non-whitespace byte after it
+    int skipValue(int b) {
+      int depth = 0;
+      while (true) {
+        if (b < 0) {
+          return b;
+        }
+        if (b == '"') {
+          skipString();
+        } else if (b == '{' || b == '[') {
+          depth++;
+        } else if (b == '}' || b == ']') {
+          if (depth == 0) {
+            return b;
+          }
+          depth--;
+        } else if (depth == 0 && b == ',') {
+          return b;
+        }
+        b = depth == 0 && (b == '"' || b == '}' || b == ']') ? readNonWhitespace() : read();
+      }
+    }
+
+    private void skipString() {
+      int b;
+      while ((b = read()) != '"' && b >= 0) {
+        if (b == '\\') {
+          read();
+        }
+      }
+    }
+  }
+}
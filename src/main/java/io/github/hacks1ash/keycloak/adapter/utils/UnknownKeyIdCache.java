@@ -0,0 +1,91 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of key IDs (KIDs) that were not part of the realm keys when they were last fetched.
+ * Tokens carrying such a key ID can be rejected without fetching the keys again, until the entry
+ * expires.
+ *
+ * <p>The key IDs of the cache are attacker controlled, so the cache never grows past its maximum
+ * size and unusually long key IDs are not cached. Once the cache is full of live entries, new key
+ * IDs are simply not remembered and only the refetch throttle applies to them.
+ */
+public class UnknownKeyIdCache {
+
+  private static final int MAX_KID_LENGTH = 256;
+
+  private final int ttl;
+
+  private final int maximumSize;
+
+  private final Map<String, Integer> expiries = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a new instance of UnknownKeyIdCache.
+   *
+   * @param ttl How long an unknown key ID is remembered.
+   * @param maximumSize Maximum number of key IDs kept in the cache.
+   */
+  public UnknownKeyIdCache(Duration ttl, int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be greater than 0");
+    }
+    this.ttl = (int) ttl.toSeconds();
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * Checks whether a key ID is known to be unknown at the given time.
+   *
+   * @param kid The key ID.
+   * @param currentTime The current time in seconds.
+   * @return true if the key ID was recently found to be unknown.
+   */
+  public boolean contains(String kid, int currentTime) {
+    Integer expiresAt = expiries.get(kid);
+    if (expiresAt == null) {
+      return false;
+    }
+    if (expiresAt > currentTime) {
+      return true;
+    }
+    expiries.remove(kid, expiresAt);
+    return false;
+  }
+
+  /**
+   * Remembers a key ID that is not part of the realm keys.
+   *
+   * @param kid The key ID.
+   * @param currentTime The current time in seconds.
+   */
+  public void add(String kid, int currentTime) {
+    if (ttl <= 0 || kid.length() > MAX_KID_LENGTH) {
+      return;
+    }
+    if (expiries.size() >= maximumSize) {
+      expiries.values().removeIf(expiresAt -> expiresAt <= currentTime);
+      if (expiries.size() >= maximumSize) {
+        return;
+      }
+    }
+    expiries.put(kid, currentTime + ttl);
+  }
+
+  /** Forgets all key IDs, e.g. after the realm keys have changed. */
+  public void clear() {
+    expiries.clear();
+  }
+
+  /**
+   * Returns the approximate number of cached key IDs.
+   *
+   * @return The number of cached key IDs.
+   */
+  public int size() {
+    return expiries.size();
+  }
+}
@@ -0,0 +1,153 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.keycloak.common.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Size-bounded cache of already verified tokens. Entries are keyed by the SHA-256 digest of the raw
+ * token, so the token itself is never retained as a key, and each entry expires at the token's
+ * {@code exp} claim.
+ *
+ * <p>When the cache is full, expired entries are removed first. If that is not enough, arbitrary
+ * entries are evicted until the cache is back to 90% of its maximum size, so a burst of new tokens
+ * never makes every insert pay for eviction.
+ */
+public class VerifiedTokenCache {
+
+  private static final Logger log = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+  private final int maximumSize;
+
+  private final Map<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final LongAdder missCount = new LongAdder();
+
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Constructs a new instance of VerifiedTokenCache.
+   *
+   * @param maximumSize Maximum number of tokens kept in the cache.
+   */
+  public VerifiedTokenCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be greater than 0");
+    }
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * Returns the verified token previously stored for the given raw token, if it has not expired.
+   *
+   * @param token The raw token value.
+   * @return The cached verified token, or null if absent or expired.
+   */
+  public Jwt get(String token) {
+    ByteBuffer key = TokenDigest.sha256(token);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      missCount.increment();
+      return null;
+    }
+    if (entry.expiresAt() <= Time.currentTime()) {
+      entries.remove(key, entry);
+      missCount.increment();
+      return null;
+    }
+    hitCount.increment();
+    return entry.jwt();
+  }
+
+  /**
+   * Stores a verified token until its expiration time. Tokens without an expiration time are not
+   * cached.
+   *
+   * @param token The raw token value.
+   * @param jwt The verified token.
+   */
+  public void put(String token, Jwt jwt) {
+    if (jwt.getExpiresAt() == null) {
+      return;
+    }
+    if (entries.size() >= maximumSize) {
+      evict();
+    }
+    entries.put(TokenDigest.sha256(token), new Entry(jwt, jwt.getExpiresAt().getEpochSecond()));
+  }
+
+  /** Removes all cached tokens, e.g. after the realm keys have been rotated. */
+  public void invalidateAll() {
+    entries.clear();
+    log.debug("Verified token cache invalidated.");
+  }
+
+  /**
+   * Returns the number of lookups that returned a cached token.
+   *
+   * @return The hit count.
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Returns the number of lookups that did not return a cached token.
+   *
+   * @return The miss count.
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Returns the number of entries evicted because the cache was full.
+   *
+   * @return The eviction count.
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Returns the approximate number of cached tokens.
+   *
+   * @return The number of cached tokens.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private void evict() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      long currentTime = Time.currentTime();
+      entries.values().removeIf(entry -> entry.expiresAt() <= currentTime);
+
+      int target = maximumSize - Math.max(1, maximumSize / 10);
+      Iterator<ByteBuffer> iterator = entries.keySet().iterator();
+      while (entries.size() > target && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+        evictionCount.increment();
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private record Entry(Jwt jwt, long expiresAt) {}
+}
@@ -0,0 +1,169 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.hacks1ash.keycloak.adapter.utils.IssuerKeyLocatorRegistry;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksStub;
+import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.RevocationIndex;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.AsymmetricSignatureSignerContext;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.adapters.action.AdminAction;
+import org.keycloak.representations.adapters.action.LogoutAction;
+import org.keycloak.representations.adapters.action.PushNotBeforeAction;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/** Sends signed admin actions to the filter, checking which of them are applied. */
+class KeycloakAdminActionFilterTest {
+
+  private static final String REALM = "admin";
+
+  private final JwksStub realm = new JwksStub(REALM);
+
+  private final RevocationIndex revocationIndex = new RevocationIndex(Duration.ofHours(1));
+
+  private KeycloakProperties keycloakProperties;
+
+  private KeycloakAdminActionFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    keycloakProperties = realm.properties();
+    keycloakProperties.getRevocation().setAdminPath("/admin");
+    filter =
+        new KeycloakAdminActionFilter(
+            keycloakProperties,
+            new RemotePublicKeyLocator(keycloakProperties, realm.restTemplate()),
+            revocationIndex);
+  }
+
+  @Test
+  void appliesSignedPushNotBeforeAction() throws Exception {
+    int notBefore = Time.currentTime();
+    MockHttpServletResponse response =
+        post("/admin/k_push_not_before", sign(pushNotBefore(60, clientId(), notBefore)));
+
+    assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+    assertThat(revocationIndex.getNotBefore()).isEqualTo(notBefore);
+  }
+
+  @Test
+  void appliesSignedLogoutAction() throws Exception {
+    LogoutAction action =
+        new LogoutAction(
+            "action-1", Time.currentTime() + 60, clientId(), null, 0, List.of("session-1"));
+    MockHttpServletResponse response = post("/admin/k_logout", sign(action));
+
+    assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+    assertThat(revocationIndex.isRevoked("session-1", Time.currentTime())).isTrue();
+  }
+
+  @Test
+  void rejectsExpiredAction() throws Exception {
+    MockHttpServletResponse response =
+        post("/admin/k_push_not_before", sign(pushNotBefore(-1, clientId(), 1)));
+
+    assertThat(response.getStatus()).isEqualTo(HttpStatus.FORBIDDEN.value());
+    assertThat(revocationIndex.getNotBefore()).isZero();
+  }
+
+  @Test
+  void rejectsActionForAnotherClient() throws Exception {
+    MockHttpServletResponse response =
+        post("/admin/k_push_not_before", sign(pushNotBefore(60, "another-client", 1)));
+
+    assertThat(response.getStatus()).isEqualTo(HttpStatus.FORBIDDEN.value());
+    assertThat(revocationIndex.getNotBefore()).isZero();
+  }
+
+  @Test
+  void rejectsActionSignedWithAnotherKey() throws Exception {
+    String action =
+        sign("kid-0", JwksStub.generateKeyPair().getPrivate(), pushNotBefore(60, clientId(), 1));
+    MockHttpServletResponse response = post("/admin/k_push_not_before", action);
+
+    assertThat(response.getStatus()).isEqualTo(HttpStatus.FORBIDDEN.value());
+    assertThat(revocationIndex.getNotBefore()).isZero();
+  }
+
+  @Test
+  void rejectsActionSignedWithUnknownKeyId() throws Exception {
+    String action =
+        sign("kid-unknown", realm.keyPair().getPrivate(), pushNotBefore(60, clientId(), 1));
+    MockHttpServletResponse response = post("/admin/k_push_not_before", action);
+
+    assertThat(response.getStatus()).isEqualTo(HttpStatus.FORBIDDEN.value());
+    assertThat(revocationIndex.getNotBefore()).isZero();
+  }
+
+  @Test
+  void verifiesActionWithKeysOfAllowedIssuerInMultiIssuerMode() throws Exception {
+    String issuer = KeycloakUrlHelper.getRealmUrl(JwksStub.SERVER_URL, REALM);
+    IssuerKeyLocatorRegistry registry =
+        new IssuerKeyLocatorRegistry(
+            keycloakProperties, realm.restTemplate(), Set.of(issuer), Duration.ofHours(1));
+    filter = new KeycloakAdminActionFilter(keycloakProperties, registry, revocationIndex);
+
+    int notBefore = Time.currentTime();
+    MockHttpServletResponse response =
+        post("/admin/k_push_not_before", sign(pushNotBefore(60, clientId(), notBefore)));
+
+    assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+    assertThat(revocationIndex.getNotBefore()).isEqualTo(notBefore);
+    assertThat(registry.getActiveIssuers()).containsExactly(issuer);
+  }
+
+  @Test
+  void requiresClientId() {
+    keycloakProperties.setClientId(null);
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(keycloakProperties, realm.restTemplate());
+
+    assertThatThrownBy(
+            () -> new KeycloakAdminActionFilter(keycloakProperties, locator, revocationIndex))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private MockHttpServletResponse post(String path, String action) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+    request.setContent(action.getBytes(StandardCharsets.US_ASCII));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, new MockFilterChain());
+    return response;
+  }
+
+  private String sign(AdminAction action) {
+    return sign("kid-0", realm.keyPair().getPrivate(), action);
+  }
+
+  private String clientId() {
+    return keycloakProperties.getClientId();
+  }
+
+  private static String sign(String kid, PrivateKey privateKey, AdminAction action) {
+    KeyWrapper key = new KeyWrapper();
+    key.setKid(kid);
+    key.setAlgorithm(Algorithm.RS256);
+    key.setPrivateKey(privateKey);
+    return new JWSBuilder().jsonContent(action).sign(new AsymmetricSignatureSignerContext(key));
+  }
+
+  private static PushNotBeforeAction pushNotBefore(int expiresIn, String resource, int notBefore) {
+    return new PushNotBeforeAction("action-1", Time.currentTime() + expiresIn, resource, notBefore);
+  }
+}
@@ -0,0 +1,86 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksStub;
+import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/** Serializes authentications of decoded tokens, as session replication or persistence does. */
+class KeycloakAuthenticationSerializationTest {
+
+  private static final String REALM = "serialization";
+
+  private static final String CLIENT_ID = REALM + "-client";
+
+  private KeycloakJWTDecoder decoder;
+
+  private JwtAuthConverter<DefaultKeycloakUser> converter;
+
+  private String token;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    JwksStub realm = new JwksStub(REALM);
+    KeycloakProperties keycloakProperties = realm.properties();
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(keycloakProperties, realm.restTemplate());
+
+    converter = new JwtAuthConverter<>(keycloakProperties, DefaultKeycloakUser.class);
+    decoder = new KeycloakJWTDecoder(locator, keycloakProperties, converter.getUserType());
+    token =
+        new TokenMinter(KeycloakUrlHelper.getRealmUrl(JwksStub.SERVER_URL, REALM), CLIENT_ID)
+            .mint("kid-0", "RS256", realm.keyPair().getPrivate(), 3);
+  }
+
+  @Test
+  void serializesAuthenticationWithUnreadClaims() throws Exception {
+    Authentication authentication = converter.convert(decoder.decode(token));
+
+    Authentication deserialized = roundTrip(authentication);
+
+    assertThat(deserialized.getName()).isEqualTo(authentication.getName());
+    assertThat(AuthorityUtils.authorityListToSet(deserialized.getAuthorities()))
+        .isEqualTo(AuthorityUtils.authorityListToSet(authentication.getAuthorities()));
+    Jwt jwt = (Jwt) deserialized.getCredentials();
+    assertThat(jwt.getTokenValue()).isEqualTo(token);
+    assertThat(jwt.getClaims()).isEqualTo(((Jwt) authentication.getCredentials()).getClaims());
+    assertThat(jwt.getClaimAsString("azp")).isEqualTo(CLIENT_ID);
+    assertThat(jwt.getClaims().get("exp")).isInstanceOf(Instant.class);
+  }
+
+  @Test
+  void serializesDecodedTokenWithReadClaims() throws Exception {
+    Jwt jwt = decoder.decode(token);
+    assertThat(jwt.getClaims()).containsKey("iss");
+
+    Jwt deserialized = roundTrip(jwt);
+
+    assertThat(deserialized.getClaims()).isEqualTo(jwt.getClaims());
+    assertThat(deserialized.getSubject()).isEqualTo(jwt.getSubject());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T roundTrip(T object) throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(object);
+    }
+    try (ObjectInputStream input =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (T) input.readObject();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.hacks1ash.keycloak.adapter.utils.IssuerKeyLocatorRegistry;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksRefreshScheduler;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksStub;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import io.github.hacks1ash.keycloak.adapter.utils.VerifiedTokenCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.access.AccessDeniedHandler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestTemplate;
+
+/** Starts the auto-configuration in each kind of application, checking which beans are created. */
+class KeycloakAutoConfigurationTest {
+
+  private static final String[] PROPERTIES = {
+    "keycloak.server-url=http://localhost:8080",
+    "keycloak.realm=auto-configuration",
+    "keycloak.client-id=auto-configuration-client",
+  };
+
+  @Test
+  void nonWebApplicationGetsBlockingKeyLocatorWithoutHttpSecurity() {
+    new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(KeycloakAutoConfiguration.class))
+        .withPropertyValues(PROPERTIES)
+        .run(
+            context ->
+                assertThat(context)
+                    .hasSingleBean(RemotePublicKeyLocator.class)
+                    .hasSingleBean(JwksRefreshScheduler.class)
+                    .hasSingleBean(KeycloakJWTDecoder.class)
+                    .hasSingleBean(KeycloakBatchVerifier.class)
+                    .doesNotHaveBean(WebSecurityConfig.class)
+                    .doesNotHaveBean(AuthenticationEntryPoint.class)
+                    .doesNotHaveBean(AccessDeniedHandler.class));
+  }
+
+  @Test
+  void defaultClientDoesNotClashWithApplicationClient() {
+    new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(KeycloakAutoConfiguration.class))
+        .withPropertyValues(PROPERTIES)
+        .withBean("restTemplate", RestTemplate.class, RestTemplate::new)
+        .run(
+            context -> {
+              assertThat(context).hasBean(KeycloakAutoConfiguration.REST_TEMPLATE_BEAN_NAME);
+              assertThat(context.getBean(RestTemplate.class))
+                  .isSameAs(context.getBean("restTemplate"));
+            });
+  }
+
+  @Test
+  void keyLocatorUsesClientProvidedByApplication() {
+    JwksStub realm = new JwksStub("auto-configuration");
+    new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(KeycloakAutoConfiguration.class))
+        .withPropertyValues(PROPERTIES)
+        .withPropertyValues("keycloak.jwks.background-refresh=false")
+        .withBean(
+            KeycloakAutoConfiguration.REST_CLIENT_BEAN_NAME,
+            RestClient.class,
+            () -> RestClient.create(realm.restTemplate()))
+        .run(
+            context -> {
+              assertThat(context)
+                  .doesNotHaveBean(KeycloakAutoConfiguration.REST_TEMPLATE_BEAN_NAME);
+              context.getBean(RemotePublicKeyLocator.class).refresh();
+              assertThat(realm.getRequestCount()).isEqualTo(1);
+            });
+  }
+
+  @Test
+  void multiIssuerModeGetsRegistryWithoutSingleRealmKeyLocator() {
+    new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(KeycloakAutoConfiguration.class))
+        .withPropertyValues(
+            "keycloak.multi-issuer.enabled=true",
+            "keycloak.multi-issuer.allowed-issuers=http://localhost:8080/realms/tenant",
+            "keycloak.token-cache.enabled=true")
+        .run(
+            context ->
+                assertThat(context)
+                    .hasSingleBean(IssuerKeyLocatorRegistry.class)
+                    .hasSingleBean(VerifiedTokenCache.class)
+                    .doesNotHaveBean(RemotePublicKeyLocator.class));
+  }
+
+  @Test
+  void reactiveApplicationGetsNeitherBlockingKeyLocatorNorServletBeans() {
+    new ReactiveWebApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(KeycloakAutoConfiguration.class))
+        .withPropertyValues(PROPERTIES)
+        .run(
+            context ->
+                assertThat(context)
+                    .hasSingleBean(JwtAuthConverter.class)
+                    .doesNotHaveBean(RemotePublicKeyLocator.class)
+                    .doesNotHaveBean(JwksRefreshScheduler.class)
+                    .doesNotHaveBean(KeycloakBatchVerifier.class)
+                    .doesNotHaveBean(WebSecurityConfig.class)
+                    .doesNotHaveBean(AuthenticationEntryPoint.class)
+                    .doesNotHaveBean(AccessDeniedHandler.class));
+  }
+}
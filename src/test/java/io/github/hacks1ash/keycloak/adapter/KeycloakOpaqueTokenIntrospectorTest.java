@@ -0,0 +1,193 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.SecurityContextHelper;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+/** Introspects tokens against a stubbed introspection endpoint, checking what is cached. */
+class KeycloakOpaqueTokenIntrospectorTest {
+
+  private static final String INTROSPECTION_URL =
+      "http://localhost:8080/realms/introspection/protocol/openid-connect/token/introspect";
+
+  private static final Duration NEGATIVE_CACHE_TTL = Duration.ofSeconds(10);
+
+  private KeycloakProperties keycloakProperties;
+
+  private MockRestServiceServer server;
+
+  private KeycloakOpaqueTokenIntrospector introspector;
+
+  @BeforeEach
+  void setUp() {
+    keycloakProperties = new KeycloakProperties();
+    keycloakProperties.setServerUrl("http://localhost:8080");
+    keycloakProperties.setRealm("introspection");
+    keycloakProperties.setClientId("introspection-client");
+    keycloakProperties.getIntrospection().setNegativeCacheTtl(NEGATIVE_CACHE_TTL);
+
+    RestTemplate restTemplate = new RestTemplate();
+    server = MockRestServiceServer.bindTo(restTemplate).build();
+    introspector = new KeycloakOpaqueTokenIntrospector(keycloakProperties, restTemplate);
+  }
+
+  @AfterEach
+  void resetTime() {
+    Time.setOffset(0);
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  void cachesActiveTokenUntilExpiration() {
+    long expiresAt = Time.currentTime() + 60;
+    server
+        .expect(ExpectedCount.twice(), requestTo(INTROSPECTION_URL))
+        .andExpect(method(HttpMethod.POST))
+        .andRespond(withSuccess(activeResponse(expiresAt), MediaType.APPLICATION_JSON));
+
+    OAuth2AuthenticatedPrincipal principal = introspector.introspect("active-token");
+    assertThat(principal.getName()).isEqualTo("user-1");
+    assertThat(AuthorityUtils.authorityListToSet(principal.getAuthorities()))
+        .containsExactly("ROLE_admin");
+
+    // Served from the cache until the token expires, with a margin for the clock ticking meanwhile
+    Time.setOffset(30);
+    assertThat(introspector.introspect("active-token")).isSameAs(principal);
+    assertThat(introspector.getHitCount()).isEqualTo(1);
+
+    // Introspected again once it has expired
+    Time.setOffset(60);
+    assertThat(introspector.introspect("active-token")).isNotSameAs(principal);
+    assertThat(introspector.getMissCount()).isEqualTo(2);
+    server.verify();
+  }
+
+  @Test
+  void cachesInactiveTokenForNegativeCacheTtl() {
+    server
+        .expect(ExpectedCount.twice(), requestTo(INTROSPECTION_URL))
+        .andRespond(withSuccess("{\"active\":false}", MediaType.APPLICATION_JSON));
+
+    assertThatThrownBy(() -> introspector.introspect("inactive-token"))
+        .isInstanceOf(BadOpaqueTokenException.class);
+
+    // Rejected from the cache for the negative cache TTL
+    Time.setOffset((int) NEGATIVE_CACHE_TTL.toSeconds() / 2);
+    assertThatThrownBy(() -> introspector.introspect("inactive-token"))
+        .isInstanceOf(BadOpaqueTokenException.class);
+    assertThat(introspector.getHitCount()).isEqualTo(1);
+
+    // Introspected again once the negative cache TTL has passed
+    Time.setOffset((int) NEGATIVE_CACHE_TTL.toSeconds());
+    assertThatThrownBy(() -> introspector.introspect("inactive-token"))
+        .isInstanceOf(BadOpaqueTokenException.class);
+    assertThat(introspector.getMissCount()).isEqualTo(2);
+    server.verify();
+  }
+
+  @Test
+  void concurrentIntrospectionsOfSameTokenShareOneRequest() throws Exception {
+    int threadCount = 16;
+    CountDownLatch allWaiting = new CountDownLatch(1);
+    String response = activeResponse(Time.currentTime() + 60);
+    server
+        .expect(ExpectedCount.once(), requestTo(INTROSPECTION_URL))
+        .andRespond(
+            request -> {
+              // Answer once every thread is waiting for this request
+              try {
+                allWaiting.await(10, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return withSuccess(response, MediaType.APPLICATION_JSON).createResponse(request);
+            });
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<OAuth2AuthenticatedPrincipal>> introspections = new ArrayList<>();
+      for (int i = 0; i < threadCount; i++) {
+        introspections.add(executor.submit(() -> introspector.introspect("shared-token")));
+      }
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (introspector.getMissCount() < threadCount && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      allWaiting.countDown();
+
+      OAuth2AuthenticatedPrincipal first = introspections.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<OAuth2AuthenticatedPrincipal> introspection : introspections) {
+        assertThat(introspection.get(10, TimeUnit.SECONDS)).isSameAs(first);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(introspector.getMissCount()).isEqualTo(threadCount);
+    server.verify();
+  }
+
+  @Test
+  void convertsIntrospectedTokenToKeycloakAuthentication() {
+    long expiresAt = Time.currentTime() + 60;
+    server
+        .expect(requestTo(INTROSPECTION_URL))
+        .andRespond(withSuccess(activeResponse(expiresAt), MediaType.APPLICATION_JSON));
+    JwtAuthConverter<DefaultKeycloakUser> jwtAuthConverter =
+        new JwtAuthConverter<>(keycloakProperties, DefaultKeycloakUser.class);
+
+    Authentication authentication =
+        jwtAuthConverter.convert("active-token", introspector.introspect("active-token"));
+    SecurityContextHolder.getContext().setAuthentication(authentication);
+
+    assertThat(authentication).isInstanceOf(KeycloakAuthentication.class);
+    assertThat(AuthorityUtils.authorityListToSet(authentication.getAuthorities()))
+        .containsExactly("ROLE_admin");
+    DefaultKeycloakUser user = SecurityContextHelper.getCurrentUser();
+    assertThat(user.getSubject()).isEqualTo("user-1");
+    assertThat(user.getIssuer()).isEqualTo("http://localhost:8080/realms/introspection");
+    assertThat(user.getScope()).isEqualTo("openid email");
+    assertThat(user.getExp()).isEqualTo(expiresAt);
+  }
+
+  private static String activeResponse(long expiresAt) {
+    return """
+           {
+             "active": true,
+             "sub": "user-1",
+             "iss": "http://localhost:8080/realms/introspection",
+             "scope": "openid email",
+             "client_id": "introspection-client",
+             "exp": %d,
+             "resource_access": {"introspection-client": {"roles": ["admin"]}}
+           }
+           """
+        .formatted(expiresAt);
+  }
+}
@@ -0,0 +1,90 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.github.hacks1ash.keycloak.adapter.metrics.KeycloakMetrics;
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksStub;
+import io.github.hacks1ash.keycloak.adapter.utils.RemotePublicKeyLocator;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Warms up the verifier of a decoder for a stubbed realm. */
+class KeycloakWarmupTest {
+
+  private final JwksStub realm = new JwksStub("warmup");
+
+  private final CountingMetrics metrics = new CountingMetrics();
+
+  private KeycloakWarmup warmup;
+
+  @BeforeEach
+  void setUp() {
+    KeycloakProperties keycloakProperties = realm.properties();
+    keycloakProperties.getWarmup().setIterations(5);
+    keycloakProperties.getJwks().setMaxRetries(0);
+
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(keycloakProperties, realm.restTemplate());
+    JwtAuthConverter<DefaultKeycloakUser> jwtAuthConverter =
+        new JwtAuthConverter<>(keycloakProperties, DefaultKeycloakUser.class);
+    jwtAuthConverter.setMetrics(metrics);
+    KeycloakJWTDecoder decoder = new KeycloakJWTDecoder(locator, keycloakProperties);
+    decoder.setMetrics(metrics);
+
+    warmup =
+        new KeycloakWarmup(
+            keycloakProperties,
+            jwtAuthConverter,
+            decoder.getJwtVerifier(),
+            () -> {
+              locator.reset();
+              return locator.getKeySnapshot();
+            });
+  }
+
+  @AfterEach
+  void tearDown() {
+    warmup.stop();
+  }
+
+  @Test
+  void warmsUpWithoutRecordingMetrics() {
+    warmup.start();
+
+    await().until(warmup::isWarmedUp);
+    assertThat(warmup.getFailure()).isNull();
+    assertThat(metrics.conversions).hasValue(0);
+    assertThat(metrics.verificationFailures).hasValue(0);
+  }
+
+  @Test
+  void isNotWarmedUpWhenRealmKeysCannotBeFetched() {
+    realm.failNext(1);
+    warmup.start();
+
+    await().until(() -> warmup.getFailure() != null);
+    assertThat(warmup.getFailure()).hasMessage("No realm keys could be fetched");
+    assertThat(warmup.isWarmedUp()).isFalse();
+  }
+
+  private static final class CountingMetrics implements KeycloakMetrics {
+
+    private final AtomicInteger conversions = new AtomicInteger();
+
+    private final AtomicInteger verificationFailures = new AtomicInteger();
+
+    @Override
+    public void recordConversion(long startTime) {
+      conversions.incrementAndGet();
+    }
+
+    @Override
+    public void recordVerificationFailure(FailureReason reason) {
+      verificationFailures.incrementAndGet();
+    }
+  }
+}
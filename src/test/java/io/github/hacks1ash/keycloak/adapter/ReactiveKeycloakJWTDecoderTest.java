@@ -0,0 +1,65 @@
+package io.github.hacks1ash.keycloak.adapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.hacks1ash.keycloak.adapter.model.DefaultKeycloakUser;
+import io.github.hacks1ash.keycloak.adapter.utils.JwksStub;
+import io.github.hacks1ash.keycloak.adapter.utils.KeycloakUrlHelper;
+import io.github.hacks1ash.keycloak.adapter.utils.ReactiveRemotePublicKeyLocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+/** Decodes tokens signed by a stubbed realm with the reactive decoder. */
+class ReactiveKeycloakJWTDecoderTest {
+
+  private static final String REALM = "reactive-decoder";
+
+  private final JwksStub realm = new JwksStub(REALM);
+
+  private final TokenMinter tokenMinter =
+      new TokenMinter(KeycloakUrlHelper.getRealmUrl(JwksStub.SERVER_URL, REALM), REALM + "-client");
+
+  private ReactiveKeycloakJWTDecoder decoder;
+
+  @BeforeEach
+  void setUp() {
+    KeycloakProperties keycloakProperties = realm.properties();
+    decoder =
+        new ReactiveKeycloakJWTDecoder(
+            new ReactiveRemotePublicKeyLocator(keycloakProperties, realm.webClient()),
+            keycloakProperties,
+            DefaultKeycloakUser.class);
+  }
+
+  @Test
+  void decodesTokenWithKeyId() {
+    String token = tokenMinter.mint("kid-0", "RS256", realm.keyPair().getPrivate(), 1);
+
+    Jwt jwt = decoder.decode(token).block();
+    assertThat(jwt.getTokenValue()).isEqualTo(token);
+    assertThat(jwt.getHeaders()).containsEntry("kid", "kid-0");
+  }
+
+  @Test
+  void decodesTokenWithoutKeyIdWithKeyMatchingItsAlgorithm() {
+    realm.publish("kid-0", "kid-1");
+    String token = tokenMinter.mint(null, "RS256", realm.keyPair().getPrivate(), 1);
+
+    Jwt jwt = decoder.decode(token).block();
+    assertThat(jwt.getTokenValue()).isEqualTo(token);
+    assertThat(jwt.getHeaders()).doesNotContainKey("kid");
+    assertThat(realm.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  void rejectsTokenWithoutKeyIdSignedWithAnotherKey() {
+    String token = tokenMinter.mint(null, "RS256", JwksStub.generateKeyPair().getPrivate(), 1);
+
+    assertThatThrownBy(() -> decoder.decode(token).block())
+        .isInstanceOf(JwtValidationException.class)
+        .hasMessageContaining("Invalid token signature");
+  }
+}
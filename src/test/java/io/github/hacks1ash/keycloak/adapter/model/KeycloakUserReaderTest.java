@@ -0,0 +1,56 @@
+package io.github.hacks1ash.keycloak.adapter.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/** Reads payloads lazily into a user subclass, checking when its inherited fields are set. */
+class KeycloakUserReaderTest {
+
+  private static final byte[] PAYLOAD =
+      """
+      {"sub":"user-1","email":"user-1@example.com","tenant":"acme","department":"sales"}
+      """
+          .getBytes(StandardCharsets.UTF_8);
+
+  private final KeycloakUserReader<DepartmentUser> reader =
+      new KeycloakUserReader<>(DepartmentUser.class);
+
+  @Test
+  void readsSubclassPropertiesUpFront() throws Exception {
+    DepartmentUser user = reader.read(PAYLOAD);
+
+    assertThat(user.department).isEqualTo("sales");
+    assertThat(user.getSubject()).isEqualTo("user-1");
+  }
+
+  @Test
+  void defersInheritedClaimsUntilRead() throws Exception {
+    DepartmentUser user = reader.read(PAYLOAD);
+
+    assertThat(user.emailField()).isNull();
+    assertThat(user.getEmail()).isEqualTo("user-1@example.com");
+    assertThat(user.emailField()).isEqualTo("user-1@example.com");
+    assertThat(user.getOtherClaims()).containsEntry("tenant", "acme");
+  }
+
+  @Test
+  void readsDeferredClaimsBeforeSubclassReadsFields() throws Exception {
+    DepartmentUser user = reader.read(PAYLOAD);
+
+    user.readDeferredClaims();
+    assertThat(user.emailField()).isEqualTo("user-1@example.com");
+  }
+
+  static class DepartmentUser extends DefaultKeycloakUser {
+
+    @JsonProperty("department")
+    String department;
+
+    String emailField() {
+      return this.email;
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.util.JsonSerialization;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stubbed JWKS endpoint of a realm, answering the requests of a {@link RestTemplate} or a {@link
+ * WebClient} in memory. The published key set can be changed at any time, and the next requests can
+ * be made to fail as if the realm were unreachable. Every key set is sent with an ETag, and
+ * conditional requests for the current key set are answered with 304 Not Modified. All published
+ * keys share one RSA key pair.
+ */
+public final class JwksStub implements ClientHttpRequestFactory {
+
+  /** URL of the stubbed Keycloak server. */
+  public static final String SERVER_URL = "http://localhost:8080";
+
+  private final String realm;
+
+  private final KeyPair keyPair;
+
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  private final AtomicInteger failures = new AtomicInteger();
+
+  private final AtomicInteger notModifiedCount = new AtomicInteger();
+
+  private final AtomicInteger version = new AtomicInteger();
+
+  private volatile Published published;
+
+  /**
+   * Constructs a stub of the given realm publishing the key ID {@code kid-0}.
+   *
+   * @param realm The name of the realm.
+   */
+  public JwksStub(String realm) {
+    this.realm = realm;
+    this.keyPair = generateKeyPair();
+    publish("kid-0");
+  }
+
+  /**
+   * Generates an RSA key pair for RS256 signatures.
+   *
+   * @return A new key pair.
+   */
+  public static KeyPair generateKeyPair() {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+      generator.initialize(2048);
+      return generator.generateKeyPair();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns properties for the stubbed realm, without background refresh.
+   *
+   * @return New Keycloak properties.
+   */
+  public KeycloakProperties properties() {
+    KeycloakProperties keycloakProperties = new KeycloakProperties();
+    keycloakProperties.setServerUrl(SERVER_URL);
+    keycloakProperties.setRealm(realm);
+    keycloakProperties.setClientId(realm + "-client");
+    keycloakProperties.getJwks().setBackgroundRefresh(false);
+    return keycloakProperties;
+  }
+
+  /**
+   * Returns a client sending its requests to this stub.
+   *
+   * @return A new RestTemplate.
+   */
+  public RestTemplate restTemplate() {
+    return new RestTemplate(this);
+  }
+
+  /**
+   * Returns a reactive client sending its requests to this stub.
+   *
+   * @return A new WebClient.
+   */
+  public WebClient webClient() {
+    return WebClient.builder().exchangeFunction(this::exchange).build();
+  }
+
+  /**
+   * Returns the key pair of the published keys.
+   *
+   * @return The key pair.
+   */
+  public KeyPair keyPair() {
+    return keyPair;
+  }
+
+  /**
+   * Replaces the published key set with keys of the given key IDs.
+   *
+   * @param kids The key IDs to publish.
+   */
+  public void publish(String... kids) {
+    JWK[] keys = new JWK[kids.length];
+    for (int i = 0; i < kids.length; i++) {
+      keys[i] = JWKBuilder.create().kid(kids[i]).algorithm("RS256").rsa(keyPair.getPublic());
+    }
+    JSONWebKeySet keySet = new JSONWebKeySet();
+    keySet.setKeys(keys);
+    try {
+      published =
+          new Published(
+              JsonSerialization.writeValueAsBytes(keySet), "\"" + version.incrementAndGet() + "\"");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Makes the next requests fail with a connection error.
+   *
+   * @param count The number of requests to fail.
+   */
+  public void failNext(int count) {
+    failures.set(count);
+  }
+
+  /**
+   * Returns the number of requests received, including the failed ones.
+   *
+   * @return The request count.
+   */
+  public int getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Returns the number of conditional requests answered with 304 Not Modified.
+   *
+   * @return The not modified count.
+   */
+  public int getNotModifiedCount() {
+    return notModifiedCount.get();
+  }
+
+  @Override
+  public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+    return new MockClientHttpRequest(httpMethod, uri) {
+      @Override
+      protected ClientHttpResponse executeInternal() throws IOException {
+        Published current = published;
+        HttpStatus status = answer(getHeaders(), current);
+        if (status == null) {
+          throw new ConnectException("Connection refused");
+        }
+        MockClientHttpResponse response =
+            new MockClientHttpResponse(
+                status == HttpStatus.OK ? current.keySet() : new byte[0], status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().setETag(current.etag());
+        return response;
+      }
+    };
+  }
+
+  private Mono<ClientResponse> exchange(ClientRequest request) {
+    Published current = published;
+    HttpStatus status = answer(request.headers(), current);
+    if (status == null) {
+      return Mono.error(
+          new WebClientRequestException(
+              new ConnectException("Connection refused"),
+              request.method(),
+              request.url(),
+              request.headers()));
+    }
+    ClientResponse.Builder response =
+        ClientResponse.create(status)
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .header(HttpHeaders.ETAG, current.etag());
+    if (status == HttpStatus.OK) {
+      response.body(new String(current.keySet(), StandardCharsets.UTF_8));
+    }
+    return Mono.just(response.build());
+  }
+
+  // Counts the request and returns the status of its response, or null if it fails
+  private HttpStatus answer(HttpHeaders requestHeaders, Published current) {
+    requestCount.incrementAndGet();
+    if (failures.getAndUpdate(remaining -> Math.max(remaining - 1, 0)) > 0) {
+      return null;
+    }
+    if (requestHeaders.getIfNoneMatch().contains(current.etag())) {
+      notModifiedCount.incrementAndGet();
+      return HttpStatus.NOT_MODIFIED;
+    }
+    return HttpStatus.OK;
+  }
+
+  /**
+   * The published key set.
+   *
+   * @param keySet The serialized key set.
+   * @param etag The ETag of the key set.
+   */
+  private record Published(byte[] keySet, String etag) {}
+}
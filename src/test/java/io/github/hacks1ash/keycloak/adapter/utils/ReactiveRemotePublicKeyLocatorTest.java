@@ -0,0 +1,108 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+
+/**
+ * Fetches the keys of a stubbed realm without blocking, checking that the reactive locator caches
+ * and refreshes them with the same policy as the blocking one.
+ */
+class ReactiveRemotePublicKeyLocatorTest {
+
+  private static final int MAX_RETRIES = 2;
+
+  private static final Duration CACHE_TTL = Duration.ofMinutes(10);
+
+  private final JwksStub realm = new JwksStub("reactive");
+
+  private ReactiveRemotePublicKeyLocator locator;
+
+  @BeforeEach
+  void setUp() {
+    KeycloakProperties keycloakProperties = realm.properties();
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    jwks.setMaxRetries(MAX_RETRIES);
+    jwks.setRetryBackoff(Duration.ofMillis(10));
+    jwks.setCacheTtl(CACHE_TTL);
+    jwks.setMaxStale(Duration.ofHours(1));
+    locator = new ReactiveRemotePublicKeyLocator(keycloakProperties, realm.webClient());
+  }
+
+  @AfterEach
+  void tearDown() {
+    locator.disableBackgroundRefresh();
+    Time.setOffset(0);
+  }
+
+  @Test
+  void lookupSendsSingleRequest() {
+    realm.failNext(MAX_RETRIES);
+
+    assertThat(locator.getPublicKey("kid-0").block()).isNull();
+    assertThat(realm.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  void refreshRetriesUnreachableRealm() {
+    realm.failNext(MAX_RETRIES);
+
+    assertThat(locator.refresh().block().keys()).containsOnlyKeys("kid-0");
+    assertThat(realm.getRequestCount()).isEqualTo(MAX_RETRIES + 1);
+  }
+
+  @Test
+  void refreshGivesUpAfterMaxRetries() {
+    realm.failNext(MAX_RETRIES + 1);
+
+    assertThat(locator.refresh().block().keys()).isEmpty();
+    assertThat(realm.getRequestCount()).isEqualTo(MAX_RETRIES + 1);
+  }
+
+  @Test
+  void refreshOfUnchangedKeysIsConditional() {
+    locator.refresh().block();
+    Time.setOffset((int) CACHE_TTL.toSeconds());
+
+    KeySnapshot snapshot = locator.refresh().block();
+    assertThat(realm.getNotModifiedCount()).isEqualTo(1);
+    assertThat(snapshot.keys()).containsOnlyKeys("kid-0");
+    assertThat(snapshot.isUsable(Time.currentTime(), 0)).isTrue();
+  }
+
+  @Test
+  void servesExpiredKeyWhileRefreshingInBackground() {
+    locator.enableBackgroundRefresh();
+    locator.refresh().block();
+    Time.setOffset((int) CACHE_TTL.toSeconds() + 1);
+
+    assertThat(locator.getPublicKey("kid-0").block()).isNotNull();
+    await().untilAsserted(() -> assertThat(realm.getRequestCount()).isEqualTo(2));
+    assertThat(locator.getKeySnapshot().isUsable(Time.currentTime(), 0)).isTrue();
+  }
+
+  @Test
+  void fetchesExpiredKeyWithoutBackgroundRefresh() {
+    locator.refresh().block();
+    Time.setOffset((int) CACHE_TTL.toSeconds() + 1);
+
+    assertThat(locator.getPublicKey("kid-0").block()).isNotNull();
+    assertThat(realm.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  void lookupKeepsExpiredKeysWhenRealmIsUnreachable() {
+    locator.refresh().block();
+    Time.setOffset((int) CACHE_TTL.toSeconds() + 1);
+    realm.failNext(1);
+
+    assertThat(locator.getPublicKey("kid-0").block()).isNotNull();
+    assertThat(realm.getRequestCount()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,56 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Fetches the keys from a stubbed realm that is unreachable at first, checking that only refreshes
+ * are retried and that a lookup never waits for a retry.
+ */
+class RemotePublicKeyLocatorRetryTest {
+
+  private static final int MAX_RETRIES = 2;
+
+  private final JwksStub realm = new JwksStub("retry");
+
+  private RemotePublicKeyLocator locator;
+
+  @BeforeEach
+  void setUp() {
+    KeycloakProperties keycloakProperties = realm.properties();
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    jwks.setMaxRetries(MAX_RETRIES);
+    jwks.setRetryBackoff(Duration.ofMillis(10));
+    locator = new RemotePublicKeyLocator(keycloakProperties, realm.restTemplate());
+  }
+
+  @Test
+  void lookupSendsSingleRequest() {
+    realm.failNext(MAX_RETRIES);
+
+    assertThat(locator.getPublicKey("kid-0")).isNull();
+    assertThat(realm.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  void refreshRetriesUnreachableRealm() {
+    realm.failNext(MAX_RETRIES);
+
+    locator.refresh();
+    assertThat(realm.getRequestCount()).isEqualTo(MAX_RETRIES + 1);
+    assertThat(locator.getKeySnapshot().keys()).containsOnlyKeys("kid-0");
+  }
+
+  @Test
+  void refreshGivesUpAfterMaxRetries() {
+    realm.failNext(MAX_RETRIES + 1);
+
+    locator.refresh();
+    assertThat(realm.getRequestCount()).isEqualTo(MAX_RETRIES + 1);
+    assertThat(locator.getKeySnapshot().keys()).isEmpty();
+  }
+}
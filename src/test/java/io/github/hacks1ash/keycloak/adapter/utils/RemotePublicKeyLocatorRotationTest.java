@@ -0,0 +1,117 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Rotates the key set of a stubbed realm, publishing a new key next to the current one and then
+ * removing the old one, while several threads look up the old and new key IDs. A key ID that is
+ * published, or that was published and is within its grace period, must never be missed.
+ */
+class RemotePublicKeyLocatorRotationTest {
+
+  private static final int ROTATIONS = 50;
+
+  private static final int LOOKUP_THREADS = 8;
+
+  private static final long LOOKUP_PAUSE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final JwksStub realm = new JwksStub("rotation");
+
+  private volatile int newest;
+
+  @Test
+  void neverMissesPublishedOrRetiredKeyIdsDuringRotation() throws Exception {
+    RemotePublicKeyLocator locator = new RemotePublicKeyLocator(properties(), realm.restTemplate());
+
+    AtomicBoolean done = new AtomicBoolean();
+    LongAdder lookups = new LongAdder();
+    Set<String> missedKeyIds = ConcurrentHashMap.newKeySet();
+    CountDownLatch finished = new CountDownLatch(LOOKUP_THREADS);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < LOOKUP_THREADS; i++) {
+      threads.add(
+          new Thread(
+              () -> {
+                try {
+                  while (!done.get()) {
+                    // Every key ever published is either published or within its grace period
+                    int index =
+                        ThreadLocalRandom.current().nextBoolean()
+                            ? newest
+                            : ThreadLocalRandom.current().nextInt(newest + 1);
+                    String kid = kid(index);
+                    if (locator.getPublicKey(kid) == null) {
+                      missedKeyIds.add(kid);
+                    }
+                    lookups.increment();
+                    LockSupport.parkNanos(LOOKUP_PAUSE_NANOS);
+                  }
+                } finally {
+                  finished.countDown();
+                }
+              }));
+    }
+    // Refresh continuously, as the background refresh would, so rotations often race a fetch
+    threads.add(
+        new Thread(
+            () -> {
+              while (!done.get()) {
+                locator.refresh();
+              }
+            }));
+    threads.forEach(Thread::start);
+
+    for (int i = 1; i <= ROTATIONS; i++) {
+      // Publish the new key next to the current one, make sure tokens signed with it are seen and
+      // then remove the current key, as Keycloak does when a key is rotated
+      publish(i - 1, i);
+      assertThat(locator.getPublicKey(kid(i))).isNotNull();
+      publish(i);
+    }
+    done.set(true);
+    assertThat(finished.await(30, TimeUnit.SECONDS)).isTrue();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(missedKeyIds).isEmpty();
+    assertThat(lookups.sum()).isGreaterThan(ROTATIONS);
+  }
+
+  private void publish(int... indexes) {
+    String[] kids = new String[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      kids[i] = kid(indexes[i]);
+    }
+    realm.publish(kids);
+    newest = indexes[indexes.length - 1];
+  }
+
+  private KeycloakProperties properties() {
+    KeycloakProperties keycloakProperties = realm.properties();
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    jwks.setRetiredKeyGracePeriod(Duration.ofMinutes(10));
+    // This test is about the published key snapshot, not about throttling refetches
+    jwks.setRefetchBurst(1000);
+    jwks.setRefetchInterval(Duration.ofMillis(1));
+    return keycloakProperties;
+  }
+
+  private static String kid(int index) {
+    return "kid-" + index;
+  }
+}
@@ -0,0 +1,75 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.common.util.Time;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+
+/** Loads realm keys from a snapshot file, checking that they expire as if never saved. */
+class RemotePublicKeyLocatorSnapshotTest {
+
+  private static final Duration CACHE_TTL = Duration.ofDays(1);
+
+  @TempDir Path tempDir;
+
+  @Test
+  void loadedKeysKeepTheirFetchTime() throws Exception {
+    int currentTime = Time.currentTime();
+    int fetchedAt = currentTime - (int) CACHE_TTL.toSeconds() + 60;
+    RemotePublicKeyLocator locator = locatorWithSnapshot(fetchedAt);
+
+    assertThat(locator.loadSnapshot()).isTrue();
+    KeySnapshot snapshot = locator.getKeySnapshot();
+    assertThat(snapshot.fetchedAt()).isEqualTo(fetchedAt);
+    assertThat(snapshot.isUsable(currentTime, 0)).isTrue();
+    assertThat(snapshot.isUsable(currentTime + 61, 0)).isFalse();
+  }
+
+  @Test
+  void nearlyTooOldSnapshotIsLoadedAsExpired() throws Exception {
+    int currentTime = Time.currentTime();
+    // Within the snapshot max age of two days, but older than the cache TTL of one day
+    int fetchedAt = currentTime - (int) CACHE_TTL.toSeconds() - 3600;
+    RemotePublicKeyLocator locator = locatorWithSnapshot(fetchedAt);
+
+    assertThat(locator.loadSnapshot()).isTrue();
+    KeySnapshot snapshot = locator.getKeySnapshot();
+    assertThat(snapshot.keys()).containsOnlyKeys("kid-1");
+    assertThat(snapshot.isUsable(currentTime, 0)).isFalse();
+    assertThat(snapshot.isUsable(currentTime, (int) Duration.ofHours(2).toSeconds())).isTrue();
+  }
+
+  @Test
+  void snapshotFromTheFutureIsLoadedAsFetchedNow() throws Exception {
+    int currentTime = Time.currentTime();
+    RemotePublicKeyLocator locator = locatorWithSnapshot(currentTime + 3600);
+
+    assertThat(locator.loadSnapshot()).isTrue();
+    assertThat(locator.getKeySnapshot().fetchedAt()).isBetween(currentTime, Time.currentTime());
+  }
+
+  private RemotePublicKeyLocator locatorWithSnapshot(int fetchedAt) throws Exception {
+    JwksStub realm = new JwksStub("snapshot");
+    KeycloakProperties keycloakProperties = realm.properties();
+    keycloakProperties.getJwks().setCacheTtl(CACHE_TTL);
+
+    JWK jwk = JWKBuilder.create().kid("kid-1").algorithm("RS256").rsa(realm.keyPair().getPublic());
+    JSONWebKeySet jwks = new JSONWebKeySet();
+    jwks.setKeys(new JWK[] {jwk});
+    JwksSnapshotFile snapshotFile =
+        new JwksSnapshotFile(tempDir.resolve("jwks.json"), Duration.ofDays(2));
+    snapshotFile.write(jwks, fetchedAt);
+
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(keycloakProperties, realm.restTemplate());
+    locator.setSnapshotFile(snapshotFile);
+    return locator;
+  }
+}
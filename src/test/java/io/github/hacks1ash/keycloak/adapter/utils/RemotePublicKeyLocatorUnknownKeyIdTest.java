@@ -0,0 +1,83 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+
+/**
+ * Looks up key IDs missing from the cached keys, checking that a key ID is only remembered as
+ * unknown when the keys were actually retrieved without it.
+ */
+class RemotePublicKeyLocatorUnknownKeyIdTest {
+
+  private static final int REFETCH_BURST = 2;
+
+  private static final Duration UNKNOWN_KID_TTL = Duration.ofSeconds(30);
+
+  private final JwksStub realm = new JwksStub("unknown");
+
+  private RemotePublicKeyLocator locator;
+
+  @BeforeEach
+  void setUp() {
+    KeycloakProperties keycloakProperties = realm.properties();
+    KeycloakProperties.Jwks jwks = keycloakProperties.getJwks();
+    jwks.setMaxRetries(0);
+    jwks.setUnknownKidTtl(UNKNOWN_KID_TTL);
+    // No token is added back to the bucket while a test runs
+    jwks.setRefetchBurst(REFETCH_BURST);
+    jwks.setRefetchInterval(Duration.ofHours(1));
+    locator = new RemotePublicKeyLocator(keycloakProperties, realm.restTemplate());
+  }
+
+  @AfterEach
+  void resetTime() {
+    Time.setOffset(0);
+  }
+
+  @Test
+  void remembersKeyIdMissingFromRetrievedKeysUntilItExpires() {
+    assertThat(locator.getPublicKey("kid-1")).isNull();
+
+    realm.publish("kid-0", "kid-1");
+    assertThat(locator.getPublicKey("kid-1")).isNull();
+    assertThat(locator.getRejectedLookupCount()).isEqualTo(1);
+    assertThat(realm.getRequestCount()).isEqualTo(1);
+
+    Time.setOffset((int) UNKNOWN_KID_TTL.toSeconds());
+    assertThat(locator.getPublicKey("kid-1")).isNotNull();
+    assertThat(realm.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  void failedFetchDoesNotRememberKeyIdAsUnknown() {
+    realm.failNext(1);
+    assertThat(locator.getPublicKey("kid-1")).isNull();
+
+    realm.publish("kid-0", "kid-1");
+    assertThat(locator.getPublicKey("kid-1")).isNotNull();
+    assertThat(locator.getRejectedLookupCount()).isZero();
+  }
+
+  @Test
+  void throttledFetchDoesNotRememberKeyIdAsUnknown() {
+    // Take every token of the bucket
+    for (int i = 0; i < REFETCH_BURST; i++) {
+      assertThat(locator.getPublicKey("kid-" + (i + 2))).isNull();
+    }
+
+    realm.publish("kid-0", "kid-1");
+    assertThat(locator.getPublicKey("kid-1")).isNull();
+    assertThat(locator.getPublicKey("kid-1")).isNull();
+    assertThat(locator.getThrottledFetchCount()).isEqualTo(2);
+    assertThat(locator.getRejectedLookupCount()).isZero();
+
+    locator.refresh();
+    assertThat(locator.getPublicKey("kid-1")).isNotNull();
+  }
+}
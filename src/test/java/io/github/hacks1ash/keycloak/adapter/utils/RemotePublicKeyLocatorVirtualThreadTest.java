@@ -0,0 +1,146 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.util.JsonSerialization;
+
+/**
+ * Looks up keys from thousands of virtual threads while a local realm is slow to answer, and checks
+ * with JFR that no virtual thread pins its carrier thread while it waits for the in-flight fetch.
+ * Virtual threads need Java 21, so the test only runs on Java 21 and later.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+class RemotePublicKeyLocatorVirtualThreadTest {
+
+  private static final int ROUNDS = 3;
+
+  private static final int LOOKUPS_PER_ROUND = 2000;
+
+  private static final long RESPONSE_DELAY_MILLIS = 300;
+
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  private KeyPair keyPair;
+
+  private HttpServer server;
+
+  private volatile byte[] keySet;
+
+  @BeforeEach
+  void startRealm() throws Exception {
+    keyPair = JwksStub.generateKeyPair();
+    publish("kid-0");
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/realms/virtual/protocol/openid-connect/certs",
+        exchange -> {
+          requestCount.incrementAndGet();
+          byte[] response = keySet;
+          try {
+            Thread.sleep(RESPONSE_DELAY_MILLIS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          exchange.getResponseHeaders().set("Content-Type", "application/json");
+          exchange.sendResponseHeaders(200, response.length);
+          try (OutputStream body = exchange.getResponseBody()) {
+            body.write(response);
+          }
+        });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+  }
+
+  @AfterEach
+  void stopRealm() {
+    server.stop(0);
+  }
+
+  @Test
+  void waitingForSlowFetchDoesNotPinCarrierThreads(@TempDir Path tempDir) throws Exception {
+    RemotePublicKeyLocator locator =
+        new RemotePublicKeyLocator(
+            properties(),
+            RestTemplateHelper.create(Duration.ofSeconds(2), Duration.ofSeconds(5)));
+
+    Path recordingFile = tempDir.resolve("pinning.jfr");
+    int found = 0;
+    try (Recording recording = new Recording()) {
+      recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(10));
+      recording.start();
+
+      for (int round = 0; round < ROUNDS; round++) {
+        // A new key is published, so every lookup of this round misses and waits for a fetch
+        String kid = "kid-" + (round + 1);
+        publish(kid);
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        List<Future<Boolean>> lookups = new ArrayList<>();
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+          lookups.add(executor.submit(() -> locator.getPublicKey(kid) != null));
+        }
+        for (Future<Boolean> lookup : lookups) {
+          found += lookup.get() ? 1 : 0;
+        }
+        executor.shutdown();
+      }
+
+      recording.stop();
+      recording.dump(recordingFile);
+    }
+
+    List<RecordedEvent> pinnedEvents = RecordingFile.readAllEvents(recordingFile);
+    assertThat(pinnedEvents).isEmpty();
+    assertThat(found).isEqualTo(ROUNDS * LOOKUPS_PER_ROUND);
+    // Lookups waiting for the same key share a single fetch
+    assertThat(requestCount.get()).isLessThanOrEqualTo(ROUNDS * 2);
+  }
+
+  private void publish(String kid) throws IOException {
+    JWK jwk = JWKBuilder.create().kid(kid).algorithm("RS256").rsa(keyPair.getPublic());
+    JSONWebKeySet published = new JSONWebKeySet();
+    published.setKeys(new JWK[] {jwk});
+    keySet = JsonSerialization.writeValueAsBytes(published);
+  }
+
+  private KeycloakProperties properties() {
+    KeycloakProperties keycloakProperties = new KeycloakProperties();
+    keycloakProperties.setServerUrl("http://localhost:" + server.getAddress().getPort());
+    keycloakProperties.setRealm("virtual");
+    keycloakProperties.setClientId("virtual-client");
+    keycloakProperties.getJwks().setBackgroundRefresh(false);
+    keycloakProperties.getJwks().setRefetchBurst(ROUNDS * 2);
+    return keycloakProperties;
+  }
+
+  // The project compiles against Java 17, which has no virtual threads
+  private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+    return (ExecutorService)
+        Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+  }
+}
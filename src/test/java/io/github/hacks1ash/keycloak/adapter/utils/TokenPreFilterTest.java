@@ -0,0 +1,145 @@
+package io.github.hacks1ash.keycloak.adapter.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.hacks1ash.keycloak.adapter.KeycloakProperties;
+import io.github.hacks1ash.keycloak.adapter.utils.TokenPreFilter.Rejection;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.keycloak.common.util.Time;
+
+/**
+ * Checks tokens the scanner of the pre-filter handles specially. Tokens the full verification may
+ * accept must never be rejected, only passed on.
+ */
+class TokenPreFilterTest {
+
+  private static final String HEADER = "{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"kid-0\"}";
+
+  private static final String SIGNATURE = "c2lnbmF0dXJl";
+
+  private static final long FUTURE = Time.currentTime() + 300L;
+
+  private static final long PAST = Time.currentTime() - 300L;
+
+  private final TokenPreFilter tokenPreFilter = new TokenPreFilter(new KeycloakProperties());
+
+  static Stream<Arguments> tokens() {
+    return Stream.of(
+        // Plain tokens
+        valid("RS256 token", HEADER, payload(FUTURE)),
+        valid("PS384 token", "{\"alg\":\"PS384\"}", payload(FUTURE)),
+        valid("ES512 token", "{\"alg\":\"ES512\"}", payload(FUTURE)),
+        valid("token without expiration", HEADER, "{\"sub\":\"user-1\"}"),
+        valid("token that never expires", HEADER, payload(0)),
+        rejected("expired token", HEADER, payload(PAST), Rejection.EXPIRED),
+        // Escaped names are left to the full verification
+        valid("escaped header name", "{\"\\u0061lg\":\"none\"}", payload(FUTURE)),
+        valid("escaped payload name", HEADER, "{\"\\u0065xp\":" + PAST + "}"),
+        valid("escaped algorithm", "{\"alg\":\"RS\\u0032\\u00356\"}", payload(FUTURE)),
+        // Whitespace around names, colons, values and commas
+        valid(
+            "whitespace in header",
+            " {\n\t\"alg\" : \"RS256\" ,\r\n \"kid\"\t:\"kid-0\" } ",
+            payload(FUTURE)),
+        valid(
+            "whitespace in payload",
+            HEADER,
+            "{ \"sub\" : \"user-1\" ,\n\"exp\"\t:\r" + FUTURE + " }"),
+        rejected(
+            "whitespace around expired exp",
+            HEADER,
+            "{\n  \"exp\" : " + PAST + "\n}",
+            Rejection.EXPIRED),
+        // Nested values before exp
+        valid(
+            "nested values before exp",
+            HEADER,
+            "{\"realm_access\":{\"roles\":[\"a\",\"}\",\"]\"]},\"aud\":[\"x\",{\"exp\":"
+                + PAST
+                + "}],\"name\":\"\\\"exp\\\":1\",\"exp\":"
+                + FUTURE
+                + "}"),
+        rejected(
+            "nested values before expired exp",
+            HEADER,
+            "{\"realm_access\":{\"roles\":[\"a\",\"}\"]},\"aud\":[\"x\"],\"exp\":" + PAST + "}",
+            Rejection.EXPIRED),
+        valid("expired exp of nested object", HEADER, "{\"act\":{\"exp\":" + PAST + "}}"),
+        // Values of exp that are not plain integers are left to the full verification
+        valid("decimal exp", HEADER, "{\"exp\":" + PAST + ".5}"),
+        valid("exponent exp", HEADER, "{\"exp\":1e3}"),
+        valid("negative exp", HEADER, "{\"exp\":-1}"),
+        valid("string exp", HEADER, "{\"exp\":\"" + PAST + "\"}"),
+        valid("null exp", HEADER, "{\"exp\":null}"),
+        valid("overlong exp", HEADER, "{\"exp\":1234567890123456789012}"),
+        // Algorithms that are not of the RS, PS or ES family
+        rejected(
+            "alg none", "{\"alg\":\"none\"}", payload(FUTURE), Rejection.UNSUPPORTED_ALGORITHM),
+        rejected(
+            "alg HS256", "{\"alg\":\"HS256\"}", payload(FUTURE), Rejection.UNSUPPORTED_ALGORITHM),
+        rejected(
+            "alg RS2560", "{\"alg\":\"RS2560\"}", payload(FUTURE), Rejection.UNSUPPORTED_ALGORITHM),
+        rejected(
+            "missing alg", "{\"kid\":\"kid-0\"}", payload(FUTURE), Rejection.UNSUPPORTED_ALGORITHM),
+        // Values of kid the header can't be read with
+        rejected(
+            "object kid",
+            "{\"kid\":{\"id\":\"kid-0\"},\"alg\":\"RS256\"}",
+            payload(FUTURE),
+            Rejection.MALFORMED),
+        rejected(
+            "array kid", "{\"alg\":\"RS256\",\"kid\":[]}", payload(FUTURE), Rejection.MALFORMED),
+        valid("kid with braces", "{\"alg\":\"RS256\",\"kid\":\"{[kid-0]}\"}", payload(FUTURE)));
+  }
+
+  static Stream<Arguments> segments() {
+    String header = encode(HEADER);
+    String payload = encode(payload(FUTURE));
+    return Stream.of(
+        Arguments.of("4n+1 signature length", header + "." + payload + ".abcde"),
+        Arguments.of("4n+1 payload length", header + ".abcde." + SIGNATURE),
+        Arguments.of("empty signature", header + "." + payload + "."),
+        Arguments.of("padded segment", header + "." + payload + "." + SIGNATURE + "=="),
+        Arguments.of("missing segment", header + "." + payload),
+        Arguments.of("extra segment", header + "." + payload + "." + SIGNATURE + "." + SIGNATURE),
+        Arguments.of(
+            "header not an object", encode("[\"RS256\"]") + "." + payload + "." + SIGNATURE));
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("tokens")
+  void checksToken(String description, String token, Rejection expected) {
+    assertThat(tokenPreFilter.check(token)).isEqualTo(expected);
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("segments")
+  void rejectsMalformedSegments(String description, String token) {
+    assertThat(tokenPreFilter.check(token)).isEqualTo(Rejection.MALFORMED);
+  }
+
+  private static Arguments valid(String description, String header, String payload) {
+    return rejected(description, header, payload, null);
+  }
+
+  private static Arguments rejected(
+      String description, String header, String payload, Rejection rejection) {
+    return Arguments.of(
+        description, encode(header) + "." + encode(payload) + "." + SIGNATURE, rejection);
+  }
+
+  private static String payload(long exp) {
+    return "{\"sub\":\"user-1\",\"exp\":" + exp + "}";
+  }
+
+  private static String encode(String json) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+}